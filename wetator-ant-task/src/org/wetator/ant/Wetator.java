@@ -56,6 +56,7 @@ public class Wetator extends Task {
   private List<PropertySet> sysPropertySets = new ArrayList<>();
   private boolean haltOnFailure;
   private String failureProperty;
+  private int daemonPort = -1;
 
   /**
    * The main method called by Ant.
@@ -109,9 +110,9 @@ public class Wetator extends Task {
         // do the
         final Class<?> tmpExecutorClass = tmpAntClassLoader.loadClass("org.wetator.ant.WetatorExecutor");
         final Constructor<?> tmpConstructor = tmpExecutorClass.getConstructor(File.class, String.class, File.class,
-            String[].class, Map.class, Writer.class);
+            String[].class, Map.class, Writer.class, int.class);
         final Object tmpExecutor = tmpConstructor.newInstance(getProject().getBaseDir(), getConfig(),
-            tmpDirScanner.getBasedir(), tmpListOfFiles, getPropertiesFromAnt(), new AntWriter(this));
+            tmpDirScanner.getBasedir(), tmpListOfFiles, getPropertiesFromAnt(), new AntWriter(this), daemonPort);
         final Method tmpRunMethod = tmpExecutorClass.getDeclaredMethod("runWetator");
 
         final long[] tmpResult = (long[]) tmpRunMethod.invoke(tmpExecutor);
@@ -322,4 +323,19 @@ public class Wetator extends Task {
   public void setFailureProperty(final String aFailureProperty) {
     failureProperty = aFailureProperty;
   }
+
+  /**
+   * @return the port of the Wetator daemon running the tests; -1 if the tests are run by the task itself
+   */
+  public int getDaemonPort() {
+    return daemonPort;
+  }
+
+  /**
+   * @param aDaemonPort the port of the Wetator daemon running the tests; the system properties are not passed to the
+   *        daemon
+   */
+  public void setDaemonPort(final int aDaemonPort) {
+    daemonPort = aDaemonPort;
+  }
 }
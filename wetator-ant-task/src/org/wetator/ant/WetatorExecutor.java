@@ -17,15 +17,20 @@
 package org.wetator.ant;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wetator.core.TestCase;
 import org.wetator.core.WetatorConfiguration;
 import org.wetator.core.WetatorEngine;
+import org.wetator.daemon.WetatorDaemonClient;
 import org.wetator.exception.InvalidInputException;
 
 /**
@@ -44,6 +49,7 @@ public class WetatorExecutor {
   private final String[] listOfFiles;
   private final Map<String, String> properties;
   private final Writer writer;
+  private final int daemonPort;
 
   /**
    * Ctor.
@@ -58,12 +64,31 @@ public class WetatorExecutor {
    */
   public WetatorExecutor(final File aBaseDir, final String aConfig, final File aFilesBaseDir,
       final String[] aListOfFiles, final Map<String, String> aProperties, final Writer aWriter) {
+    this(aBaseDir, aConfig, aFilesBaseDir, aListOfFiles, aProperties, aWriter, -1);
+  }
+
+  /**
+   * Ctor.
+   * We have only basic types here because this is called from a different class loader.
+   *
+   * @param aBaseDir the base dir
+   * @param aConfig the wetator config
+   * @param aFilesBaseDir the base dir for the files
+   * @param aListOfFiles the list of wetator test cases
+   * @param aProperties the properties provided by the ant task
+   * @param aWriter the writer for the log output
+   * @param aDaemonPort the port of the Wetator daemon running the tests; -1 to run them here
+   */
+  public WetatorExecutor(final File aBaseDir, final String aConfig, final File aFilesBaseDir,
+      final String[] aListOfFiles, final Map<String, String> aProperties, final Writer aWriter,
+      final int aDaemonPort) {
     baseDir = aBaseDir;
     config = aConfig;
     filesBaseDir = aFilesBaseDir;
     listOfFiles = aListOfFiles;
     properties = aProperties;
     writer = aWriter;
+    daemonPort = aDaemonPort;
   }
 
   /**
@@ -71,8 +96,13 @@ public class WetatorExecutor {
    *
    * @return an array with the various error counts
    * @throws InvalidInputException in case of error
+   * @throws IOException in case of problems communicating with the daemon
    */
-  public long[] runWetator() throws InvalidInputException {
+  public long[] runWetator() throws InvalidInputException, IOException {
+    if (daemonPort > -1) {
+      return runOnDaemon();
+    }
+
     final WetatorEngine tmpWetatorEngine = new WetatorEngine();
     try {
       // configuration is relative to the base dir of the project
@@ -102,6 +132,26 @@ public class WetatorExecutor {
     }
   }
 
+  /**
+   * Lets the Wetator daemon run the tests.
+   *
+   * @return an array with the various error counts
+   * @throws IOException in case of problems communicating with the daemon
+   */
+  private long[] runOnDaemon() throws IOException {
+    // configuration is relative to the base dir of the project
+    final File tmpConfigFile = new File(baseDir, config);
+
+    final List<TestCase> tmpTestCases = new ArrayList<>(listOfFiles.length);
+    for (final String tmpFileName : listOfFiles) {
+      tmpTestCases.add(new TestCase(tmpFileName, new File(filesBaseDir, tmpFileName)));
+    }
+
+    // ant supports only the output of whole lines
+    return new WetatorDaemonClient(daemonPort).runTests(tmpConfigFile.getAbsolutePath(), getPropertiesFromAnt(),
+        tmpTestCases, writer, true);
+  }
+
   /**
    * Reads and returns the properties form ant project and from wetator task.
    *
@@ -18,6 +18,9 @@ package org.wetator;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -28,7 +31,10 @@ import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wetator.core.IProgressListener;
+import org.wetator.core.TestCase;
 import org.wetator.core.WetatorEngine;
+import org.wetator.daemon.WetatorDaemon;
+import org.wetator.daemon.WetatorDaemonClient;
 import org.wetator.gui.DialogUtil;
 import org.wetator.progresslistener.StdOutProgressListener;
 import org.wetator.util.Log4jUtil;
@@ -52,6 +58,7 @@ public final class Wetator {
   public static void main(final String[] anArgsArray) {
     String tmpConfigFileName = null;
     File tmpDebugLogFile = null;
+    int tmpDaemonPort = -1;
     final List<String> tmpFileNames = new LinkedList<>();
     // parse the command line
     for (int i = 0; i < anArgsArray.length; i++) {
@@ -62,6 +69,9 @@ public final class Wetator {
       } else if ("-p".equals(tmpArg) && i < (anArgsArray.length - 1)) {
         tmpConfigFileName = anArgsArray[i + 1];
         i++;
+      } else if ("-daemon".equals(tmpArg) && i < (anArgsArray.length - 1)) {
+        tmpDaemonPort = Integer.parseInt(anArgsArray[i + 1].trim());
+        i++;
       } else {
         tmpFileNames.add(tmpArg);
       }
@@ -74,6 +84,10 @@ public final class Wetator {
       LOG.info("    Debug log file: " + FilenameUtils.normalize(tmpDebugLogFile.getAbsolutePath()));
     }
 
+    if (tmpDaemonPort > -1) {
+      runOnDaemon(tmpDaemonPort, tmpConfigFileName, tmpFileNames);
+    }
+
     final IProgressListener tmpProgressListener = new StdOutProgressListener();
 
     try {
@@ -109,28 +123,8 @@ public final class Wetator {
             tmpWindow.dispose();
           }
         } else {
-          final File tmpCurrentDir = new File(".");
-          for (final String tmpFileName : tmpFileNames) {
-            File tmpSearchFile = new File(tmpFileName);
-            if (tmpSearchFile.isAbsolute()) {
-              tmpWetatorEngine.addTestCase(tmpFileName, tmpSearchFile);
-            } else {
-              tmpSearchFile = new File(tmpCurrentDir, tmpFileName);
-              if (tmpSearchFile.exists()) {
-                tmpWetatorEngine.addTestCase(tmpFileName, tmpSearchFile);
-              } else {
-                final File tmpDir = tmpSearchFile.getParentFile();
-                if (tmpDir != null && tmpDir.exists()) {
-                  final FileFilter tmpFilter = new WildcardFileFilter(tmpSearchFile.getName());
-                  final File[] tmpFiles = tmpDir.listFiles(tmpFilter);
-                  if (tmpFiles != null) {
-                    for (final File tmpFile : tmpFiles) {
-                      tmpWetatorEngine.addTestCase(tmpFile.getName(), tmpFile);
-                    }
-                  }
-                }
-              }
-            }
+          for (final TestCase tmpTestCase : findTestCases(tmpFileNames)) {
+            tmpWetatorEngine.addTestCase(tmpTestCase.getName(), tmpTestCase.getFile());
           }
         }
 
@@ -149,6 +143,67 @@ public final class Wetator {
     System.exit(0);
   }
 
+  /**
+   * Lets a running {@link WetatorDaemon} execute the tests and exits.
+   *
+   * @param aPort the port of the daemon
+   * @param aConfigFileName the name of the configuration file; null for the default one of the daemon
+   * @param aFileNames the names of the test files (may contain wildcards)
+   */
+  private static void runOnDaemon(final int aPort, final String aConfigFileName, final List<String> aFileNames) {
+    try {
+      String tmpConfigFileName = null;
+      if (null != aConfigFileName) {
+        tmpConfigFileName = new File(aConfigFileName).getAbsolutePath();
+      }
+      final List<TestCase> tmpTestCases = findTestCases(aFileNames);
+      if (tmpTestCases.isEmpty()) {
+        System.out.println("No test files found."); // NOPMD
+        System.exit(1);
+      }
+
+      final Writer tmpWriter = new OutputStreamWriter(System.out, Charset.defaultCharset());
+      new WetatorDaemonClient(aPort).runTests(tmpConfigFileName, null, tmpTestCases, tmpWriter, false);
+    } catch (final Throwable e) {
+      System.out.println("Wetator execution failed: " + e.getMessage()); // NOPMD
+      LOG.fatal("Wetator execution failed:", e);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * @param aFileNames the names of the test files (may contain wildcards)
+   * @return the test cases for all the files found
+   */
+  private static List<TestCase> findTestCases(final List<String> aFileNames) {
+    final List<TestCase> tmpTestCases = new LinkedList<>();
+    final File tmpCurrentDir = new File(".");
+    for (final String tmpFileName : aFileNames) {
+      File tmpSearchFile = new File(tmpFileName);
+      if (tmpSearchFile.isAbsolute()) {
+        tmpTestCases.add(new TestCase(tmpFileName, tmpSearchFile));
+      } else {
+        tmpSearchFile = new File(tmpCurrentDir, tmpFileName);
+        if (tmpSearchFile.exists()) {
+          tmpTestCases.add(new TestCase(tmpFileName, tmpSearchFile));
+        } else {
+          final File tmpDir = tmpSearchFile.getParentFile();
+          if (tmpDir != null && tmpDir.exists()) {
+            final FileFilter tmpFilter = new WildcardFileFilter(tmpSearchFile.getName());
+            final File[] tmpFiles = tmpDir.listFiles(tmpFilter);
+            if (tmpFiles != null) {
+              for (final File tmpFile : tmpFiles) {
+                tmpTestCases.add(new TestCase(tmpFile.getName(), tmpFile));
+              }
+            }
+          }
+        }
+      }
+    }
+    return tmpTestCases;
+  }
+
   /**
    * This class should not be instantiated.
    */
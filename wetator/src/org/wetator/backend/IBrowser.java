@@ -274,6 +274,24 @@ public interface IBrowser {
    */
   void bookmarkPage(String aBookmarkName) throws ActionException;
 
+  /**
+   * Saves the state of the current session (cookies, local and session storage and the current page) with the given
+   * key. The saved states are available for all later sessions using the same browser type.
+   *
+   * @param aKey the key to save the state with
+   * @throws ActionException in case of problems
+   */
+  void saveSessionState(String aKey) throws ActionException;
+
+  /**
+   * Restores the session state saved with the given key in the current session. The saved page is opened again.
+   *
+   * @param aKey the key the state was saved with
+   * @return <code>false</code> if there is no state saved with the given key for the current browser type
+   * @throws ActionException in case of problems
+   */
+  boolean restoreSessionState(String aKey) throws ActionException;
+
   /**
    * The browser manages a list of failures detected during the execution
    * of an action. These failures are collected. Normally such a failure doesn't stop
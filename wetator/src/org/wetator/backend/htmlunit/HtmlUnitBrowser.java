@@ -16,6 +16,7 @@
 
 package org.wetator.backend.htmlunit;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -23,12 +24,19 @@ import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.text.BadLocationException;
 
@@ -75,12 +83,14 @@ import org.wetator.util.NormalizedString;
 import org.wetator.util.SecretString;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.Cache;
 import com.gargoylesoftware.htmlunit.DefaultCredentialsProvider;
 import com.gargoylesoftware.htmlunit.DialogWindow;
 import com.gargoylesoftware.htmlunit.FailingHttpStatusCodeException;
 import com.gargoylesoftware.htmlunit.History;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.ScriptException;
+import com.gargoylesoftware.htmlunit.StorageHolder;
 import com.gargoylesoftware.htmlunit.TextPage;
 import com.gargoylesoftware.htmlunit.TopLevelWindow;
 import com.gargoylesoftware.htmlunit.WaitingRefreshHandler;
@@ -88,16 +98,24 @@ import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.WebWindowEvent;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeEvent;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeListener;
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
 import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.FrameWindow;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.DebuggerImpl;
 import com.gargoylesoftware.htmlunit.javascript.HtmlUnitContextFactory;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJob;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
+import com.gargoylesoftware.htmlunit.util.Cookie;
 import com.gargoylesoftware.htmlunit.util.WebClientUtils;
 import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
@@ -114,20 +132,51 @@ public final class HtmlUnitBrowser implements IBrowser {
 
   private static final int MAX_LENGTH = 4000;
 
+  /** The maximum number of animation frames to run per wait. */
+  private static final int MAX_ANIMATION_FRAMES = 100;
+  /** The number of animation frames in a row without any change of the dom that ends the waiting. */
+  private static final int MAX_IDLE_ANIMATION_FRAMES = 3;
+
   /** Htmlunit WebClient. */
   private WebClient webClient;
   /** Sometimes we like to ignore some jobs. */
   private JavaScriptJobFilter jobFilter;
   /** ResponseStore. */
   private Map<BrowserVersion, ResponseStore> responseStores;
+  /** The writer for the files of the response stores; null if they are written immediately. */
+  private SnapshotWriter snapshotWriter;
+  /** The store for the content of the resources of the response stores; null if not used. */
+  private ResourceBlobStore resourceBlobStore;
+  /** The archive for the files of the response stores; null if the files are written as single files. */
+  private SnapshotArchive snapshotArchive;
+  /** The http caches shared by the sessions; empty if not enabled. */
+  private Map<BrowserVersion, SharedHttpCache> httpCaches;
+  /** The caches for compiled scripts shared by the sessions; empty if not enabled. */
+  private Map<BrowserVersion, SharedScriptCache> scriptCaches;
+  /** The script cache used by the current session; may be null. */
+  private SharedScriptCache currentScriptCache;
+  /** The WebClients prepared in the background for the next sessions. */
+  private Map<BrowserVersion, Future<WebClient>> warmWebClients;
+  /** Prepares the WebClients in the background; null if not enabled. */
+  private ExecutorService warmUpExecutor;
+  /** The executor fetching the resources of the stored pages; null if they are fetched one by one. */
+  private ExecutorService resourceFetchExecutor;
   /** WetatorEngine. */
   private WetatorEngine wetatorEngine;
   /** The list of failures ({@link AssertionException}s). */
   private List<AssertionException> failures;
   /** The JavaScript timeout. */
   private long jsTimeoutInMillis;
+  /** Use a virtual clock for the JavaScript jobs. */
+  private boolean jsVirtualTime;
+  /** The number of animation frames run in this session. */
+  private long animationFrameCount;
+  /** The number of waits running animation frames in this session. */
+  private long animationFrameWaitCount;
   /** The map containing the bookmarks. */
   private Map<String, URL> bookmarks;
+  /** The saved session states (per browser version); they survive the end of the session. */
+  private Map<String, SessionState> sessionStates;
   /** Cache of saved pages. */
   private WeakHashMap<Page, String> savedPages;
 
@@ -156,7 +205,37 @@ public final class HtmlUnitBrowser implements IBrowser {
     // response store
     final WetatorConfiguration tmpConfiguration = wetatorEngine.getConfiguration();
     jsTimeoutInMillis = tmpConfiguration.getJsTimeoutInSeconds() * 1000L;
+    jsVirtualTime = tmpConfiguration.isJsVirtualTimeEnabled();
     responseStores = new HashMap<>();
+    httpCaches = new HashMap<>();
+    scriptCaches = new HashMap<>();
+    warmWebClients = new HashMap<>();
+    sessionStates = new HashMap<>();
+    if (tmpConfiguration.getSnapshotWriterThreads() > 0) {
+      snapshotWriter = new SnapshotWriter(tmpConfiguration.getSnapshotWriterThreads());
+    }
+    if (null != tmpConfiguration.getResourceBlobDir()) {
+      resourceBlobStore = new ResourceBlobStore(tmpConfiguration.getResourceBlobDir());
+    }
+    if (tmpConfiguration.getSnapshotArchiveSize() > 0) {
+      snapshotArchive = new SnapshotArchive(tmpConfiguration.getOutputDir(),
+          tmpConfiguration.getSnapshotArchiveSize() * 1024L * 1024L);
+    }
+    if (tmpConfiguration.getResourceFetchThreads() > 0) {
+      final AtomicInteger tmpThreadNo = new AtomicInteger();
+      resourceFetchExecutor = Executors.newFixedThreadPool(tmpConfiguration.getResourceFetchThreads(), aRunnable -> {
+        final Thread tmpThread = new Thread(aRunnable, "Wetator resource fetcher " + tmpThreadNo.incrementAndGet());
+        tmpThread.setDaemon(true);
+        return tmpThread;
+      });
+    }
+    if (tmpConfiguration.isWarmUpWebClientsEnabled()) {
+      warmUpExecutor = Executors.newSingleThreadExecutor(aRunnable -> {
+        final Thread tmpThread = new Thread(aRunnable, "Wetator WebClient warm up");
+        tmpThread.setDaemon(true);
+        return tmpThread;
+      });
+    }
     for (final BrowserType tmpBrowserType : tmpConfiguration.getBrowserTypes()) {
       final BrowserVersion tmpBrowserVersion = determineBrowserVersionFor(tmpBrowserType);
       // manipulate the browser version before using it as key for a map
@@ -166,8 +245,26 @@ public final class HtmlUnitBrowser implements IBrowser {
       }
 
       final ResponseStore tmpStore = new ResponseStore(tmpConfiguration.getOutputDir(), tmpBrowserType.getLabel(),
-          true);
+          true, snapshotWriter, resourceBlobStore, snapshotArchive);
+      tmpStore.setPageRetention(tmpConfiguration.getSnapshotRetention());
+      tmpStore.setResourceFetchExecutor(resourceFetchExecutor);
+      tmpStore.setSnapshotDeltas(tmpConfiguration.isSnapshotDeltas());
       responseStores.put(tmpBrowserVersion, tmpStore);
+
+      if (tmpConfiguration.isSharedHttpCacheEnabled()) {
+        File tmpCacheDir = tmpConfiguration.getHttpCacheDir();
+        if (null != tmpCacheDir) {
+          tmpCacheDir = new File(tmpCacheDir, tmpBrowserType.getSymbol());
+        }
+        httpCaches.put(tmpBrowserVersion, new SharedHttpCache(tmpCacheDir));
+      }
+      if (tmpConfiguration.isSharedScriptCacheEnabled()) {
+        scriptCaches.put(tmpBrowserVersion, new SharedScriptCache());
+      }
+    }
+
+    if (tmpConfiguration.getSnapshotRetention() > 0) {
+      wetatorEngine.addProgressListener(new SnapshotRetentionListener(responseStores.values()));
     }
 
     // add the default controls
@@ -195,6 +292,44 @@ public final class HtmlUnitBrowser implements IBrowser {
 
   @Override
   public void close() {
+    if (null != warmUpExecutor) {
+      // the pending preparations are finished; all prepared WebClients have to be closed
+      warmUpExecutor.shutdown();
+      for (final Future<WebClient> tmpFuture : warmWebClients.values()) {
+        final WebClient tmpWebClient = takeWarmWebClient(tmpFuture);
+        if (null != tmpWebClient) {
+          tmpWebClient.close();
+        }
+      }
+      warmWebClients.clear();
+    }
+
+    for (final SharedHttpCache tmpCache : httpCaches.values()) {
+      tmpCache.dispose();
+    }
+    for (final SharedScriptCache tmpCache : scriptCaches.values()) {
+      tmpCache.clear();
+    }
+    sessionStates.clear();
+
+    if (null != resourceFetchExecutor) {
+      resourceFetchExecutor.shutdownNow();
+    }
+    if (null != snapshotWriter) {
+      snapshotWriter.shutdown();
+    }
+    if (null != resourceBlobStore && resourceBlobStore.getStoreCount() > 0) {
+      LOG.info("Resource blobs: " + resourceBlobStore.getReuseCount() + " of " + resourceBlobStore.getStoreCount()
+          + " resource(s) reused (" + resourceBlobStore.getReusedBytes() / 1024 + " KB).");
+    }
+    if (null != snapshotArchive) {
+      try {
+        snapshotArchive.close();
+      } catch (final IOException e) {
+        LOG.error("Could not finish the snapshot archive.", e);
+      }
+    }
+
     try {
       HtmlUnitFinderDelegator.shutdownThreadPool();
     } catch (final InterruptedException e) {
@@ -214,6 +349,52 @@ public final class HtmlUnitBrowser implements IBrowser {
 
     final BrowserVersion tmpBrowserVersion = determineBrowserVersionFor(aBrowserType);
 
+    // reuse the WebClient prepared in the background if possible
+    webClient = takeWarmWebClient(tmpBrowserVersion);
+    if (null == webClient) {
+      webClient = createWebClient(tmpBrowserVersion);
+    }
+    warmUpWebClientForNextSession(aBrowserType);
+
+    currentScriptCache = null;
+    if (!tmpConfiguration.isDebugLoggingEnabled() && !tmpConfiguration.startJsDebugger()) {
+      currentScriptCache = scriptCaches.get(tmpBrowserVersion);
+    }
+
+    final Set<SearchPattern> tmpFilters = tmpConfiguration.getJsJobFilterPatterns();
+    if (tmpFilters.isEmpty()) {
+      jobFilter = null;
+    } else {
+      jobFilter = new JavaScriptJobFilter();
+      for (final SearchPattern tmpSearchPattern : tmpFilters) {
+        jobFilter.addPattern(tmpSearchPattern);
+      }
+    }
+
+    // debug stuff
+    if (tmpConfiguration.isDebugLoggingEnabled()) {
+      final HtmlUnitContextFactory tmpContextFactory = ((JavaScriptEngine) webClient.getJavaScriptEngine())
+          .getContextFactory();
+      tmpContextFactory.setDebugger(new DebuggerImpl());
+    }
+    // webClient.setAjaxController(new NicelyResynchronizingAjaxController());
+    if (tmpConfiguration.startJsDebugger()) {
+      WebClientUtils.attachVisualDebugger(webClient);
+    }
+  }
+
+  /**
+   * Creates and configures a new {@link WebClient} for the given browser version.<br>
+   * This is called in the background to warm up the WebClient for the next session; therefore only the
+   * configuration (and no session state) is used here.
+   *
+   * @param aBrowserVersion the browser version
+   * @return the new WebClient
+   */
+  private WebClient createWebClient(final BrowserVersion aBrowserVersion) {
+    final WetatorConfiguration tmpConfiguration = wetatorEngine.getConfiguration();
+    final WebClient tmpWebClient;
+
     DefaultCredentialsProvider tmpCredentialProvider = null;
 
     final String tmpHost = tmpConfiguration.getProxyHost();
@@ -223,7 +404,7 @@ public final class HtmlUnitBrowser implements IBrowser {
       final int tmpPort = tmpConfiguration.getProxyPort();
       LOG.info("Proxy Port: '" + tmpPort + "'");
 
-      webClient = new WebClient(tmpBrowserVersion, tmpHost, tmpPort);
+      tmpWebClient = new WebClient(aBrowserVersion, tmpHost, tmpPort);
 
       final SecretString tmpProxyUser = tmpConfiguration.getProxyUser();
       if (null != tmpProxyUser && !tmpProxyUser.isEmpty()) {
@@ -231,7 +412,7 @@ public final class HtmlUnitBrowser implements IBrowser {
         LOG.info("Proxy User: '" + tmpUser + "'");
         final String tmpPassword = tmpConfiguration.getProxyPassword().getValue();
         tmpCredentialProvider = new DefaultCredentialsProvider();
-        webClient.setCredentialsProvider(tmpCredentialProvider);
+        tmpWebClient.setCredentialsProvider(tmpCredentialProvider);
 
         tmpCredentialProvider.addCredentials(tmpUser, tmpPassword, tmpHost, tmpPort, null);
       } else {
@@ -245,11 +426,24 @@ public final class HtmlUnitBrowser implements IBrowser {
         tmpHostsToProxyBypass = tmpHostsToProxyBypass.replaceAll("\\.", "\\\\.");
         tmpHostsToProxyBypass = tmpHostsToProxyBypass.replaceAll("^\\*", ".*");
 
-        webClient.getOptions().getProxyConfig().addHostsToProxyBypass(tmpHostsToProxyBypass);
+        tmpWebClient.getOptions().getProxyConfig().addHostsToProxyBypass(tmpHostsToProxyBypass);
         LOG.info("Proxy HostsToProxyBypass: '" + tmpHostsToProxyBypass + "'");
       }
     } else {
-      webClient = new WebClient(tmpBrowserVersion);
+      tmpWebClient = new WebClient(aBrowserVersion);
+    }
+
+    final SharedHttpCache tmpHttpCache = httpCaches.get(aBrowserVersion);
+    if (null != tmpHttpCache) {
+      tmpWebClient.setCache(tmpHttpCache);
+    }
+
+    // the debuggers have to see every compilation
+    final SharedScriptCache tmpScriptCache = scriptCaches.get(aBrowserVersion);
+    if (null != tmpScriptCache && !tmpConfiguration.isDebugLoggingEnabled() && !tmpConfiguration.startJsDebugger()) {
+      final AbstractJavaScriptEngine<?> tmpDefaultEngine = tmpWebClient.getJavaScriptEngine();
+      tmpWebClient.setJavaScriptEngine(tmpScriptCache.createJavaScriptEngine(tmpWebClient));
+      tmpDefaultEngine.shutdown();
     }
 
     final SecretString tmpBasicAuthUser = tmpConfiguration.getBasicAuthUser();
@@ -259,11 +453,11 @@ public final class HtmlUnitBrowser implements IBrowser {
 
       if (null == tmpCredentialProvider) {
         tmpCredentialProvider = new DefaultCredentialsProvider();
-        webClient.setCredentialsProvider(tmpCredentialProvider);
+        tmpWebClient.setCredentialsProvider(tmpCredentialProvider);
       }
 
       tmpCredentialProvider.addCredentials(tmpUser, tmpPassword);
-      webClient.setCredentialsProvider(tmpCredentialProvider);
+      tmpWebClient.setCredentialsProvider(tmpCredentialProvider);
 
       LOG.info("BasicAuth enabled  user '" + tmpUser + "'.");
     }
@@ -277,7 +471,7 @@ public final class HtmlUnitBrowser implements IBrowser {
 
       if (null == tmpCredentialProvider) {
         tmpCredentialProvider = new DefaultCredentialsProvider();
-        webClient.setCredentialsProvider(tmpCredentialProvider);
+        tmpWebClient.setCredentialsProvider(tmpCredentialProvider);
       }
 
       tmpCredentialProvider.addNTLMCredentials(tmpUser, tmpPassword, null, -1, tmpWorkstation, tmpDomain);
@@ -286,41 +480,31 @@ public final class HtmlUnitBrowser implements IBrowser {
     }
 
     // setup our listener
-    webClient.addWebWindowListener(new WebWindowListener(this));
-    webClient.setAttachmentHandler(new AttachmentHandler());
-    webClient.setAlertHandler(new AlertHandler(wetatorEngine));
-    webClient.getWebConsole().setLogger(new WebConsoleLogger(wetatorEngine));
-    webClient.setIncorrectnessListener(new IncorrectnessListener(wetatorEngine));
-    webClient.setConfirmHandler(new ConfirmHandler(wetatorEngine));
+    tmpWebClient.addWebWindowListener(new WebWindowListener(this));
+    tmpWebClient.setAttachmentHandler(new AttachmentHandler());
+    tmpWebClient.setAlertHandler(new AlertHandler(wetatorEngine));
+    tmpWebClient.getWebConsole().setLogger(new WebConsoleLogger(wetatorEngine));
+    tmpWebClient.setIncorrectnessListener(new IncorrectnessListener(wetatorEngine));
+    tmpWebClient.setConfirmHandler(new ConfirmHandler(wetatorEngine));
 
     // refresh handler - behave like the browser does
-    webClient.setRefreshHandler(new WaitingRefreshHandler());
+    tmpWebClient.setRefreshHandler(new WaitingRefreshHandler());
 
     // javascript
-    webClient.getOptions().setJavaScriptEnabled(true);
-    webClient.getOptions().setThrowExceptionOnScriptError(false);
-    webClient.setJavaScriptErrorListener(new JavaScriptErrorListener(this));
-
-    final Set<SearchPattern> tmpFilters = tmpConfiguration.getJsJobFilterPatterns();
-    if (tmpFilters.isEmpty()) {
-      jobFilter = null;
-    } else {
-      jobFilter = new JavaScriptJobFilter();
-      for (final SearchPattern tmpSearchPattern : tmpFilters) {
-        jobFilter.addPattern(tmpSearchPattern);
-      }
-    }
+    tmpWebClient.getOptions().setJavaScriptEnabled(true);
+    tmpWebClient.getOptions().setThrowExceptionOnScriptError(false);
+    tmpWebClient.setJavaScriptErrorListener(new JavaScriptErrorListener(this));
 
     // register activeX control mocker
     // should we do something like this?
-    // webClient.getOptions().setActiveXNative(false);
-    webClient.setActiveXObjectMap(tmpConfiguration.getBrowserActiveXObjects());
+    // tmpWebClient.getOptions().setActiveXNative(false);
+    tmpWebClient.setActiveXObjectMap(tmpConfiguration.getBrowserActiveXObjects());
 
     // set Accept-Language header
-    webClient.addRequestHeader("Accept-Language", tmpConfiguration.getAcceptLanaguage());
+    tmpWebClient.addRequestHeader("Accept-Language", tmpConfiguration.getAcceptLanaguage());
 
     // trust all SSL-certificates
-    webClient.getOptions().setUseInsecureSSL(true);
+    tmpWebClient.getOptions().setUseInsecureSSL(true);
 
     // use client certificate key store
     final String tmpClientCertKeyStoreUrl = tmpConfiguration.getClientCertificateKeyStoreUrl();
@@ -335,7 +519,7 @@ public final class HtmlUnitBrowser implements IBrowser {
 
       try {
         final URL tmpKeyStoreURL = new URL(tmpClientCertKeyStoreUrl);
-        webClient.getOptions().setSSLClientCertificate(tmpKeyStoreURL, tmpClientCertKeyStorePassword.getValue(),
+        tmpWebClient.getOptions().setSSLClientCertificate(tmpKeyStoreURL, tmpClientCertKeyStorePassword.getValue(),
             tmpClientCertKeyStoreType);
       } catch (final Exception e) {
         LOG.error("Failed to use configured ClientCertificateKeyStore.", e.getCause());
@@ -343,23 +527,154 @@ public final class HtmlUnitBrowser implements IBrowser {
     }
 
     // set the timeout
-    webClient.getOptions().setTimeout(tmpConfiguration.getHttpTimeoutInSeconds() * 1000);
+    tmpWebClient.getOptions().setTimeout(tmpConfiguration.getHttpTimeoutInSeconds() * 1000);
 
-    // debug stuff
-    if (tmpConfiguration.isDebugLoggingEnabled()) {
-      final HtmlUnitContextFactory tmpContextFactory = ((JavaScriptEngine) webClient.getJavaScriptEngine())
-          .getContextFactory();
-      tmpContextFactory.setDebugger(new DebuggerImpl());
+    return tmpWebClient;
+  }
+
+  /**
+   * Helper for tests.
+   *
+   * @return the WebClient of the current session
+   */
+  WebClient getWebClient() {
+    return webClient;
+  }
+
+  /**
+   * Helper for tests.
+   *
+   * @param aBrowserType the browser type
+   * @return the WebClient prepared in the background for the given browser type or null if there is none
+   */
+  Future<WebClient> getWarmWebClient(final BrowserType aBrowserType) {
+    return warmWebClients.get(determineBrowserVersionFor(aBrowserType));
+  }
+
+  /**
+   * @param aBrowserVersion the browser version
+   * @return the WebClient prepared in the background for the given browser version or null if there is none
+   */
+  private WebClient takeWarmWebClient(final BrowserVersion aBrowserVersion) {
+    final Future<WebClient> tmpFuture = warmWebClients.remove(aBrowserVersion);
+    if (null == tmpFuture) {
+      return null;
     }
-    // webClient.setAjaxController(new NicelyResynchronizingAjaxController());
-    if (tmpConfiguration.startJsDebugger()) {
-      WebClientUtils.attachVisualDebugger(webClient);
+    return takeWarmWebClient(tmpFuture);
+  }
+
+  private WebClient takeWarmWebClient(final Future<WebClient> aFuture) {
+    try {
+      return aFuture.get();
+    } catch (final ExecutionException e) {
+      LOG.warn("Could not prepare the WebClient in the background.", e.getCause());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Starts preparing the WebClient for the session following the one for the given browser type.
+   * The sessions are started for every test case and browser type in the configured order; so the next session
+   * will use the next configured browser type.<br>
+   * The browser does not know whether there is a next session at all; therefore after the last session of a run
+   * one WebClient is prepared in vain. It costs the creation time (in the background) and the memory until it is
+   * closed by {@link #close()}.
+   *
+   * @param aBrowserType the browser type of the current session
+   */
+  private void warmUpWebClientForNextSession(final IBrowser.BrowserType aBrowserType) {
+    if (null == warmUpExecutor) {
+      return;
+    }
+
+    final List<BrowserType> tmpBrowserTypes = wetatorEngine.getConfiguration().getBrowserTypes();
+    final int tmpIndex = tmpBrowserTypes.indexOf(aBrowserType);
+    final BrowserType tmpNextBrowserType = tmpBrowserTypes.get((tmpIndex + 1) % tmpBrowserTypes.size());
+    final BrowserVersion tmpNextBrowserVersion = determineBrowserVersionFor(tmpNextBrowserType);
+    if (!warmWebClients.containsKey(tmpNextBrowserVersion)) {
+      warmWebClients.put(tmpNextBrowserVersion, warmUpExecutor.submit(() -> createWebClient(tmpNextBrowserVersion)));
     }
   }
 
   @Override
   public void endSession() {
+    if (animationFrameWaitCount > 0) {
+      LOG.info("Animation frames: " + animationFrameCount + " frame(s) in " + animationFrameWaitCount + " wait(s).");
+    }
+    animationFrameCount = 0;
+    animationFrameWaitCount = 0;
+
+    // the report is created at the end of the run; all stored responses have to be there
+    if (null != snapshotWriter) {
+      snapshotWriter.flush();
+    }
+    if (null != snapshotArchive) {
+      try {
+        snapshotArchive.writeIndex();
+      } catch (final IOException e) {
+        LOG.error("Could not write the snapshot archive index.", e);
+      }
+      final long tmpFiles = snapshotArchive.getFileCount();
+      if (tmpFiles > 0) {
+        final double tmpMegaBytes = snapshotArchive.getBytes() / (1024d * 1024d);
+        final double tmpSeconds = Math.max(snapshotArchive.getWriteTimeNanos(), 1) / 1000000000d;
+        wetatorEngine.informListenersInfo("snapshotArchiveStatistics", tmpFiles, tmpMegaBytes,
+            snapshotArchive.getArchiveCount(), tmpFiles / tmpSeconds, tmpMegaBytes / tmpSeconds);
+      }
+      snapshotArchive.resetStatistics();
+    }
+
     if (null != webClient) {
+      final ResponseStore tmpResponseStore = getResponseStore(webClient.getBrowserVersion());
+      final ResponseStore.HarvestStatistics tmpHarvestStatistics = tmpResponseStore.getHarvestStatistics();
+      if (tmpHarvestStatistics.getResourceCount() > 0) {
+        wetatorEngine.informListenersInfo("resourceHarvestStatistics", tmpHarvestStatistics.getReusedCount(),
+            tmpHarvestStatistics.getResourceCount(), tmpHarvestStatistics.getReusedBytes() / 1024d,
+            tmpHarvestStatistics.getFetchedBytes() / 1024d, tmpHarvestStatistics.getNanos() / 1000000000d);
+      }
+      tmpResponseStore.resetHarvestStatistics();
+      tmpResponseStore.closeResourceFetcher();
+
+      final SnapshotDeltaEncoder tmpDeltaEncoder = tmpResponseStore.getSnapshotDeltaEncoder();
+      if (null != tmpDeltaEncoder) {
+        if (tmpDeltaEncoder.getDeltaCount() > 0) {
+          final double tmpFullKiloBytes = tmpDeltaEncoder.getFullSize() / 1024d;
+          final double tmpDeltaKiloBytes = tmpDeltaEncoder.getDeltaSize() / 1024d;
+          wetatorEngine.informListenersInfo("snapshotDeltaStatistics", tmpDeltaEncoder.getDeltaCount(),
+              tmpDeltaEncoder.getSnapshotCount(), tmpDeltaKiloBytes, tmpFullKiloBytes,
+              100d - tmpDeltaKiloBytes * 100d / tmpFullKiloBytes);
+        }
+        tmpDeltaEncoder.resetStatistics();
+      }
+
+      final Cache tmpCache = webClient.getCache();
+      if (tmpCache instanceof SharedHttpCache) {
+        final SharedHttpCache tmpHttpCache = (SharedHttpCache) tmpCache;
+        final long tmpRequests = tmpHttpCache.getRequestCount();
+        if (tmpRequests > 0) {
+          wetatorEngine.informListenersInfo("httpCacheStatistics", tmpHttpCache.getHitCount(), tmpRequests,
+              tmpHttpCache.getHitCount() * 100d / tmpRequests, tmpHttpCache.getDiskHitCount(),
+              tmpHttpCache.getSavedBytes() / 1024d);
+        }
+        // the statistics are reported per session
+        tmpHttpCache.resetStatistics();
+        // detach the shared cache, closing the client clears the cache
+        webClient.setCache(new Cache());
+      }
+
+      if (null != currentScriptCache) {
+        final long tmpHits = currentScriptCache.getHitCount();
+        final long tmpScripts = tmpHits + currentScriptCache.getMissCount();
+        if (tmpScripts > 0) {
+          wetatorEngine.informListenersInfo("scriptCacheStatistics", tmpHits, tmpScripts);
+        }
+        // the statistics are reported per session
+        currentScriptCache.resetStatistics();
+        currentScriptCache = null;
+      }
+
       try {
         // unset the onbeforeunload handler to avoid it interfering
         webClient.setOnbeforeunloadHandler(null);
@@ -876,7 +1191,14 @@ public final class HtmlUnitBrowser implements IBrowser {
     @SuppressWarnings("hiding")
     private static final Logger LOG = LogManager.getLogger(JavaScriptJobFilter.class);
 
+    /** The number of job verdicts to remember. */
+    private static final int MAX_CACHED_VERDICTS = 1000;
+
     private List<SearchPattern> patterns;
+    /** All patterns combined into one automaton; created lazily. */
+    private SearchPattern unionPattern;
+    /** Jobs keep their id (even the periodic ones); therefore every job has to be classified only once. */
+    private Map<Integer, Boolean> verdicts;
     private boolean isDebugEnabled;
 
     /**
@@ -885,7 +1207,14 @@ public final class HtmlUnitBrowser implements IBrowser {
     public JavaScriptJobFilter() {
       super();
       patterns = new ArrayList<>();
+      verdicts = new LinkedHashMap<Integer, Boolean>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
 
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, Boolean> anEldest) {
+          return size() > MAX_CACHED_VERDICTS;
+        }
+      };
     }
 
     /**
@@ -893,20 +1222,43 @@ public final class HtmlUnitBrowser implements IBrowser {
      *
      * @param aPattern the pattern to add
      */
-    public void addPattern(final SearchPattern aPattern) {
+    public synchronized void addPattern(final SearchPattern aPattern) {
       patterns.add(aPattern);
+      unionPattern = null;
+      verdicts.clear();
     }
 
     @Override
-    public boolean passes(final JavaScriptJob aJob) {
+    public synchronized boolean passes(final JavaScriptJob aJob) {
+      final Integer tmpId = aJob.getId();
+      if (null != tmpId) {
+        final Boolean tmpVerdict = verdicts.get(tmpId);
+        if (null != tmpVerdict) {
+          return tmpVerdict;
+        }
+      }
+
+      final boolean tmpPasses = classify(aJob);
+      if (null != tmpId) {
+        verdicts.put(tmpId, tmpPasses);
+      }
+      return tmpPasses;
+    }
+
+    private boolean classify(final JavaScriptJob aJob) {
+      if (patterns.isEmpty()) {
+        return true;
+      }
+      if (null == unionPattern) {
+        unionPattern = SearchPattern.compileUnion(patterns);
+      }
+
       final String tmpJob = aJob.toString().replace("\n", "").replace("\r", "");
-      for (final SearchPattern tmpPattern : patterns) {
-        if (tmpPattern.matches(tmpJob)) {
-          if (isDebugEnabled && LOG.isDebugEnabled()) {
-            LOG.debug("JsJob filtered out: '" + tmpJob + "'"); // NOPMD
-          }
-          return false;
+      if (unionPattern.matches(tmpJob)) {
+        if (isDebugEnabled && LOG.isDebugEnabled()) {
+          LOG.debug("JsJob filtered out: '" + tmpJob + "'"); // NOPMD
         }
+        return false;
       }
       return true;
     }
@@ -1006,9 +1358,19 @@ public final class HtmlUnitBrowser implements IBrowser {
       while ((tmpNow = System.currentTimeMillis()) < tmpEndTime) {
         final HtmlPage tmpHtmlPage = (HtmlPage) tmpPage;
 
-        tmpPendingJobs = areJobsPendig(tmpHtmlPage, tmpEndTime - tmpNow);
-        if (tmpPendingJobs) {
-          continue;
+        if (jsVirtualTime) {
+          // run the jobs due right now; instead of waiting for
+          // the next one we move the clock forward
+          tmpPendingJobs = areJobsPendig(tmpHtmlPage, 1);
+          if (tmpPendingJobs) {
+            tmpEndTime -= advanceVirtualTime(tmpHtmlPage, tmpEndTime - tmpNow);
+            continue;
+          }
+        } else {
+          tmpPendingJobs = areJobsPendig(tmpHtmlPage, tmpEndTime - tmpNow);
+          if (tmpPendingJobs) {
+            continue;
+          }
         }
 
         if (tmpPage == getCurrentPage()) {
@@ -1026,20 +1388,7 @@ public final class HtmlUnitBrowser implements IBrowser {
     }
 
     // handle animationFrames
-    final Window tmpWin = tmpPage.getEnclosingWindow().getTopWindow().getScriptableObject();
-
-    // TODO replace the hard coded second
-    final long tmpTimeout = Math.max(1000, tmpEndTime - System.currentTimeMillis());
-    tmpEndTime = System.currentTimeMillis() + tmpTimeout;
-    int tmpPendingAnimationFrames = tmpWin.animateAnimationsFrames();
-    while (tmpPendingAnimationFrames > 0 && System.currentTimeMillis() < tmpEndTime) {
-      tmpPendingAnimationFrames = tmpWin.animateAnimationsFrames();
-    }
-
-    if (tmpPendingAnimationFrames > 0) {
-      wetatorEngine.informListenersWarn("stillAnimataionFramesPending",
-          new Object[] { tmpTimeout / 1000d, tmpPendingAnimationFrames }, (String) null);
-    }
+    animateFrames(tmpPage, Math.max(jsTimeoutInMillis, tmpEndTime - System.currentTimeMillis()));
 
     if (tmpPendingJobs && tmpPage.isHtmlPage()) {
       wetatorEngine.informListenersWarn("stillJobsPending", new Object[] { aTimeoutInMillis / 1000d },
@@ -1049,17 +1398,357 @@ public final class HtmlUnitBrowser implements IBrowser {
     return false;
   }
 
+  /**
+   * Runs the requested animation frames of the top window of the given page.<br>
+   * Pages using a requestAnimationFrame loop request a new frame from every frame; therefore we stop as soon
+   * as a few frames in a row did not change the dom. As long as the frames are changing the dom we continue up to
+   * {@value #MAX_ANIMATION_FRAMES} frames (or the timeout); only if the frames are still changing the dom
+   * afterwards the listeners are warned.
+   *
+   * @param aPage the page
+   * @param aTimeoutInMillis the maximum time to spend
+   */
+  private void animateFrames(final Page aPage, final long aTimeoutInMillis) {
+    final WebWindow tmpTopWindow = aPage.getEnclosingWindow().getTopWindow();
+    final Window tmpWin = tmpTopWindow.getScriptableObject();
+
+    // the dom of the top page tells us whether the frames are doing something
+    final DomChangeCounter tmpCounter = new DomChangeCounter();
+    final Page tmpTopPage = tmpTopWindow.getEnclosedPage();
+    HtmlPage tmpTopHtmlPage = null;
+    if (null != tmpTopPage && tmpTopPage.isHtmlPage()) {
+      tmpTopHtmlPage = (HtmlPage) tmpTopPage;
+      tmpTopHtmlPage.addDomChangeListener(tmpCounter);
+      tmpTopHtmlPage.addHtmlAttributeChangeListener(tmpCounter);
+      tmpTopHtmlPage.addCharacterDataChangeListener(tmpCounter);
+    }
+
+    final long tmpEndTime = System.currentTimeMillis() + aTimeoutInMillis;
+    int tmpFrames = 0;
+    int tmpIdleFrames = 0;
+    int tmpPendingAnimationFrames;
+    try {
+      tmpPendingAnimationFrames = tmpWin.animateAnimationsFrames();
+      if (tmpPendingAnimationFrames > 0 || tmpCounter.changes > 0) {
+        // we don't know if there was a frame before
+        tmpFrames++;
+      }
+      while (tmpPendingAnimationFrames > 0 && tmpIdleFrames < MAX_IDLE_ANIMATION_FRAMES
+          && tmpFrames < MAX_ANIMATION_FRAMES && System.currentTimeMillis() < tmpEndTime) {
+        final int tmpChanges = tmpCounter.changes;
+        tmpPendingAnimationFrames = tmpWin.animateAnimationsFrames();
+        tmpFrames++;
+        if (tmpChanges == tmpCounter.changes) {
+          tmpIdleFrames++;
+        } else {
+          tmpIdleFrames = 0;
+        }
+      }
+    } finally {
+      if (null != tmpTopHtmlPage) {
+        tmpTopHtmlPage.removeDomChangeListener(tmpCounter);
+        tmpTopHtmlPage.removeHtmlAttributeChangeListener(tmpCounter);
+        tmpTopHtmlPage.removeCharacterDataChangeListener(tmpCounter);
+      }
+    }
+
+    if (tmpFrames > 0) {
+      animationFrameCount += tmpFrames;
+      animationFrameWaitCount++;
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Animated " + tmpFrames + " frame(s); " + tmpCounter.changes + " dom change(s); "
+            + tmpPendingAnimationFrames + " frame(s) pending.");
+      }
+    }
+
+    if (tmpPendingAnimationFrames > 0 && tmpIdleFrames < MAX_IDLE_ANIMATION_FRAMES) {
+      // the frames are still changing the dom
+      wetatorEngine.informListenersWarn("stillAnimationFramesPending",
+          new Object[] { aTimeoutInMillis / 1000d, tmpPendingAnimationFrames, tmpFrames }, (String) null);
+    }
+  }
+
+  /**
+   * Counts the changes of the dom of a page.
+   */
+  private static final class DomChangeCounter
+      implements DomChangeListener, HtmlAttributeChangeListener, CharacterDataChangeListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private int changes;
+
+    @Override
+    public void nodeAdded(final DomChangeEvent anEvent) {
+      changes++;
+    }
+
+    @Override
+    public void nodeDeleted(final DomChangeEvent anEvent) {
+      changes++;
+    }
+
+    @Override
+    public void attributeAdded(final HtmlAttributeChangeEvent anEvent) {
+      changes++;
+    }
+
+    @Override
+    public void attributeRemoved(final HtmlAttributeChangeEvent anEvent) {
+      changes++;
+    }
+
+    @Override
+    public void attributeReplaced(final HtmlAttributeChangeEvent anEvent) {
+      changes++;
+    }
+
+    @Override
+    public void characterDataChanged(final CharacterDataChangeEvent anEvent) {
+      changes++;
+    }
+  }
+
+  /**
+   * Lets the given time pass for the JavaScript jobs of the current page. If the virtual time is enabled
+   * (see {@link WetatorConfiguration#isJsVirtualTimeEnabled()}) all jobs scheduled within this time are
+   * executed without waiting for the real time to pass; otherwise this simply sleeps.
+   *
+   * @param aTimeInMillis the time to pass
+   * @throws BackendException in case of problems
+   * @throws InterruptedException if the waiting was interrupted
+   */
+  public void letTimePass(final long aTimeInMillis) throws BackendException, InterruptedException {
+    if (!jsVirtualTime) {
+      Thread.sleep(aTimeInMillis);
+      return;
+    }
+
+    final Page tmpPage = getCurrentPage();
+    if (!tmpPage.isHtmlPage()) {
+      Thread.sleep(aTimeInMillis);
+      return;
+    }
+
+    final HtmlPage tmpHtmlPage = (HtmlPage) tmpPage;
+    // never slower than the real time
+    final long tmpEndTime = System.currentTimeMillis() + aTimeInMillis;
+    long tmpRemaining = aTimeInMillis;
+    while (tmpRemaining > 0 && System.currentTimeMillis() < tmpEndTime && tmpPage == getCurrentPage()) {
+      if (!areJobsPendig(tmpHtmlPage, 1)) {
+        break;
+      }
+      tmpRemaining -= advanceVirtualTime(tmpHtmlPage, tmpRemaining);
+    }
+  }
+
+  /**
+   * @return the highest id of all JavaScript jobs currently scheduled for the current page (including the frames);
+   *         -1 if there are no jobs
+   * @throws BackendException in case of problems
+   */
+  public int getNewestJobId() throws BackendException {
+    final Page tmpPage = getCurrentPage();
+    if (!tmpPage.isHtmlPage()) {
+      return -1;
+    }
+
+    final List<JavaScriptJobManager> tmpJobManagers = new ArrayList<>();
+    collectJobManagers((HtmlPage) tmpPage, tmpJobManagers);
+
+    final NewestJavaScriptJobCollector tmpCollector = new NewestJavaScriptJobCollector();
+    for (final JavaScriptJobManager tmpJobManager : tmpJobManagers) {
+      tmpJobManager.getJobCount(tmpCollector);
+    }
+    return tmpCollector.newestJobId;
+  }
+
+  /**
+   * Waits for the JavaScript jobs scheduled after the job with the given id (see {@link #getNewestJobId()}).
+   * In contrast to {@link #waitForImmediateJobs(long)} all the jobs already known are ignored; therefore
+   * this returns immediately if nothing new was scheduled.<br>
+   * There is no warning if the jobs are not finished in the time frame.
+   *
+   * @param aJobId the id of the newest job known before
+   * @param aTimeoutInMillis the maximum time to wait
+   * @return true if there are still new jobs pending
+   * @throws BackendException in case of problems
+   */
+  public boolean waitForJobsScheduledAfter(final int aJobId, final long aTimeoutInMillis) throws BackendException {
+    final Page tmpPage = getCurrentPage();
+    if (!tmpPage.isHtmlPage()) {
+      return false;
+    }
+
+    final HtmlPage tmpHtmlPage = (HtmlPage) tmpPage;
+    final NewJavaScriptJobFilter tmpFilter = new NewJavaScriptJobFilter(jobFilter, aJobId);
+    boolean tmpPendingJobs = false;
+    long tmpEndTime = System.currentTimeMillis() + aTimeoutInMillis;
+    long tmpNow;
+    while ((tmpNow = System.currentTimeMillis()) < tmpEndTime) {
+      if (jsVirtualTime) {
+        tmpPendingJobs = areJobsPendig(tmpHtmlPage, 1, tmpFilter);
+        if (tmpPendingJobs) {
+          tmpEndTime -= advanceVirtualTime(tmpHtmlPage, tmpEndTime - tmpNow, tmpFilter);
+        }
+      } else {
+        tmpPendingJobs = areJobsPendig(tmpHtmlPage, tmpEndTime - tmpNow, tmpFilter);
+      }
+
+      // if the page was changed, the caller has to wait for the new one
+      if (!tmpPendingJobs || tmpPage != getCurrentPage()) {
+        break;
+      }
+    }
+    return tmpPendingJobs;
+  }
+
+  /**
+   * Moves the (virtual) clock of the given page and all its frames forward to the execution time of the next job,
+   * but not more than the given maximum.<br>
+   * HtmlUnit schedules the jobs using the system time; therefore we are moving the jobs instead of the clock. All
+   * jobs are moved by the same amount, this preserves the order of the jobs.<br>
+   * The javascript clock (<code>Date.now()</code>, <code>performance.now()</code>) is not moved; scripts
+   * comparing timestamps see less time passing than the scheduled jobs suggest.
+   *
+   * @param aHtmlPage the page
+   * @param aMaxMillis the maximum time to advance
+   * @return the time the clock was moved forward
+   */
+  private long advanceVirtualTime(final HtmlPage aHtmlPage, final long aMaxMillis) {
+    return advanceVirtualTime(aHtmlPage, aMaxMillis, jobFilter);
+  }
+
+  private long advanceVirtualTime(final HtmlPage aHtmlPage, final long aMaxMillis,
+      final com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter aFilter) {
+    final List<JavaScriptJobManager> tmpJobManagers = new ArrayList<>();
+    collectJobManagers(aHtmlPage, tmpJobManagers);
+
+    long tmpAdvance = aMaxMillis;
+    final long tmpNow = System.currentTimeMillis();
+    for (final JavaScriptJobManager tmpJobManager : tmpJobManagers) {
+      final JavaScriptJob tmpJob = tmpJobManager.getEarliestJob(aFilter);
+      if (null != tmpJob) {
+        tmpAdvance = Math.min(tmpAdvance, tmpJob.getTargetExecutionTime() - tmpNow);
+      }
+    }
+    if (tmpAdvance <= 0) {
+      // something is already due
+      return 0;
+    }
+
+    final JavaScriptJobTimeShifter tmpShifter = new JavaScriptJobTimeShifter(tmpAdvance);
+    for (final JavaScriptJobManager tmpJobManager : tmpJobManagers) {
+      // the manager visits every job, including the filtered ones
+      tmpJobManager.getJobCount(tmpShifter);
+    }
+    return tmpAdvance;
+  }
+
+  private void collectJobManagers(final HtmlPage aHtmlPage, final List<JavaScriptJobManager> aJobManagers) {
+    aJobManagers.add(aHtmlPage.getEnclosingWindow().getJobManager());
+
+    for (final FrameWindow tmpFrameWindow : aHtmlPage.getFrames()) {
+      final Page tmpPage = tmpFrameWindow.getEnclosedPage();
+      if (tmpPage.isHtmlPage()) {
+        collectJobManagers((HtmlPage) tmpPage, aJobManagers);
+      }
+    }
+  }
+
+  /**
+   * Moves every visited job the given time towards the present.<br>
+   * The job manager offers no access to the scheduled jobs, but it passes all of them to the filter
+   * (inside the lock of the manager).
+   */
+  private static final class JavaScriptJobTimeShifter
+      implements com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter {
+
+    private long shiftInMillis;
+
+    /**
+     * The constructor.
+     *
+     * @param aShiftInMillis the time to move the jobs
+     */
+    JavaScriptJobTimeShifter(final long aShiftInMillis) {
+      super();
+      shiftInMillis = aShiftInMillis;
+    }
+
+    @Override
+    public boolean passes(final JavaScriptJob aJob) {
+      aJob.setTargetExecutionTime(aJob.getTargetExecutionTime() - shiftInMillis);
+      return false;
+    }
+  }
+
+  /**
+   * Remembers the highest id of all visited jobs.<br>
+   * The ids are increasing; every job scheduled later will have a higher id.
+   */
+  private static final class NewestJavaScriptJobCollector
+      implements com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter {
+
+    private int newestJobId = -1;
+
+    @Override
+    public boolean passes(final JavaScriptJob aJob) {
+      final Integer tmpId = aJob.getId();
+      if (null != tmpId && tmpId > newestJobId) {
+        newestJobId = tmpId;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Accepts only the jobs scheduled after a given job (and passing the configured filter).
+   */
+  private static final class NewJavaScriptJobFilter
+      implements com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter {
+
+    private JavaScriptJobFilter filter;
+    private int jobId;
+
+    /**
+     * The constructor.
+     *
+     * @param aFilter the configured filter; may be null
+     * @param aJobId the id of the newest job to ignore
+     */
+    NewJavaScriptJobFilter(final JavaScriptJobFilter aFilter, final int aJobId) {
+      super();
+      filter = aFilter;
+      jobId = aJobId;
+    }
+
+    @Override
+    public boolean passes(final JavaScriptJob aJob) {
+      final Integer tmpId = aJob.getId();
+      if (null == tmpId || tmpId <= jobId) {
+        return false;
+      }
+      return null == filter || filter.passes(aJob);
+    }
+  }
+
   private boolean areJobsPendig(final HtmlPage aHtmlPage, final long anDuration) {
+    return areJobsPendig(aHtmlPage, anDuration, jobFilter);
+  }
+
+  private boolean areJobsPendig(final HtmlPage aHtmlPage, final long anDuration,
+      final com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobFilter aFilter) {
     final JavaScriptJobManager tmpJobManager = aHtmlPage.getEnclosingWindow().getJobManager();
 
-    final int tmpJobCount = tmpJobManager.waitForJobsStartingBefore(anDuration, jobFilter);
+    final int tmpJobCount = tmpJobManager.waitForJobsStartingBefore(anDuration, aFilter);
     if (tmpJobCount > 0) {
       return true;
     }
 
     for (final FrameWindow tmpFrameWindow : aHtmlPage.getFrames()) {
       final Page tmpPage = tmpFrameWindow.getEnclosedPage();
-      if (tmpPage.isHtmlPage() && areJobsPendig((HtmlPage) tmpPage, anDuration)) {
+      if (tmpPage.isHtmlPage() && areJobsPendig((HtmlPage) tmpPage, anDuration, aFilter)) {
         return true;
       }
     }
@@ -1465,4 +2154,80 @@ public final class HtmlUnitBrowser implements IBrowser {
       throw new ActionException(tmpMessage, e);
     }
   }
+
+  @Override
+  public void saveSessionState(final String aKey) throws ActionException {
+    try {
+      final Page tmpPage = getCurrentPage();
+      final SessionState tmpState = new SessionState(webClient.getCookieManager().getCookies(), tmpPage.getUrl());
+
+      // the storage is only available for html pages
+      if (tmpPage instanceof HtmlPage) {
+        final StorageHolder tmpStorageHolder = webClient.getStorageHolder();
+        tmpState.localStorage.putAll(tmpStorageHolder.getStore(StorageHolder.Type.LOCAL_STORAGE, tmpPage));
+        tmpState.sessionStorage.putAll(tmpStorageHolder.getStore(StorageHolder.Type.SESSION_STORAGE, tmpPage));
+      }
+      sessionStates.put(getSessionStateKey(aKey), tmpState);
+    } catch (final BackendException e) {
+      final String tmpMessage = Messages.getMessage("browserBackendError", e.getMessage());
+      throw new ActionException(tmpMessage, e);
+    }
+  }
+
+  @Override
+  public boolean restoreSessionState(final String aKey) throws ActionException {
+    final SessionState tmpState = sessionStates.get(getSessionStateKey(aKey));
+    if (null == tmpState) {
+      return false;
+    }
+
+    for (final Cookie tmpCookie : tmpState.cookies) {
+      webClient.getCookieManager().addCookie(tmpCookie);
+    }
+    openUrl(tmpState.url);
+
+    if (!tmpState.localStorage.isEmpty() || !tmpState.sessionStorage.isEmpty()) {
+      try {
+        final Page tmpPage = getCurrentPage();
+        final StorageHolder tmpStorageHolder = webClient.getStorageHolder();
+        tmpStorageHolder.getStore(StorageHolder.Type.LOCAL_STORAGE, tmpPage).putAll(tmpState.localStorage);
+        tmpStorageHolder.getStore(StorageHolder.Type.SESSION_STORAGE, tmpPage).putAll(tmpState.sessionStorage);
+      } catch (final BackendException e) {
+        final String tmpMessage = Messages.getMessage("browserBackendError", e.getMessage());
+        throw new ActionException(tmpMessage, e);
+      }
+      // the scripts of the page have to see the storage
+      openUrl(tmpState.url);
+    }
+    return true;
+  }
+
+  private String getSessionStateKey(final String aKey) {
+    // the session states are not shared between different browsers
+    return webClient.getBrowserVersion().getNickname() + '|' + aKey;
+  }
+
+  /**
+   * The state of a session saved by {@link HtmlUnitBrowser#saveSessionState(String)}.
+   */
+  private static final class SessionState {
+    private Set<Cookie> cookies;
+    private URL url;
+    private Map<String, String> localStorage;
+    private Map<String, String> sessionStorage;
+
+    /**
+     * The constructor.
+     *
+     * @param aCookies the cookies
+     * @param aUrl the url of the current page
+     */
+    SessionState(final Set<Cookie> aCookies, final URL aUrl) {
+      // the cookies are immutable
+      cookies = new LinkedHashSet<>(aCookies);
+      url = aUrl;
+      localStorage = new HashMap<>();
+      sessionStorage = new HashMap<>();
+    }
+  }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stores the resources (css, images, fonts) of the {@link ResponseStore}s only once per content.<br>
+ * The content is written to a shared directory named by the hash of the content (the blob); the file in the response
+ * directory is a hard link to the blob. This way the response directories stay stand-alone but the same resource
+ * uses the disk space only once for all the browsers and runs using this directory. If the file system does not
+ * support hard links the blob is copied.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class ResourceBlobStore {
+
+  private static final Logger LOG = LogManager.getLogger(ResourceBlobStore.class);
+
+  private File blobDir;
+  private volatile boolean linksSupported = true;
+
+  private AtomicLong storeCount = new AtomicLong();
+  private AtomicLong reuseCount = new AtomicLong();
+  private AtomicLong reusedBytes = new AtomicLong();
+
+  /**
+   * The constructor.
+   *
+   * @param aBlobDir the directory to store the blobs in
+   */
+  public ResourceBlobStore(final File aBlobDir) {
+    super();
+    blobDir = aBlobDir;
+  }
+
+  /**
+   * Writes the given content to the given file; the parent directories are created if needed.
+   *
+   * @param aFile the file to write
+   * @param aContent the content
+   * @throws IOException in case of error
+   */
+  public void store(final File aFile, final byte[] aContent) throws IOException {
+    final String tmpHash = hash(aContent);
+    final File tmpBlobSubDir = new File(blobDir, tmpHash.substring(0, 2));
+    final Path tmpBlob = new File(tmpBlobSubDir, tmpHash).toPath();
+
+    storeCount.incrementAndGet();
+    if (Files.exists(tmpBlob)) {
+      reuseCount.incrementAndGet();
+      reusedBytes.addAndGet(aContent.length);
+    } else {
+      FileUtils.forceMkdir(tmpBlobSubDir);
+      // other threads (or processes) may write the same blob
+      final Path tmpTempFile = Files.createTempFile(tmpBlobSubDir.toPath(), tmpHash, ".tmp");
+      Files.write(tmpTempFile, aContent);
+      Files.move(tmpTempFile, tmpBlob, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    FileUtils.forceMkdir(aFile.getParentFile());
+    final Path tmpTarget = aFile.toPath();
+    Files.deleteIfExists(tmpTarget);
+    if (linksSupported) {
+      try {
+        Files.createLink(tmpTarget, tmpBlob);
+        return;
+      } catch (final UnsupportedOperationException | IOException e) {
+        linksSupported = false;
+        LOG.info("Could not create the hard link '" + FilenameUtils.normalize(aFile.getAbsolutePath())
+            + "'; the resources are copied from now on (" + e + ").");
+      }
+    }
+    Files.copy(tmpBlob, tmpTarget, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * @return the number of resources stored
+   */
+  public long getStoreCount() {
+    return storeCount.get();
+  }
+
+  /**
+   * @return the number of resources whose content was already stored
+   */
+  public long getReuseCount() {
+    return reuseCount.get();
+  }
+
+  /**
+   * @return the number of bytes not written because the content was already stored
+   */
+  public long getReusedBytes() {
+    return reusedBytes.get();
+  }
+
+  private static String hash(final byte[] aContent) {
+    try {
+      final MessageDigest tmpDigest = MessageDigest.getInstance("SHA-1");
+      final byte[] tmpHash = tmpDigest.digest(aContent);
+
+      final StringBuilder tmpResult = new StringBuilder(tmpHash.length * 2);
+      for (final byte tmpByte : tmpHash) {
+        tmpResult.append(Character.forDigit((tmpByte >> 4) & 0xF, 16));
+        tmpResult.append(Character.forDigit(tmpByte & 0xF, 16));
+      }
+      return tmpResult.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      // every jvm has to support SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+}
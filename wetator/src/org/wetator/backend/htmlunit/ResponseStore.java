@@ -16,41 +16,61 @@
 
 package org.wetator.backend.htmlunit;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wetator.backend.htmlunit.util.ContentTypeUtil;
 import org.wetator.exception.ResourceException;
+import org.wetator.util.EncodingWriter;
 
 import com.gargoylesoftware.htmlunit.FailingHttpStatusCodeException;
+import com.gargoylesoftware.htmlunit.HttpHeader;
+import com.gargoylesoftware.htmlunit.HttpWebConnection;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlEmbed;
 import com.gargoylesoftware.htmlunit.html.HtmlImage;
+import com.gargoylesoftware.htmlunit.html.HtmlImageInput;
 import com.gargoylesoftware.htmlunit.html.HtmlLink;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.Cookie;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
 
 /**
@@ -61,16 +81,41 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
  */
 public final class ResponseStore {
   private static final Logger LOG = LogManager.getLogger(ResponseStore.class);
-  private static final Pattern CSS_URL_PATTERN = Pattern.compile("url\\(\\s*([\"']?)(.*?)([\"']?)\\s*\\)");
-  private static final Pattern CSS_IMPORT_URL_PATTERN = Pattern.compile("@import\\s+([\"'])(.*?)([\"'])");
+  // url(...) (groups 1-3) or @import "..." (groups 4-6)
+  private static final Pattern CSS_REFERENCE_PATTERN = Pattern
+      .compile("url\\(\\s*([\"']?)(.*?)([\"']?)\\s*\\)|@import\\s+([\"'])(.*?)([\"'])");
   private static final int MAX_FILE_NAME_LENGTH = 200;
+  /** The maximum number of bytes of the pages kept in memory. */
+  private static final long MAX_RETAINED_BYTES = 64L * 1024L * 1024L;
+  /** Written instead of a dropped page; the page is already linked in the report. */
+  private static final byte[] DROPPED_PAGE_CONTENT = ("The snapshot was not kept because no command failed shortly "
+      + "afterwards (see wetator.snapshotRetention).").getBytes(StandardCharsets.UTF_8);
 
   private static long counter = 99999;
   private Map<String, String> fileNames;
+  private Set<String> resourceFileNames;
 
   private File outputDir;
   private boolean overwrite;
   private WebClient webClient;
+  private SnapshotWriter snapshotWriter;
+  private ResourceBlobStore resourceBlobStore;
+  private SnapshotArchive snapshotArchive;
+
+  private int retainedPageCount; // 0 if every page is written
+  private boolean retainPages;
+  private Deque<RetainedPage> retainedPages;
+  private long retainedBytes;
+
+  private ExecutorService resourceFetchExecutor;
+  private WebClient fetchClient; // the own client of the resource fetcher; created for the current webClient
+  private WebClient fetchClientOwner;
+  private WebConnection fetchWebConnection; // replaces the connection of the fetchClient; only used by tests
+  private Map<String, Future<WebResponse>> fetchedResources; // only valid during storePage()
+  private HarvestStatistics snapshotStatistics;
+  private HarvestStatistics sessionStatistics;
+
+  private SnapshotDeltaEncoder snapshotDeltaEncoder; // null if every page is written completely
 
   private File storeDir;
   private String relStoreDir;
@@ -87,12 +132,152 @@ public final class ResponseStore {
    * @param anOverwriteFlag the overwrite to set
    */
   public ResponseStore(final File anOutputDir, final String aBrowserSubdir, final boolean anOverwriteFlag) {
+    this(anOutputDir, aBrowserSubdir, anOverwriteFlag, null, null, null);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param anOutputDir the outputDir to set
+   * @param aBrowserSubdir the subdir for the specific browser this store is for
+   * @param anOverwriteFlag the overwrite to set
+   * @param aSnapshotWriter the writer for the files; if null the files are written immediately
+   * @param aResourceBlobStore the store for the content of the resources; if null every resource is written to the
+   *        response directory
+   * @param aSnapshotArchive the archive to write all files to; if null the files are written as single files
+   */
+  public ResponseStore(final File anOutputDir, final String aBrowserSubdir, final boolean anOverwriteFlag,
+      final SnapshotWriter aSnapshotWriter, final ResourceBlobStore aResourceBlobStore,
+      final SnapshotArchive aSnapshotArchive) {
     super();
     outputDir = anOutputDir;
     overwrite = anOverwriteFlag;
+    snapshotWriter = aSnapshotWriter;
+    resourceBlobStore = aResourceBlobStore;
+    snapshotArchive = aSnapshotArchive;
 
     initOutputDir(aBrowserSubdir);
     fileNames = new HashMap<>();
+    resourceFileNames = new HashSet<>();
+    retainedPages = new ArrayDeque<>();
+    fetchedResources = new HashMap<>();
+    snapshotStatistics = new HarvestStatistics();
+    sessionStatistics = new HarvestStatistics();
+  }
+
+  /**
+   * The resources of the pages (css, images) not downloaded already by the browser are fetched using the given
+   * executor while the page is written.
+   *
+   * @param anExecutor the executor to use; if null the resources are fetched one by one
+   */
+  public void setResourceFetchExecutor(final ExecutorService anExecutor) {
+    resourceFetchExecutor = anExecutor;
+  }
+
+  /**
+   * Helper for tests.
+   *
+   * @param aWebConnection the connection the resources are fetched with in the background
+   */
+  void setFetchWebConnection(final WebConnection aWebConnection) {
+    fetchWebConnection = aWebConnection;
+  }
+
+  /**
+   * Closes the client used to fetch the resources in the background; has to be called when the session ends.
+   */
+  public void closeResourceFetcher() {
+    if (null != fetchClient) {
+      fetchClient.close();
+      fetchClient = null;
+      fetchClientOwner = null;
+    }
+  }
+
+  /**
+   * @return the statistics about the resources stored since the last {@link #resetHarvestStatistics()}
+   */
+  public HarvestStatistics getHarvestStatistics() {
+    return sessionStatistics;
+  }
+
+  /**
+   * Resets the statistics about the stored resources.
+   */
+  public void resetHarvestStatistics() {
+    sessionStatistics = new HarvestStatistics();
+  }
+
+  /**
+   * Writes the following snapshots of a page as delta to a previous snapshot of the same page.
+   *
+   * @param aDeltaFlag true to enable the delta snapshots
+   */
+  public void setSnapshotDeltas(final boolean aDeltaFlag) {
+    if (aDeltaFlag) {
+      snapshotDeltaEncoder = new SnapshotDeltaEncoder();
+    } else {
+      snapshotDeltaEncoder = null;
+    }
+  }
+
+  /**
+   * @return the encoder of the delta snapshots; null if every page is written completely
+   */
+  SnapshotDeltaEncoder getSnapshotDeltaEncoder() {
+    return snapshotDeltaEncoder;
+  }
+
+  /**
+   * Keeps the given number of pages (and text contents) in memory instead of writing them; the older ones are
+   * dropped, also if the pages are written later. The memory is limited to 64 MB. The pages are
+   * written by {@link #writeRetainedPages()}. The resources of the pages are always written.
+   * <br>
+   * The pages are reported when they are stored; therefore a short note is written instead of every dropped page.
+   *
+   * @param aPageCount the number of pages to keep; 0 writes every page
+   */
+  public void setPageRetention(final int aPageCount) {
+    retainedPageCount = aPageCount;
+    discardRetainedPages();
+  }
+
+  /**
+   * Writes the pages kept in memory; all following pages are written, too, until
+   * {@link #discardRetainedPages()} is called.
+   */
+  public void writeRetainedPages() {
+    retainPages = false;
+    for (final RetainedPage tmpPage : retainedPages) {
+      try {
+        writeSnapshotFile(tmpPage.file, tmpPage.content);
+      } catch (final IOException e) {
+        LOG.error("Could not write file '" + FilenameUtils.normalize(tmpPage.file.getAbsolutePath()) + "'.", e);
+      }
+    }
+    retainedPages.clear();
+    retainedBytes = 0;
+  }
+
+  /**
+   * Drops the pages kept in memory; the following pages are kept in memory again (if enabled).
+   */
+  public void discardRetainedPages() {
+    retainPages = retainedPageCount > 0;
+    for (final RetainedPage tmpPage : retainedPages) {
+      writeDroppedPage(tmpPage);
+    }
+    retainedPages.clear();
+    retainedBytes = 0;
+  }
+
+  private void writeDroppedPage(final RetainedPage aPage) {
+    try {
+      writeSnapshotFile(aPage.file, DROPPED_PAGE_CONTENT);
+    } catch (final IOException e) {
+      LOG.error("Could not write file '" + FilenameUtils.normalize(aPage.file.getAbsolutePath()) + "'.", e);
+    }
   }
 
   /**
@@ -133,7 +318,7 @@ public final class ResponseStore {
       final StringBuilder tmpFileName = new StringBuilder("content_").append(getUniqueId()).append(".txt");
       tmpFile = new File(storeDir, tmpFileName.toString());
 
-      FileUtils.write(tmpFile, aContent, StandardCharsets.UTF_8);
+      writeFile(tmpFile, aContent.getBytes(StandardCharsets.UTF_8));
       return relStoreDir + "/" + tmpFileName;
     } catch (final IOException e) {
       throw new ResourceException("Could not write file '" + FilenameUtils.normalize(tmpFile.getAbsolutePath()) + "'.",
@@ -150,8 +335,28 @@ public final class ResponseStore {
    */
   public String storePage(final WebClient aWebClient, final Page aPage) {
     webClient = aWebClient;
+    if (fetchClientOwner != aWebClient) {
+      closeResourceFetcher();
+    }
 
-    return storePage(aPage);
+    snapshotStatistics = new HarvestStatistics();
+    try {
+      return storePage(aPage);
+    } finally {
+      // the resources fetched but not needed
+      for (final Future<WebResponse> tmpFuture : fetchedResources.values()) {
+        tmpFuture.cancel(true);
+      }
+      fetchedResources.clear();
+
+      sessionStatistics.add(snapshotStatistics);
+      if (LOG.isDebugEnabled() && snapshotStatistics.getResourceCount() > 0) {
+        LOG.debug("Resources of '" + aPage.getUrl() + "': " + snapshotStatistics.getReusedCount() + " of "
+            + snapshotStatistics.getResourceCount() + " reused (" + snapshotStatistics.getReusedBytes() + " bytes), "
+            + snapshotStatistics.getFetchedBytes() + " bytes fetched in "
+            + snapshotStatistics.getNanos() / 1000000 + "ms.");
+      }
+    }
   }
 
   /**
@@ -168,21 +373,41 @@ public final class ResponseStore {
           .append(tmpSuffix);
       tmpFile = new File(storeDir, tmpFileName.toString());
 
-      if (aPage instanceof HtmlPage) {
-        final XHtmlOutputter tmpHtmlOutputter = new XHtmlOutputter((HtmlPage) aPage, this);
-        tmpHtmlOutputter.writeTo(tmpFile);
-      } else {
-        final WebResponse tmpWebResponse = aPage.getWebResponse();
-
-        try (InputStream tmpIn = tmpWebResponse.getContentAsStream();
-            OutputStream tmpOutputStream = Files.newOutputStream(tmpFile.toPath())) {
-          final byte[] tmpBuffer = new byte[1024];
-          int tmpBytes;
-          while ((tmpBytes = tmpIn.read(tmpBuffer)) > 0) {
-            tmpOutputStream.write(tmpBuffer, 0, tmpBytes);
+      // the page is serialized in memory; only the file is written in the background
+      final byte[] tmpContent;
+      if (aPage instanceof HtmlPage && null != snapshotDeltaEncoder) {
+        final HtmlPage tmpHtmlPage = (HtmlPage) aPage;
+        fetchPageResources(tmpHtmlPage);
+        final StringBuilderWriter tmpOut = new StringBuilderWriter(64 * 1024);
+        final XHtmlOutputter tmpHtmlOutputter = new XHtmlOutputter(tmpHtmlPage, this);
+        tmpHtmlOutputter.writeTo(tmpOut);
+
+        final String tmpPage = tmpOut.toString();
+        final SnapshotDeltaEncoder.Delta tmpDelta = snapshotDeltaEncoder.encode(aPage.getUrl().toExternalForm(),
+            "response_" + getUniqueId() + ".js", tmpPage);
+        if (null == tmpDelta) {
+          tmpContent = tmpPage.getBytes(tmpHtmlPage.getCharset());
+        } else {
+          if (null != tmpDelta.getBaseScript()) {
+            // the base is needed by all the following deltas
+            writeResource(new File(storeDir, tmpDelta.getBaseScriptName()),
+                tmpDelta.getBaseScript().getBytes(StandardCharsets.UTF_8));
           }
+          tmpContent = tmpDelta.getPage().getBytes(StandardCharsets.UTF_8);
+        }
+      } else if (aPage instanceof HtmlPage) {
+        final HtmlPage tmpHtmlPage = (HtmlPage) aPage;
+        fetchPageResources(tmpHtmlPage);
+        final ByteArrayOutputStream tmpOut = new ByteArrayOutputStream(64 * 1024);
+        final XHtmlOutputter tmpHtmlOutputter = new XHtmlOutputter(tmpHtmlPage, this);
+        tmpHtmlOutputter.writeTo(new EncodingWriter(Channels.newChannel(tmpOut), tmpHtmlPage.getCharset()));
+        tmpContent = tmpOut.toByteArray();
+      } else {
+        try (InputStream tmpIn = aPage.getWebResponse().getContentAsStream()) {
+          tmpContent = IOUtils.toByteArray(tmpIn);
         }
       }
+      writeFile(tmpFile, tmpContent);
 
       return relStoreDir + "/" + tmpFileName;
     } catch (final IOException e) {
@@ -220,37 +445,9 @@ public final class ResponseStore {
       String tmpFileName = fileNames.get(aFullContentUrl.toExternalForm());
       if (null == tmpFileName) {
         // read data form url
-        final WebResponse tmpWebResponse;
-        if (null != aLink) {
-          tmpWebResponse = aLink.getWebResponse(true);
-
-          // e.g. empty src attrib
-          if (tmpWebResponse == null) {
-            LOG.warn("Ignoring link '" + aLink.asXml() + "'");
-            return null;
-          }
-        } else if (null != anImage) {
-          tmpWebResponse = anImage.getWebResponse(true);
-
-          // e.g. empty src attrib
-          if (tmpWebResponse == null) {
-            LOG.warn("Ignoring image '" + anImage.asXml() + "'");
-            return null;
-          }
-        } else {
-          // set the referer header like the browser does
-          final WebRequest tmpRequest = new WebRequest(aFullContentUrl);
-          tmpRequest.setAdditionalHeader("Referer", aBaseUrl.toExternalForm());
-          tmpWebResponse = webClient.loadWebResponse(tmpRequest);
-
-          // we have to check the result code
-          // see Ticket #42
-          try {
-            webClient.throwFailingHttpStatusCodeExceptionIfNecessary(tmpWebResponse);
-          } catch (final FailingHttpStatusCodeException e) {
-            LOG.warn("Could not read url '" + aFullContentUrl.toExternalForm() + "'.", e);
-            return null;
-          }
+        final WebResponse tmpWebResponse = loadResource(aBaseUrl, aFullContentUrl, aLink, anImage);
+        if (null == tmpWebResponse) {
+          return null;
         }
 
         // create path
@@ -306,31 +503,24 @@ public final class ResponseStore {
         // store the value already to prevent endless looping
         fileNames.put(aFullContentUrl.toExternalForm(), tmpFileName);
 
-        if (!tmpResourceFile.exists()) {
+        // the store dir is cleaned at startup; different urls may end up in the same file
+        if (resourceFileNames.add(tmpFileName)) {
           String tmpProcessed = null;
 
-          if (null != anImage) {
-            FileUtils.forceMkdir(tmpResourceFile.getParentFile());
-            anImage.saveAs(tmpResourceFile);
-          }
-
           final String tmpContentType = tmpWebResponse.getContentType();
           if ("text/css".equalsIgnoreCase(tmpContentType)) {
             final String tmpResponse = getContentAsStringWithoutBOM(tmpWebResponse);
             if (null != tmpResponse) {
-              FileUtils.forceMkdir(tmpResourceFile.getParentFile());
-
               // process all url(....) inside
               tmpProcessed = processCSS(aFullContentUrl, tmpResponse, StringUtils.countMatches(tmpFileName, "/"));
-              FileUtils.writeStringToFile(tmpResourceFile, tmpProcessed, StandardCharsets.UTF_8);
+              writeResource(tmpResourceFile, tmpProcessed.getBytes(StandardCharsets.UTF_8));
             }
           }
 
           if (tmpProcessed == null) {
-            FileUtils.forceMkdir(tmpResourceFile.getParentFile());
-            try (InputStream tmpInStream = tmpWebResponse.getContentAsStream();
-                OutputStream tmpOutStream = Files.newOutputStream(tmpResourceFile.toPath())) {
-              IOUtils.copy(tmpInStream, tmpOutStream);
+            // the content of images is read from the response, too
+            try (InputStream tmpInStream = tmpWebResponse.getContentAsStream()) {
+              writeResource(tmpResourceFile, IOUtils.toByteArray(tmpInStream));
             }
           }
         }
@@ -368,42 +558,282 @@ public final class ResponseStore {
    */
   public String processCSS(final URL aFullContentUrl, final String aCssContent, final int aDeep)
       throws MalformedURLException {
-    String tmpContent = aCssContent;
+    // find all the references first; this way the resources can be fetched together
+    final List<MatchResult> tmpReferences = new ArrayList<>();
+    final List<URL> tmpUrls = new ArrayList<>();
+    final Matcher tmpMatcher = CSS_REFERENCE_PATTERN.matcher(aCssContent);
+    while (tmpMatcher.find()) {
+      final String tmpReference = null == tmpMatcher.group(5) ? tmpMatcher.group(2) : tmpMatcher.group(5);
+      tmpReferences.add(tmpMatcher.toMatchResult());
+      tmpUrls.add(UrlUtils.toUrlUnsafe(UrlUtils.resolveUrl(aFullContentUrl, tmpReference)));
+    }
+    if (tmpReferences.isEmpty()) {
+      return aCssContent;
+    }
+    fetchResources(aFullContentUrl, tmpUrls);
+
+    final StringBuilder tmpContent = new StringBuilder(aCssContent.length() + tmpReferences.size() * 16);
     int tmpStart = 0;
-    Matcher tmpMatcher = CSS_URL_PATTERN.matcher(aCssContent);
-    while (tmpMatcher.find(tmpStart)) {
-      final URL tmpCssUrl = UrlUtils.toUrlUnsafe(UrlUtils.resolveUrl(aFullContentUrl, tmpMatcher.group(2)));
-      final String tmpNewUrl = storeContentFromUrl(aFullContentUrl, tmpCssUrl, null, null, aDeep, null);
-      if (null == tmpNewUrl) {
-        tmpStart = tmpMatcher.end();
-      } else {
-        final String tmpReplacement = "url(" + tmpMatcher.group(1) + tmpNewUrl + tmpMatcher.group(3) + ")";
-        tmpContent = tmpContent.substring(0, tmpMatcher.start()) + tmpReplacement
-            + tmpContent.substring(tmpMatcher.end());
-        tmpStart = tmpMatcher.start() + tmpReplacement.length();
+    for (int i = 0; i < tmpReferences.size(); i++) {
+      final String tmpNewUrl = storeContentFromUrl(aFullContentUrl, tmpUrls.get(i), null, null, aDeep, null);
+      if (null != tmpNewUrl) {
+        final MatchResult tmpReference = tmpReferences.get(i);
+        tmpContent.append(aCssContent, tmpStart, tmpReference.start());
+        if (null == tmpReference.group(5)) {
+          tmpContent.append("url(").append(tmpReference.group(1)).append(tmpNewUrl).append(tmpReference.group(3))
+              .append(')');
+        } else {
+          tmpContent.append("@import").append(tmpReference.group(4)).append(tmpNewUrl).append(tmpReference.group(6));
+        }
+        tmpStart = tmpReference.end();
+      }
+    }
+    tmpContent.append(aCssContent, tmpStart, aCssContent.length());
+
+    return tmpContent.toString();
+  }
 
-        tmpMatcher = CSS_URL_PATTERN.matcher(tmpContent);
+  /**
+   * Determines the response for the given resource. The response already downloaded by the browser is preferred;
+   * then the response fetched in the background and finally the resource is requested.
+   */
+  private WebResponse loadResource(final URL aBaseUrl, final URL aFullContentUrl, final HtmlLink aLink,
+      final HtmlImage anImage) throws IOException {
+    final long tmpStart = System.nanoTime();
+    try {
+      WebResponse tmpWebResponse = null;
+      if (null != aLink) {
+        tmpWebResponse = aLink.getWebResponse(false);
+      } else if (null != anImage) {
+        tmpWebResponse = anImage.getWebResponse(false);
       }
+      if (null == tmpWebResponse && null != webClient) {
+        tmpWebResponse = webClient.getCache().getCachedResponse(new WebRequest(aFullContentUrl));
+      }
+      if (null != tmpWebResponse) {
+        snapshotStatistics.reused(tmpWebResponse.getContentLength());
+        return tmpWebResponse;
+      }
+
+      final Future<WebResponse> tmpFetched = fetchedResources.remove(aFullContentUrl.toExternalForm());
+      if (null != tmpFetched) {
+        tmpWebResponse = getFetchedResource(aFullContentUrl, tmpFetched);
+      }
+
+      if (null == tmpWebResponse) {
+        if (null != aLink) {
+          tmpWebResponse = aLink.getWebResponse(true);
+
+          // e.g. empty src attrib
+          if (tmpWebResponse == null) {
+            LOG.warn("Ignoring link '" + aLink.asXml() + "'");
+            return null;
+          }
+        } else if (null != anImage) {
+          tmpWebResponse = anImage.getWebResponse(true);
+
+          // e.g. empty src attrib
+          if (tmpWebResponse == null) {
+            LOG.warn("Ignoring image '" + anImage.asXml() + "'");
+            return null;
+          }
+        } else {
+          // set the referer header like the browser does
+          final WebRequest tmpRequest = new WebRequest(aFullContentUrl);
+          tmpRequest.setAdditionalHeader("Referer", aBaseUrl.toExternalForm());
+          tmpWebResponse = webClient.loadWebResponse(tmpRequest);
+
+          // we have to check the result code
+          // see Ticket #42
+          try {
+            webClient.throwFailingHttpStatusCodeExceptionIfNecessary(tmpWebResponse);
+          } catch (final FailingHttpStatusCodeException e) {
+            LOG.warn("Could not read url '" + aFullContentUrl.toExternalForm() + "'.", e);
+            return null;
+          }
+        }
+      }
+      snapshotStatistics.fetched(tmpWebResponse.getContentLength());
+      return tmpWebResponse;
+    } finally {
+      snapshotStatistics.waited(System.nanoTime() - tmpStart);
     }
+  }
 
-    tmpStart = 0;
-    tmpMatcher = CSS_IMPORT_URL_PATTERN.matcher(tmpContent);
-    while (tmpMatcher.find(tmpStart)) {
-      final URL tmpCssUrl = UrlUtils.toUrlUnsafe(UrlUtils.resolveUrl(aFullContentUrl, tmpMatcher.group(2)));
-      final String tmpNewUrl = storeContentFromUrl(aFullContentUrl, tmpCssUrl, null, null, aDeep, null);
-      if (null == tmpNewUrl) {
-        tmpStart = tmpMatcher.end();
-      } else {
-        final String tmpReplacement = "@import" + tmpMatcher.group(1) + tmpNewUrl + tmpMatcher.group(3);
-        tmpContent = tmpContent.substring(0, tmpMatcher.start()) + tmpReplacement
-            + tmpContent.substring(tmpMatcher.end());
-        tmpStart = tmpMatcher.start() + tmpReplacement.length();
+  /**
+   * @return the fetched response; null if fetching failed
+   */
+  private WebResponse getFetchedResource(final URL aFullContentUrl, final Future<WebResponse> aFuture) {
+    try {
+      final WebResponse tmpWebResponse = aFuture.get();
+      webClient.throwFailingHttpStatusCodeExceptionIfNecessary(tmpWebResponse);
+      return tmpWebResponse;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final ExecutionException | FailingHttpStatusCodeException e) {
+      // requested again one by one; this reports the problem
+      LOG.debug("Fetching url '" + aFullContentUrl.toExternalForm() + "' failed.", e);
+    }
+    return null;
+  }
+
+  /**
+   * Starts fetching the resources of the given page not downloaded already by the browser.
+   */
+  private void fetchPageResources(final HtmlPage aPage) throws IOException {
+    if (null == resourceFetchExecutor) {
+      return;
+    }
+
+    final List<URL> tmpUrls = new ArrayList<>();
+    for (final HtmlElement tmpElement : aPage.getHtmlElementDescendants()) {
+      String tmpUrl = null;
+      if (tmpElement instanceof HtmlLink) {
+        final HtmlLink tmpLink = (HtmlLink) tmpElement;
+        if ("stylesheet".equalsIgnoreCase(tmpLink.getRelAttribute()) && null == tmpLink.getWebResponse(false)) {
+          tmpUrl = tmpLink.getHrefAttribute();
+        }
+      } else if (tmpElement instanceof HtmlImage) {
+        if (null == ((HtmlImage) tmpElement).getWebResponse(false)) {
+          tmpUrl = ((HtmlImage) tmpElement).getSrcAttribute();
+        }
+      } else if (tmpElement instanceof HtmlImageInput || tmpElement instanceof HtmlEmbed) {
+        tmpUrl = tmpElement.getAttribute("src");
+      }
 
-        tmpMatcher = CSS_IMPORT_URL_PATTERN.matcher(tmpContent);
+      if (StringUtils.isNotBlank(tmpUrl)) {
+        try {
+          tmpUrls.add(aPage.getFullyQualifiedUrl(tmpUrl));
+        } catch (final MalformedURLException e) {
+          // reported while writing the page
+        }
       }
     }
+    fetchResources(aPage.getUrl(), tmpUrls);
+  }
+
+  /**
+   * Starts fetching the given resources if they are not stored or cached already.
+   */
+  private void fetchResources(final URL aBaseUrl, final List<URL> aUrls) {
+    if (null == resourceFetchExecutor || null == webClient) {
+      return;
+    }
+
+    WebConnection tmpConnection = null;
+    for (final URL tmpUrl : aUrls) {
+      final String tmpKey = tmpUrl.toExternalForm();
+      final String tmpProtocol = tmpUrl.getProtocol();
+      if (!"http".equals(tmpProtocol) && !"https".equals(tmpProtocol) || !aBaseUrl.getHost().equals(tmpUrl.getHost())
+          || fileNames.containsKey(tmpKey) || fetchedResources.containsKey(tmpKey)
+          || null != webClient.getCache().getCachedResponse(new WebRequest(tmpUrl))) {
+        continue;
+      }
 
-    return tmpContent;
+      if (null == tmpConnection) {
+        tmpConnection = getFetchConnection();
+        if (null == tmpConnection) {
+          // requested one by one while writing the page
+          return;
+        }
+      }
+      // set the referer header like the browser does
+      final WebRequest tmpRequest = new WebRequest(tmpUrl);
+      tmpRequest.setAdditionalHeader("Referer", aBaseUrl.toExternalForm());
+      // the cookies of the session are copied; the fetcher does not touch the cookies of the session
+      final StringBuilder tmpCookies = new StringBuilder();
+      for (final Cookie tmpCookie : webClient.getCookies(tmpUrl)) {
+        if (tmpCookies.length() > 0) {
+          tmpCookies.append("; ");
+        }
+        tmpCookies.append(tmpCookie.getName()).append('=').append(tmpCookie.getValue());
+      }
+      if (tmpCookies.length() > 0) {
+        tmpRequest.setAdditionalHeader(HttpHeader.COOKIE, tmpCookies.toString());
+      }
+
+      final WebConnection tmpFetchConnection = tmpConnection;
+      fetchedResources.put(tmpKey, resourceFetchExecutor.submit(() -> tmpFetchConnection.getResponse(tmpRequest)));
+    }
+  }
+
+  /**
+   * The WebClient of the session is not thread safe and is closed at the end of the session without waiting for the
+   * fetcher. Therefore the resources are fetched by an own client (without javascript and cookies) with the settings
+   * of the session; the headers of the browser are the same.
+   *
+   * @return the connection to fetch the resources with; null if the connection of the session can not be copied
+   */
+  private WebConnection getFetchConnection() {
+    if (!(webClient.getWebConnection() instanceof HttpWebConnection)) {
+      // e.g. a mock connection; it must not be used by another thread
+      return null;
+    }
+
+    if (null == fetchClient) {
+      fetchClient = new WebClient(webClient.getBrowserVersion(), false, null, -1);
+      final WebClientOptions tmpOptions = fetchClient.getOptions();
+      final WebClientOptions tmpSessionOptions = webClient.getOptions();
+      tmpOptions.setProxyConfig(tmpSessionOptions.getProxyConfig());
+      tmpOptions.setUseInsecureSSL(tmpSessionOptions.isUseInsecureSSL());
+      tmpOptions.setTimeout(tmpSessionOptions.getTimeout());
+      fetchClient.setCredentialsProvider(webClient.getCredentialsProvider());
+      fetchClient.getCookieManager().setCookiesEnabled(false);
+      if (null != fetchWebConnection) {
+        fetchClient.setWebConnection(fetchWebConnection);
+      }
+      fetchClientOwner = webClient;
+    }
+    return fetchClient.getWebConnection();
+  }
+
+  private void writeFile(final File aFile, final byte[] aContent) throws IOException {
+    if (retainPages) {
+      retainedPages.addLast(new RetainedPage(aFile, aContent));
+      retainedBytes += aContent.length;
+      while (retainedPages.size() > retainedPageCount
+          || retainedBytes > MAX_RETAINED_BYTES && retainedPages.size() > 1) {
+        final RetainedPage tmpDropped = retainedPages.removeFirst();
+        retainedBytes -= tmpDropped.content.length;
+        writeDroppedPage(tmpDropped);
+      }
+    } else {
+      writeSnapshotFile(aFile, aContent);
+    }
+  }
+
+  private void writeSnapshotFile(final File aFile, final byte[] aContent) throws IOException {
+    if (null != snapshotArchive) {
+      // only the pages are listed in the index
+      writeToArchive(aFile, aContent, true);
+    } else if (null == snapshotWriter) {
+      SnapshotWriter.writeFile(aFile, aContent);
+    } else {
+      snapshotWriter.write(aFile, aContent);
+    }
+  }
+
+  private void writeResource(final File aFile, final byte[] aContent) throws IOException {
+    if (null != snapshotArchive) {
+      writeToArchive(aFile, aContent, false);
+    } else if (null == resourceBlobStore) {
+      // the resources are shared between the pages; never retained
+      writeSnapshotFile(aFile, aContent);
+    } else if (null == snapshotWriter) {
+      resourceBlobStore.store(aFile, aContent);
+    } else {
+      snapshotWriter.write(aFile, () -> resourceBlobStore.store(aFile, aContent));
+    }
+  }
+
+  private void writeToArchive(final File aFile, final byte[] aContent, final boolean anIndexFlag)
+      throws IOException {
+    final String tmpEntryName = outputDir.toPath().relativize(aFile.toPath()).toString().replace('\\', '/');
+    if (null == snapshotWriter) {
+      snapshotArchive.write(tmpEntryName, aContent, anIndexFlag);
+    } else {
+      snapshotWriter.write(aFile, () -> snapshotArchive.write(tmpEntryName, aContent, anIndexFlag));
+    }
   }
 
   /**
@@ -423,4 +853,92 @@ public final class ResponseStore {
       return null;
     }
   }
+
+  /**
+   * Statistics about the resources stored.
+   */
+  public static final class HarvestStatistics {
+    private long resourceCount;
+    private long reusedCount;
+    private long reusedBytes;
+    private long fetchedBytes;
+    private long nanos;
+
+    /**
+     * @return the number of resources stored
+     */
+    public long getResourceCount() {
+      return resourceCount;
+    }
+
+    /**
+     * @return the number of resources already downloaded by the browser (or cached)
+     */
+    public long getReusedCount() {
+      return reusedCount;
+    }
+
+    /**
+     * @return the number of bytes already downloaded by the browser (or cached)
+     */
+    public long getReusedBytes() {
+      return reusedBytes;
+    }
+
+    /**
+     * @return the number of bytes requested for storing the resources
+     */
+    public long getFetchedBytes() {
+      return fetchedBytes;
+    }
+
+    /**
+     * @return the time in nanoseconds spent waiting for the resources
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    private void reused(final long aBytes) {
+      resourceCount++;
+      reusedCount++;
+      reusedBytes += aBytes;
+    }
+
+    private void fetched(final long aBytes) {
+      resourceCount++;
+      fetchedBytes += aBytes;
+    }
+
+    private void waited(final long aNanos) {
+      nanos += aNanos;
+    }
+
+    private void add(final HarvestStatistics aStatistics) {
+      resourceCount += aStatistics.resourceCount;
+      reusedCount += aStatistics.reusedCount;
+      reusedBytes += aStatistics.reusedBytes;
+      fetchedBytes += aStatistics.fetchedBytes;
+      nanos += aStatistics.nanos;
+    }
+  }
+
+  /**
+   * A page kept in memory.
+   */
+  private static final class RetainedPage {
+    private File file;
+    private byte[] content;
+
+    /**
+     * The constructor.
+     *
+     * @param aFile the file to write the page to
+     * @param aContent the serialized page
+     */
+    RetainedPage(final File aFile, final byte[] aContent) {
+      file = aFile;
+      content = aContent;
+    }
+  }
 }
\ No newline at end of file
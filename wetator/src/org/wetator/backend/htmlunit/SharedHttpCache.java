@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.HttpHeader;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.HeaderUtils;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * A HtmlUnit {@link Cache} shared by all the sessions using the same browser version.<br>
+ * The {@link com.gargoylesoftware.htmlunit.WebClient} clears the cache when it gets closed; this cache survives this
+ * and is only cleared by {@link #dispose()}.<br>
+ * Optionally the cached responses with an explicit expiration (header 'Expires' or 'Cache-Control: max-age') are
+ * written to a directory; this way they are available for the next run as long as they are fresh.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class SharedHttpCache extends Cache {
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger LOG = LogManager.getLogger(SharedHttpCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+
+  private File diskDir;
+
+  private AtomicLong requestCount = new AtomicLong();
+  private AtomicLong hitCount = new AtomicLong();
+  private AtomicLong diskHitCount = new AtomicLong();
+  private AtomicLong savedBytes = new AtomicLong();
+
+  /**
+   * The constructor.
+   *
+   * @param aDiskDir the directory to store the responses in; may be null
+   */
+  public SharedHttpCache(final File aDiskDir) {
+    super();
+    diskDir = aDiskDir;
+  }
+
+  @Override
+  public WebResponse getCachedResponse(final WebRequest aRequest) {
+    requestCount.incrementAndGet();
+
+    WebResponse tmpResponse = super.getCachedResponse(aRequest);
+    if (null == tmpResponse && null != diskDir && HttpMethod.GET == aRequest.getHttpMethod()) {
+      tmpResponse = readFromDisk(aRequest);
+      if (null != tmpResponse) {
+        diskHitCount.incrementAndGet();
+        super.cacheIfPossible(aRequest, tmpResponse, null);
+      }
+    }
+
+    if (null != tmpResponse) {
+      hitCount.incrementAndGet();
+      savedBytes.addAndGet(tmpResponse.getContentLength());
+    }
+    return tmpResponse;
+  }
+
+  @Override
+  public Object getCachedObject(final WebRequest aRequest) {
+    final Object tmpObject = super.getCachedObject(aRequest);
+    if (null != tmpObject) {
+      // the response is not requested in this case
+      requestCount.incrementAndGet();
+      hitCount.incrementAndGet();
+    }
+    return tmpObject;
+  }
+
+  @Override
+  public boolean cacheIfPossible(final WebRequest aRequest, final WebResponse aResponse, final Object anObject) {
+    final boolean tmpCached = super.cacheIfPossible(aRequest, aResponse, anObject);
+    if (tmpCached && null != diskDir) {
+      final long tmpExpires = getExpiration(aResponse);
+      if (tmpExpires > getCurrentTimestamp()) {
+        writeToDisk(aRequest, aResponse, tmpExpires);
+      }
+    }
+    return tmpCached;
+  }
+
+  /**
+   * HtmlUnit only caches responses having a 'Last-Modified' header (or expiring in more than ten minutes).
+   * For static resources an explicit expiration in the future (see {@link #getExpiration(WebResponse)}) is
+   * enough.
+   */
+  @Override
+  protected boolean isCacheableContent(final WebResponse aResponse) {
+    if (super.isCacheableContent(aResponse)) {
+      return true;
+    }
+    return !HeaderUtils.containsNoStore(aResponse) && getExpiration(aResponse) > getCurrentTimestamp();
+  }
+
+  /**
+   * Does nothing; the cache is shared between the sessions.
+   * Use {@link #dispose()} to clear the cache.
+   */
+  @Override
+  public void clear() {
+    // nothing
+  }
+
+  /**
+   * Clears the cache and releases all resources; the disk layer is not touched.
+   */
+  public void dispose() {
+    super.clear();
+  }
+
+  /**
+   * @return the number of requests seen by this cache
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return the number of requests answered from this cache
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of requests answered from the disk layer of this cache
+   */
+  public long getDiskHitCount() {
+    return diskHitCount.get();
+  }
+
+  /**
+   * @return the number of bytes answered from this cache
+   */
+  public long getSavedBytes() {
+    return savedBytes.get();
+  }
+
+  /**
+   * Resets the statistics; the cached responses are kept.
+   */
+  public void resetStatistics() {
+    requestCount.set(0);
+    hitCount.set(0);
+    diskHitCount.set(0);
+    savedBytes.set(0);
+  }
+
+  /**
+   * @param aResponse the response
+   * @return the expiration time set explicitly by the response headers; -1 if there is none
+   */
+  private long getExpiration(final WebResponse aResponse) {
+    if (HeaderUtils.containsNoCache(aResponse)) {
+      return -1;
+    }
+    if (HeaderUtils.containsMaxAge(aResponse)) {
+      return getCurrentTimestamp() + HeaderUtils.maxAge(aResponse) * 1000L;
+    }
+
+    final Date tmpExpires = parseDateHeader(aResponse, HttpHeader.EXPIRES);
+    if (null != tmpExpires) {
+      return tmpExpires.getTime();
+    }
+    return -1;
+  }
+
+  private File getDiskFile(final WebRequest aRequest) {
+    try {
+      final MessageDigest tmpDigest = MessageDigest.getInstance("SHA-1");
+      final byte[] tmpHash = tmpDigest.digest(aRequest.getUrl().toExternalForm().getBytes(StandardCharsets.UTF_8));
+
+      final StringBuilder tmpName = new StringBuilder(tmpHash.length * 2 + 6);
+      for (final byte tmpByte : tmpHash) {
+        tmpName.append(Character.forDigit((tmpByte >> 4) & 0xF, 16));
+        tmpName.append(Character.forDigit(tmpByte & 0xF, 16));
+      }
+      tmpName.append(".cache");
+      return new File(diskDir, tmpName.toString());
+    } catch (final NoSuchAlgorithmException e) {
+      // every jvm has to support SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void writeToDisk(final WebRequest aRequest, final WebResponse aResponse, final long anExpires) {
+    final File tmpFile = getDiskFile(aRequest);
+    try {
+      Files.createDirectories(diskDir.toPath());
+
+      final File tmpTempFile = new File(diskDir, tmpFile.getName() + ".tmp");
+      try (DataOutputStream tmpOut = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpTempFile.toPath())));
+          InputStream tmpIn = aResponse.getContentAsStream()) {
+        final byte[] tmpContent = IOUtils.toByteArray(tmpIn);
+
+        tmpOut.writeInt(FORMAT_VERSION);
+        tmpOut.writeUTF(aRequest.getUrl().toExternalForm());
+        tmpOut.writeLong(anExpires);
+        tmpOut.writeInt(aResponse.getStatusCode());
+        tmpOut.writeUTF(aResponse.getStatusMessage());
+
+        final List<NameValuePair> tmpHeaders = new ArrayList<>();
+        for (final NameValuePair tmpHeader : aResponse.getResponseHeaders()) {
+          // the content is already decoded
+          if (!"Content-Encoding".equalsIgnoreCase(tmpHeader.getName())
+              && !HttpHeader.CONTENT_LENGTH.equalsIgnoreCase(tmpHeader.getName())) {
+            tmpHeaders.add(tmpHeader);
+          }
+        }
+        tmpOut.writeInt(tmpHeaders.size());
+        for (final NameValuePair tmpHeader : tmpHeaders) {
+          tmpOut.writeUTF(tmpHeader.getName());
+          tmpOut.writeUTF(tmpHeader.getValue());
+        }
+
+        tmpOut.writeInt(tmpContent.length);
+        tmpOut.write(tmpContent);
+      }
+      Files.move(tmpTempFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      LOG.warn("Could not write '" + aRequest.getUrl() + "' to the http cache directory.", e);
+    }
+  }
+
+  private WebResponse readFromDisk(final WebRequest aRequest) {
+    final File tmpFile = getDiskFile(aRequest);
+    if (!tmpFile.isFile()) {
+      return null;
+    }
+
+    try (DataInputStream tmpIn = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(tmpFile.toPath())))) {
+      if (FORMAT_VERSION != tmpIn.readInt() || !aRequest.getUrl().toExternalForm().equals(tmpIn.readUTF())) {
+        return null;
+      }
+      if (tmpIn.readLong() <= getCurrentTimestamp()) {
+        // outdated
+        Files.deleteIfExists(tmpFile.toPath());
+        return null;
+      }
+
+      final int tmpStatusCode = tmpIn.readInt();
+      final String tmpStatusMessage = tmpIn.readUTF();
+
+      final int tmpHeaderCount = tmpIn.readInt();
+      final List<NameValuePair> tmpHeaders = new ArrayList<>(tmpHeaderCount);
+      for (int i = 0; i < tmpHeaderCount; i++) {
+        tmpHeaders.add(new NameValuePair(tmpIn.readUTF(), tmpIn.readUTF()));
+      }
+
+      final byte[] tmpContent = new byte[tmpIn.readInt()];
+      tmpIn.readFully(tmpContent);
+
+      return new WebResponse(new WebResponseData(tmpContent, tmpStatusCode, tmpStatusMessage, tmpHeaders), aRequest,
+          0);
+    } catch (final IOException e) {
+      LOG.warn("Could not read '" + aRequest.getUrl() + "' from the http cache directory.", e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+
+/**
+ * Cache for compiled JavaScript shared by all the sessions using the same browser version.<br>
+ * The scripts are cached by source name (the url), start line and content; a changed content is compiled again.
+ * A compiled {@link Script} contains no state, every execution works on the scope of the executing page. HtmlUnit
+ * does the same for the scripts in its http cache.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class SharedScriptCache {
+
+  /** The maximum number of scripts to cache. */
+  private static final int MAX_SIZE = 500;
+
+  private Map<String, Entry> entries;
+
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * The constructor.
+   */
+  public SharedScriptCache() {
+    this(MAX_SIZE);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param aMaxSize the maximum number of scripts to cache; the least recently used ones are removed
+   */
+  SharedScriptCache(final int aMaxSize) {
+    super();
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> anEldest) {
+        return size() > aMaxSize;
+      }
+    };
+  }
+
+  /**
+   * @param aSourceName the source name (url)
+   * @param aStartLine the start line
+   * @param aSourceCode the source code
+   * @return the compiled script or null if not cached
+   */
+  public synchronized Script get(final String aSourceName, final int aStartLine, final String aSourceCode) {
+    final Entry tmpEntry = entries.get(aSourceName + '#' + aStartLine);
+    // compare the hash first, this is much cheaper if the content has changed
+    if (null != tmpEntry && tmpEntry.hash == aSourceCode.hashCode() && tmpEntry.sourceCode.equals(aSourceCode)) {
+      hitCount++;
+      return tmpEntry.script;
+    }
+    missCount++;
+    return null;
+  }
+
+  /**
+   * Adds the given script to the cache.
+   *
+   * @param aSourceName the source name (url)
+   * @param aStartLine the start line
+   * @param aSourceCode the source code
+   * @param aScript the compiled script
+   */
+  public synchronized void put(final String aSourceName, final int aStartLine, final String aSourceCode,
+      final Script aScript) {
+    entries.put(aSourceName + '#' + aStartLine, new Entry(aSourceCode, aScript));
+  }
+
+  /**
+   * Removes all scripts from the cache.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return the number of scripts taken from the cache
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of scripts not found in the cache
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Resets the statistics; the cached scripts are kept.
+   */
+  public synchronized void resetStatistics() {
+    hitCount = 0;
+    missCount = 0;
+  }
+
+  /**
+   * Creates a {@link JavaScriptEngine} for the given {@link WebClient} using this cache.
+   *
+   * @param aWebClient the web client
+   * @return the new engine
+   */
+  public JavaScriptEngine createJavaScriptEngine(final WebClient aWebClient) {
+    return new CachingJavaScriptEngine(aWebClient, this);
+  }
+
+  /**
+   * A cached script.
+   */
+  private static final class Entry {
+    private String sourceCode;
+    private int hash;
+    private Script script;
+
+    /**
+     * The constructor.
+     *
+     * @param aSourceCode the source code
+     * @param aScript the compiled script
+     */
+    Entry(final String aSourceCode, final Script aScript) {
+      sourceCode = aSourceCode;
+      hash = aSourceCode.hashCode();
+      script = aScript;
+    }
+  }
+
+  /**
+   * {@link JavaScriptEngine} looking up the compiled scripts in the cache first.
+   */
+  private static final class CachingJavaScriptEngine extends JavaScriptEngine {
+    private SharedScriptCache cache;
+
+    /**
+     * The constructor.
+     *
+     * @param aWebClient the web client
+     * @param aCache the cache to use
+     */
+    CachingJavaScriptEngine(final WebClient aWebClient, final SharedScriptCache aCache) {
+      super(aWebClient);
+      cache = aCache;
+    }
+
+    @Override
+    public Script compile(final HtmlPage anOwningPage, final Scriptable aScope, final String aSourceCode,
+        final String aSourceName, final int aStartLine) {
+      Script tmpScript = cache.get(aSourceName, aStartLine, aSourceCode);
+      if (null != tmpScript) {
+        return tmpScript;
+      }
+
+      tmpScript = super.compile(anOwningPage, aScope, aSourceCode, aSourceName, aStartLine);
+      // null in case of errors
+      if (null != tmpScript) {
+        cache.put(aSourceName, aStartLine, aSourceCode, tmpScript);
+      }
+      return tmpScript;
+    }
+  }
+}
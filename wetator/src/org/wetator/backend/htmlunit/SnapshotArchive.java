@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wetator.core.WetatorConfiguration;
+import org.wetator.util.XMLUtil;
+
+/**
+ * Streams the files of the {@link ResponseStore}s into a few zip archives instead of writing every single file.<br>
+ * A new archive is started if the current one reaches the maximum size; the archives are named
+ * <code>snapshots_&lt;n&gt;.zip</code>. The paths inside the archives are relative to the output directory, so the
+ * extracted pages work like the stored ones. The index ({@link WetatorConfiguration#SNAPSHOT_ARCHIVE_INDEX_FILE_NAME})
+ * lists the archive of every page; it is used by the report to find the pages.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class SnapshotArchive {
+
+  private static final Logger LOG = LogManager.getLogger(SnapshotArchive.class);
+
+  private static final String ARCHIVE_PREFIX = "snapshots_";
+  private static final String ARCHIVE_SUFFIX = ".zip";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private File outputDir;
+  private long maxArchiveSize;
+
+  // all guarded by this
+  private List<Archive> archives;
+  private ZipOutputStream zipOutput;
+  private CountingOutputStream countingOutput;
+
+  private long fileCount;
+  private long bytes;
+  private long writeTimeNanos;
+
+  /**
+   * The constructor.
+   *
+   * @param anOutputDir the directory to write the archives to; the archives of previous runs are removed
+   * @param aMaxArchiveSize the maximum (compressed) size of one archive in bytes
+   */
+  public SnapshotArchive(final File anOutputDir, final long aMaxArchiveSize) {
+    super();
+    outputDir = anOutputDir;
+    maxArchiveSize = aMaxArchiveSize;
+    archives = new ArrayList<>();
+
+    final File[] tmpOldArchives = outputDir
+        .listFiles((aDir, aName) -> aName.startsWith(ARCHIVE_PREFIX) && aName.endsWith(ARCHIVE_SUFFIX));
+    if (null != tmpOldArchives) {
+      for (final File tmpOldArchive : tmpOldArchives) {
+        if (!tmpOldArchive.delete()) {
+          LOG.warn("Could not delete the old snapshot archive '"
+              + FilenameUtils.normalize(tmpOldArchive.getAbsolutePath()) + "'.");
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the given content to the current archive.
+   *
+   * @param anEntryName the path of the file relative to the output directory (using '/')
+   * @param aContent the content
+   * @param anIndexFlag true if the entry should be listed in the index
+   * @throws IOException in case of error
+   */
+  public synchronized void write(final String anEntryName, final byte[] aContent, final boolean anIndexFlag)
+      throws IOException {
+    final long tmpStart = System.nanoTime();
+    if (null == zipOutput || countingOutput.getByteCount() >= maxArchiveSize) {
+      nextArchive();
+    }
+
+    zipOutput.putNextEntry(new ZipEntry(anEntryName));
+    zipOutput.write(aContent);
+    zipOutput.closeEntry();
+
+    final Archive tmpArchive = archives.get(archives.size() - 1);
+    tmpArchive.fileCount++;
+    if (anIndexFlag) {
+      tmpArchive.indexedEntries.add(anEntryName);
+    }
+
+    fileCount++;
+    bytes += aContent.length;
+    writeTimeNanos += System.nanoTime() - tmpStart;
+  }
+
+  /**
+   * Writes the index for all the files written so far.
+   *
+   * @throws IOException in case of error
+   */
+  public synchronized void writeIndex() throws IOException {
+    final XMLUtil tmpXmlUtil = new XMLUtil();
+
+    final File tmpIndexFile = new File(outputDir, WetatorConfiguration.SNAPSHOT_ARCHIVE_INDEX_FILE_NAME);
+    final File tmpTempFile = new File(outputDir, WetatorConfiguration.SNAPSHOT_ARCHIVE_INDEX_FILE_NAME + ".tmp");
+    try (Writer tmpWriter = Files.newBufferedWriter(tmpTempFile.toPath(), StandardCharsets.UTF_8)) {
+      tmpWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      tmpWriter.write("<snapshots>\n");
+      for (final Archive tmpArchive : archives) {
+        tmpWriter.write("  <archive name=\"");
+        tmpWriter.write(tmpXmlUtil.normalizeAttributeValue(tmpArchive.name));
+        tmpWriter.write("\" files=\"");
+        tmpWriter.write(Long.toString(tmpArchive.fileCount));
+        tmpWriter.write("\">\n");
+        for (final String tmpEntry : tmpArchive.indexedEntries) {
+          tmpWriter.write("    <entry>");
+          tmpWriter.write(tmpXmlUtil.normalizeBodyValue(tmpEntry));
+          tmpWriter.write("</entry>\n");
+        }
+        tmpWriter.write("  </archive>\n");
+      }
+      tmpWriter.write("</snapshots>\n");
+    }
+    Files.move(tmpTempFile.toPath(), tmpIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Finishes the current archive and writes the index.
+   *
+   * @throws IOException in case of error
+   */
+  public synchronized void close() throws IOException {
+    closeArchive();
+    writeIndex();
+  }
+
+  /**
+   * @return the number of files written since the last {@link #resetStatistics()}
+   */
+  public synchronized long getFileCount() {
+    return fileCount;
+  }
+
+  /**
+   * @return the number of (uncompressed) bytes written since the last {@link #resetStatistics()}
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the time in nanoseconds spent writing since the last {@link #resetStatistics()}
+   */
+  public synchronized long getWriteTimeNanos() {
+    return writeTimeNanos;
+  }
+
+  /**
+   * @return the number of archives
+   */
+  public synchronized int getArchiveCount() {
+    return archives.size();
+  }
+
+  /**
+   * Resets the statistics.
+   */
+  public synchronized void resetStatistics() {
+    fileCount = 0;
+    bytes = 0;
+    writeTimeNanos = 0;
+  }
+
+  private void nextArchive() throws IOException {
+    closeArchive();
+
+    final Archive tmpArchive = new Archive(ARCHIVE_PREFIX + (archives.size() + 1) + ARCHIVE_SUFFIX);
+    final FileChannel tmpChannel = FileChannel.open(new File(outputDir, tmpArchive.name).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    final OutputStream tmpOut = new BufferedOutputStream(Channels.newOutputStream(tmpChannel), BUFFER_SIZE);
+    countingOutput = new CountingOutputStream(tmpOut);
+    zipOutput = new ZipOutputStream(countingOutput);
+    archives.add(tmpArchive);
+  }
+
+  private void closeArchive() throws IOException {
+    if (null != zipOutput) {
+      try {
+        zipOutput.close();
+      } finally {
+        zipOutput = null;
+        countingOutput = null;
+      }
+    }
+  }
+
+  /**
+   * The info about one archive.
+   */
+  private static final class Archive {
+    private String name;
+    private long fileCount;
+    private List<String> indexedEntries;
+
+    /**
+     * The constructor.
+     *
+     * @param aName the file name of the archive
+     */
+    Archive(final String aName) {
+      name = aName;
+      indexedEntries = new ArrayList<>();
+    }
+  }
+}
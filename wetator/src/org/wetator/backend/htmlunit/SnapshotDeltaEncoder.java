@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the snapshots of a page as delta to a base snapshot of the same page (url).<br>
+ * The first snapshot of a page is written completely and becomes the base; the lines of the base are written as
+ * script once the first delta references them. The following snapshots are written as small html pages containing
+ * only the lines not found in the base; the page rebuilds the complete snapshot in the browser when loaded.
+ * If the delta gets too big compared to the snapshot, the snapshot is written completely and becomes the new base.
+ * <br>
+ * The base is provided as script (and not loaded by XMLHttpRequest) because the browsers block requests to local
+ * files.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+final class SnapshotDeltaEncoder {
+
+  /** The maximum number of bases to keep. */
+  private static final int MAX_BASES = 50;
+  /** The maximum size of a delta relative to the size of the snapshot. */
+  private static final double MAX_DELTA_RATIO = 0.5;
+  /** The estimated size of a copy operation in the delta. */
+  private static final int COPY_SIZE = 12;
+
+  private Map<String, Base> bases;
+
+  private long snapshotCount;
+  private long deltaCount;
+  private long fullSize;
+  private long deltaSize;
+
+  /**
+   * The constructor.
+   */
+  SnapshotDeltaEncoder() {
+    super();
+    bases = new LinkedHashMap<String, Base>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Base> anEldest) {
+        return size() > MAX_BASES;
+      }
+    };
+  }
+
+  /**
+   * Encodes the given snapshot.
+   *
+   * @param aPageKey the key of the page (the url)
+   * @param aBaseScriptName the name of the base script to use if the snapshot becomes the new base
+   * @param aContent the content of the snapshot
+   * @return the delta or null if the snapshot has to be written completely
+   */
+  Delta encode(final String aPageKey, final String aBaseScriptName, final String aContent) {
+    snapshotCount++;
+    final String[] tmpLines = aContent.split("\n", -1);
+
+    final Base tmpBase = bases.get(aPageKey);
+    if (null != tmpBase) {
+      final List<Object> tmpOperations = diff(tmpBase, tmpLines);
+      if (getSize(tmpOperations) <= aContent.length() * MAX_DELTA_RATIO) {
+        String tmpBaseScript = null;
+        if (!tmpBase.written) {
+          tmpBaseScript = toBaseScript(tmpBase.lines);
+          tmpBase.written = true;
+          deltaSize += tmpBaseScript.length();
+        }
+        final String tmpPage = toDeltaPage(tmpBase.scriptName, tmpOperations);
+        deltaCount++;
+        fullSize += aContent.length();
+        deltaSize += tmpPage.length();
+        return new Delta(tmpPage, tmpBase.scriptName, tmpBaseScript);
+      }
+    }
+
+    bases.put(aPageKey, new Base(aBaseScriptName, tmpLines));
+    return null;
+  }
+
+  /**
+   * @return the number of snapshots encoded since the last {@link #resetStatistics()}
+   */
+  long getSnapshotCount() {
+    return snapshotCount;
+  }
+
+  /**
+   * @return the number of snapshots written as delta since the last {@link #resetStatistics()}
+   */
+  long getDeltaCount() {
+    return deltaCount;
+  }
+
+  /**
+   * @return the size (characters) of the snapshots written as delta since the last {@link #resetStatistics()}
+   */
+  long getFullSize() {
+    return fullSize;
+  }
+
+  /**
+   * @return the size (characters) of the deltas and base scripts written instead since the last
+   *         {@link #resetStatistics()}
+   */
+  long getDeltaSize() {
+    return deltaSize;
+  }
+
+  /**
+   * Resets the statistics; the bases are kept.
+   */
+  void resetStatistics() {
+    snapshotCount = 0;
+    deltaCount = 0;
+    fullSize = 0;
+    deltaSize = 0;
+  }
+
+  /**
+   * Calculates the operations to build the given lines from the base. An operation is either an int array with
+   * the start and the number of lines to copy from the base or a line not found in the base.<br>
+   * The lines are matched greedily in one pass; this is not the minimal delta but fast and good enough for
+   * snapshots of the same page.
+   *
+   * @param aBase the base
+   * @param aLines the lines
+   * @return the operations
+   */
+  static List<Object> diff(final Base aBase, final String[] aLines) {
+    final String[] tmpBaseLines = aBase.lines;
+    final List<Object> tmpOperations = new ArrayList<>();
+
+    int tmpCopyStart = 0;
+    int tmpCopyCount = 0;
+    for (final String tmpLine : aLines) {
+      final int tmpNext = tmpCopyStart + tmpCopyCount;
+      if (tmpCopyCount > 0 && tmpNext < tmpBaseLines.length && tmpBaseLines[tmpNext].equals(tmpLine)) {
+        tmpCopyCount++;
+        continue;
+      }
+
+      if (tmpCopyCount > 0) {
+        tmpOperations.add(new int[] { tmpCopyStart, tmpCopyCount });
+        tmpCopyCount = 0;
+      }
+
+      final int tmpIndex = aBase.indexOf(tmpLine, tmpNext);
+      if (tmpIndex < 0) {
+        tmpOperations.add(tmpLine);
+      } else {
+        tmpCopyStart = tmpIndex;
+        tmpCopyCount = 1;
+      }
+    }
+    if (tmpCopyCount > 0) {
+      tmpOperations.add(new int[] { tmpCopyStart, tmpCopyCount });
+    }
+    return tmpOperations;
+  }
+
+  private static int getSize(final List<Object> anOperations) {
+    int tmpSize = 0;
+    for (final Object tmpOperation : anOperations) {
+      if (tmpOperation instanceof String) {
+        tmpSize += ((String) tmpOperation).length() + 3;
+      } else {
+        tmpSize += COPY_SIZE;
+      }
+    }
+    return tmpSize;
+  }
+
+  private static String toBaseScript(final String[] aLines) {
+    final StringBuilder tmpScript = new StringBuilder(aLines.length * 64);
+    tmpScript.append("var wetatorSnapshotBase = [");
+    for (int i = 0; i < aLines.length; i++) {
+      if (i > 0) {
+        tmpScript.append(",\n");
+      }
+      appendString(tmpScript, aLines[i]);
+    }
+    tmpScript.append("];\n\n");
+
+    // rebuilds the snapshot after the delta page is loaded
+    tmpScript.append("function wetatorSnapshotDelta(aDelta) {\n");
+    tmpScript.append("  window.onload = function() {\n");
+    tmpScript.append("    var tmpLines = [];\n");
+    tmpScript.append("    for (var i = 0; i < aDelta.length; i++) {\n");
+    tmpScript.append("      var tmpOperation = aDelta[i];\n");
+    tmpScript.append("      if (typeof tmpOperation === 'string') {\n");
+    tmpScript.append("        tmpLines.push(tmpOperation);\n");
+    tmpScript.append("      } else {\n");
+    tmpScript.append("        for (var j = 0; j < tmpOperation[1]; j++) {\n");
+    tmpScript.append("          tmpLines.push(wetatorSnapshotBase[tmpOperation[0] + j]);\n");
+    tmpScript.append("        }\n");
+    tmpScript.append("      }\n");
+    tmpScript.append("    }\n");
+    tmpScript.append("    document.open();\n");
+    tmpScript.append("    document.write(tmpLines.join('\\n'));\n");
+    tmpScript.append("    document.close();\n");
+    tmpScript.append("  };\n");
+    tmpScript.append("}\n");
+    return tmpScript.toString();
+  }
+
+  private static String toDeltaPage(final String aBaseScriptName, final List<Object> anOperations) {
+    final StringBuilder tmpPage = new StringBuilder(getSize(anOperations) + 256);
+    tmpPage.append("<!DOCTYPE html>\n");
+    tmpPage.append("<html><head>\n");
+    tmpPage.append("<meta charset=\"UTF-8\">\n");
+    tmpPage.append("<script src=\"").append(aBaseScriptName).append("\" charset=\"UTF-8\"></script>\n");
+    tmpPage.append("<script>\n");
+    tmpPage.append("wetatorSnapshotDelta([");
+    boolean tmpFirst = true;
+    for (final Object tmpOperation : anOperations) {
+      if (!tmpFirst) {
+        tmpPage.append(",\n");
+      }
+      tmpFirst = false;
+
+      if (tmpOperation instanceof String) {
+        appendString(tmpPage, (String) tmpOperation);
+      } else {
+        final int[] tmpCopy = (int[]) tmpOperation;
+        tmpPage.append('[').append(tmpCopy[0]).append(',').append(tmpCopy[1]).append(']');
+      }
+    }
+    tmpPage.append("]);\n");
+    tmpPage.append("</script>\n");
+    tmpPage.append("</head><body></body></html>\n");
+    return tmpPage.toString();
+  }
+
+  /**
+   * Appends the given string as JavaScript string literal; the literal can be used inside a script tag.
+   */
+  private static void appendString(final StringBuilder aBuilder, final String aString) {
+    aBuilder.append('"');
+    final int tmpLength = aString.length();
+    for (int i = 0; i < tmpLength; i++) {
+      final char tmpChar = aString.charAt(i);
+      switch (tmpChar) {
+        case '"':
+          aBuilder.append("\\\"");
+          break;
+        case '\\':
+          aBuilder.append("\\\\");
+          break;
+        case '\n':
+          aBuilder.append("\\n");
+          break;
+        case '\r':
+          aBuilder.append("\\r");
+          break;
+        case '\t':
+          aBuilder.append("\\t");
+          break;
+        case '/':
+          // no '</script>' inside the script
+          if (i > 0 && '<' == aString.charAt(i - 1)) {
+            aBuilder.append("\\/");
+          } else {
+            aBuilder.append(tmpChar);
+          }
+          break;
+        default:
+          if (tmpChar < 0x20 || '\u2028' == tmpChar || '\u2029' == tmpChar) {
+            aBuilder.append(String.format("\\u%04x", (int) tmpChar));
+          } else {
+            aBuilder.append(tmpChar);
+          }
+      }
+    }
+    aBuilder.append('"');
+  }
+
+  /**
+   * The base snapshot of a page.
+   */
+  static final class Base {
+    private String scriptName;
+    private String[] lines;
+    private boolean written;
+    // the index of the first line in the base for every line and the index of the next equal line
+    private Map<String, Integer> firstIndices;
+    private int[] nextIndices;
+
+    /**
+     * The constructor.
+     *
+     * @param aScriptName the name of the script containing the lines
+     * @param aLines the lines
+     */
+    Base(final String aScriptName, final String[] aLines) {
+      scriptName = aScriptName;
+      lines = aLines;
+
+      firstIndices = new HashMap<>(aLines.length * 2);
+      nextIndices = new int[aLines.length];
+      for (int i = aLines.length - 1; i >= 0; i--) {
+        final Integer tmpFirst = firstIndices.put(aLines[i], i);
+        nextIndices[i] = null == tmpFirst ? -1 : tmpFirst;
+      }
+    }
+
+    /**
+     * @param aLine the line to look for
+     * @param aPreferredIndex the index to start with; the first occurrence is used if there is none after
+     * @return the index of the line or -1 if not found
+     */
+    private int indexOf(final String aLine, final int aPreferredIndex) {
+      final Integer tmpFirst = firstIndices.get(aLine);
+      if (null == tmpFirst) {
+        return -1;
+      }
+      int tmpIndex = tmpFirst;
+      while (tmpIndex >= 0 && tmpIndex < aPreferredIndex) {
+        tmpIndex = nextIndices[tmpIndex];
+      }
+      return tmpIndex < 0 ? tmpFirst : tmpIndex;
+    }
+  }
+
+  /**
+   * The delta of a snapshot.
+   */
+  static final class Delta {
+    private String page;
+    private String baseScriptName;
+    private String baseScript;
+
+    /**
+     * The constructor.
+     *
+     * @param aPage the page rebuilding the snapshot
+     * @param aBaseScriptName the name of the base script
+     * @param aBaseScript the base script if it has to be written; null otherwise
+     */
+    Delta(final String aPage, final String aBaseScriptName, final String aBaseScript) {
+      page = aPage;
+      baseScriptName = aBaseScriptName;
+      baseScript = aBaseScript;
+    }
+
+    /**
+     * @return the page rebuilding the snapshot
+     */
+    String getPage() {
+      return page;
+    }
+
+    /**
+     * @return the name of the base script
+     */
+    String getBaseScriptName() {
+      return baseScriptName;
+    }
+
+    /**
+     * @return the base script if it has to be written; null otherwise
+     */
+    String getBaseScript() {
+      return baseScript;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.util.Collection;
+
+import org.wetator.core.Command;
+import org.wetator.core.IProgressListener;
+import org.wetator.core.SynchronousProgressListener;
+import org.wetator.core.TestCase;
+import org.wetator.core.WetatorContext;
+import org.wetator.core.WetatorEngine;
+import org.wetator.exception.AssertionException;
+
+/**
+ * This {@link IProgressListener} writes the pages kept in memory by the {@link ResponseStore}s in case of a failure
+ * or an error; the pages of a successful test run are dropped (see {@link ResponseStore#setPageRetention(int)}).<br>
+ * The pages have to be written before the next page is stored, so this listener is always informed synchronously.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+@SynchronousProgressListener
+final class SnapshotRetentionListener implements IProgressListener {
+
+  private Collection<ResponseStore> responseStores;
+
+  /**
+   * The constructor.
+   *
+   * @param aResponseStores the stores to handle
+   */
+  SnapshotRetentionListener(final Collection<ResponseStore> aResponseStores) {
+    responseStores = aResponseStores;
+  }
+
+  @Override
+  public void init(final WetatorEngine aWetatorEngine) {
+  }
+
+  @Override
+  public void start(final WetatorEngine aWetatorEngine) {
+  }
+
+  @Override
+  public void testCaseStart(final TestCase aTestCase) {
+  }
+
+  @Override
+  public void testRunStart(final String aBrowserName) {
+    discardRetainedPages();
+  }
+
+  @Override
+  public void testFileStart(final String aFileName) {
+  }
+
+  @Override
+  public void executeCommandStart(final WetatorContext aContext, final Command aCommand) {
+  }
+
+  @Override
+  public void executeCommandSuccess() {
+  }
+
+  @Override
+  public void executeCommandIgnored() {
+  }
+
+  @Override
+  public void executeCommandFailure(final AssertionException anAssertionException) {
+    writeRetainedPages();
+  }
+
+  @Override
+  public void executeCommandError(final Throwable aThrowable) {
+    writeRetainedPages();
+  }
+
+  @Override
+  public void executeCommandEnd() {
+  }
+
+  @Override
+  public void testFileEnd() {
+  }
+
+  @Override
+  public void testRunIgnored() {
+  }
+
+  @Override
+  public void testRunEnd() {
+    discardRetainedPages();
+  }
+
+  @Override
+  public void testCaseEnd() {
+  }
+
+  @Override
+  public void end(final WetatorEngine aWetatorEngine) {
+  }
+
+  @Override
+  public void htmlDescribe(final String aHtmlDescription) {
+  }
+
+  @Override
+  public void responseStored(final String aResponseFileName) {
+  }
+
+  @Override
+  public void highlightedResponse(final String aResponseFileName) {
+  }
+
+  @Override
+  public void error(final Throwable aThrowable) {
+    writeRetainedPages();
+  }
+
+  @Override
+  public void warn(final String aMessageKey, final Object[] aParameters, final String aDetails) {
+  }
+
+  @Override
+  public void info(final String aMessageKey, final Object... aParameters) {
+  }
+
+  private void writeRetainedPages() {
+    for (final ResponseStore tmpStore : responseStores) {
+      tmpStore.writeRetainedPages();
+    }
+  }
+
+  private void discardRetainedPages() {
+    for (final ResponseStore tmpStore : responseStores) {
+      tmpStore.discardRetainedPages();
+    }
+  }
+}
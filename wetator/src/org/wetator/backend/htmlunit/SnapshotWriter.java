@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes the files of the {@link ResponseStore} (the serialized pages and the resources) in the background.<br>
+ * The content is already in memory when handed over; the writer only does the file I/O. The number of pending files
+ * is limited; if the limit is reached the file is written by the calling thread. {@link #flush()} waits until all
+ * pending files are written.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class SnapshotWriter {
+
+  private static final Logger LOG = LogManager.getLogger(SnapshotWriter.class);
+
+  /** The maximum number of files waiting to be written per thread. */
+  private static final int QUEUE_SIZE_PER_THREAD = 32;
+
+  private ThreadPoolExecutor executor;
+  private int pendingCount; // guarded by this
+
+  /**
+   * The constructor.
+   *
+   * @param aThreadCount the number of threads writing the files
+   */
+  public SnapshotWriter(final int aThreadCount) {
+    super();
+    final AtomicInteger tmpThreadNo = new AtomicInteger();
+    executor = new ThreadPoolExecutor(aThreadCount, aThreadCount, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(aThreadCount * QUEUE_SIZE_PER_THREAD), aRunnable -> {
+          final Thread tmpThread = new Thread(aRunnable, "Wetator snapshot writer " + tmpThreadNo.incrementAndGet());
+          tmpThread.setDaemon(true);
+          return tmpThread;
+        }, (aRunnable, anExecutor) -> {
+          // the queue is full (or the writer already shut down); write in the calling thread
+          aRunnable.run();
+        });
+  }
+
+  /**
+   * Writes the given content to the given file; the parent directories are created if needed.
+   *
+   * @param aFile the file to write
+   * @param aContent the content; must not be changed afterwards
+   */
+  public void write(final File aFile, final byte[] aContent) {
+    write(aFile, () -> writeFile(aFile, aContent));
+  }
+
+  /**
+   * Writes the given file using the given {@link FileWrite}.
+   *
+   * @param aFile the file to write
+   * @param aFileWrite the write operation; must not depend on state changed afterwards
+   */
+  public void write(final File aFile, final FileWrite aFileWrite) {
+    synchronized (this) {
+      pendingCount++;
+    }
+    executor.execute(() -> writeInBackground(aFile, aFileWrite));
+  }
+
+  /**
+   * Waits until all pending files are written.
+   */
+  public synchronized void flush() {
+    try {
+      while (pendingCount > 0) {
+        wait();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while waiting for " + pendingCount + " snapshot file(s) to be written.");
+    }
+  }
+
+  /**
+   * Writes all pending files and stops the threads.
+   */
+  public void shutdown() {
+    flush();
+    executor.shutdown();
+  }
+
+  private void writeInBackground(final File aFile, final FileWrite aFileWrite) {
+    try {
+      aFileWrite.write();
+    } catch (final IOException e) {
+      // there is no one to inform
+      LOG.error("Could not write file '" + FilenameUtils.normalize(aFile.getAbsolutePath()) + "'.", e);
+    } finally {
+      writeDone();
+    }
+  }
+
+  private synchronized void writeDone() {
+    pendingCount--;
+    if (pendingCount == 0) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Writes the given content to the given file; the parent directories are created if needed.
+   *
+   * @param aFile the file to write
+   * @param aContent the content
+   * @throws IOException in case of error
+   */
+  static void writeFile(final File aFile, final byte[] aContent) throws IOException {
+    FileUtils.forceMkdir(aFile.getParentFile());
+    Files.write(aFile.toPath(), aContent);
+  }
+
+  /**
+   * The operation writing a file.
+   */
+  @FunctionalInterface
+  public interface FileWrite {
+
+    /**
+     * @throws IOException in case of error
+     */
+    void write() throws IOException;
+  }
+}
@@ -21,17 +21,19 @@ import java.io.IOException;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.io.output.FileWriterWithEncoding;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.wetator.backend.htmlunit.util.HtmlElementUtil;
+import org.wetator.util.EncodingWriter;
 import org.wetator.util.Output;
 import org.wetator.util.XMLUtil;
 
@@ -255,8 +257,9 @@ public final class XHtmlOutputter {
    * @throws IOException in case of error
    */
   public void writeTo(final File aFile) throws IOException {
-    final FileWriterWithEncoding tmpFileWriter = new FileWriterWithEncoding(aFile, htmlPage.getCharset()); // NOPMD
-    writeTo(tmpFileWriter);
+    final FileChannel tmpChannel = FileChannel.open(aFile.toPath(), StandardOpenOption.CREATE, // NOPMD
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    writeTo(new EncodingWriter(tmpChannel, htmlPage.getCharset()));
   }
 
   /**
@@ -373,7 +376,7 @@ public final class XHtmlOutputter {
           output.println(tmpText);
           output.unindent();
         } else if (SINGLE_LINE_TAGS.contains(tmpParentNode.getClass().getName())) {
-          output.print(xmlUtil.normalizeBodyValue(tmpText));
+          xmlUtil.appendBodyValue(output, tmpText);
         } else {
           output.println(xmlUtil.normalizeBodyValue(tmpText));
         }
@@ -587,7 +590,7 @@ public final class XHtmlOutputter {
           output.print(' ');
           output.print(tmpAttributeName);
           output.print("=\"");
-          output.print(xmlUtil.normalizeAttributeValue(tmpAttributeValue));
+          xmlUtil.appendAttributeValue(output, tmpAttributeValue);
           output.print('"');
         }
       }
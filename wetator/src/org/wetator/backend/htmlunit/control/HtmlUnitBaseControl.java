@@ -28,8 +28,10 @@ import org.wetator.backend.IBrowser;
 import org.wetator.backend.control.IControl;
 import org.wetator.backend.control.KeySequence;
 import org.wetator.backend.control.KeySequence.Key;
+import org.wetator.backend.htmlunit.HtmlUnitBrowser;
 import org.wetator.backend.htmlunit.control.identifier.AbstractHtmlUnitControlIdentifier;
 import org.wetator.backend.htmlunit.util.ExceptionUtil;
+import org.wetator.core.WetatorConfiguration;
 import org.wetator.core.WetatorContext;
 import org.wetator.exception.ActionException;
 import org.wetator.exception.BackendException;
@@ -347,6 +349,44 @@ public abstract class HtmlUnitBaseControl<T extends HtmlElement> implements ICon
     aContext.getBrowser().waitForImmediateJobs();
   }
 
+  /**
+   * Types the given text into the given element char by char simulating the configured typing speed.<br>
+   * If typing in bursts is enabled (see {@link WetatorConfiguration#isTypingBurstsEnabled()}) we only wait
+   * for the JavaScript jobs scheduled by the keystrokes; keystrokes not scheduling anything are delivered
+   * without any delay.
+   *
+   * @param aContext the context
+   * @param anHtmlElement the element to type into
+   * @param aText the text to type; has to be not empty
+   * @throws IOException in case of problems
+   * @throws BackendException in case of problems
+   */
+  protected void typeText(final WetatorContext aContext, final HtmlElement anHtmlElement, final String aText)
+      throws IOException, BackendException {
+    final WetatorConfiguration tmpConfiguration = aContext.getConfiguration();
+    final long tmpDelay = 1000L / (tmpConfiguration.getTypingSpeedInKeystrokesPerMinute() / 60);
+    final IBrowser tmpBrowser = aContext.getBrowser();
+
+    if (tmpConfiguration.isTypingBurstsEnabled() && tmpBrowser instanceof HtmlUnitBrowser) {
+      final HtmlUnitBrowser tmpHtmlUnitBrowser = (HtmlUnitBrowser) tmpBrowser;
+      for (int i = 0; i < aText.length(); i++) {
+        final int tmpNewestJobId = tmpHtmlUnitBrowser.getNewestJobId();
+        anHtmlElement.type(aText.charAt(i));
+        tmpHtmlUnitBrowser.waitForJobsScheduledAfter(tmpNewestJobId, tmpDelay);
+      }
+      return;
+    }
+
+    anHtmlElement.type(aText.charAt(0));
+
+    for (int i = 1; i < aText.length(); i++) {
+      tmpBrowser.waitForImmediateJobs(tmpDelay);
+
+      final char tmpChar = aText.charAt(i);
+      anHtmlElement.type(tmpChar);
+    }
+  }
+
   @Override
   public String getUniqueSelector() {
     final HtmlElement tmpHtmlElement = getHtmlElement();
@@ -128,16 +128,7 @@ public class HtmlUnitInputPassword extends HtmlUnitBaseControl<HtmlPasswordInput
       tmpHtmlPasswordInput.select();
 
       if (tmpValue.length() > 0) {
-        final long tmpDelay = 1000L / (aWetatorContext.getConfiguration().getTypingSpeedInKeystrokesPerMinute() / 60);
-
-        tmpHtmlPasswordInput.type(tmpValue.charAt(0));
-
-        for (int i = 1; i < tmpValue.length(); i++) {
-          aWetatorContext.getBrowser().waitForImmediateJobs(tmpDelay);
-
-          final char tmpChar = tmpValue.charAt(i);
-          tmpHtmlPasswordInput.type(tmpChar);
-        }
+        typeText(aWetatorContext, tmpHtmlPasswordInput, tmpValue);
       } else {
         // simulate delete key
         final Keyboard tmpKeyboard = new Keyboard();
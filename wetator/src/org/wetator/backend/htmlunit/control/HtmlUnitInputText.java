@@ -134,16 +134,7 @@ public class HtmlUnitInputText extends HtmlUnitBaseControl<HtmlTextInput> implem
       tmpHtmlTextInput.select();
 
       if (tmpValue.length() > 0) {
-        final long tmpDelay = 1000L / (aWetatorContext.getConfiguration().getTypingSpeedInKeystrokesPerMinute() / 60);
-
-        tmpHtmlTextInput.type(tmpValue.charAt(0));
-
-        for (int i = 1; i < tmpValue.length(); i++) {
-          aWetatorContext.getBrowser().waitForImmediateJobs(tmpDelay);
-
-          final char tmpChar = tmpValue.charAt(i);
-          tmpHtmlTextInput.type(tmpChar);
-        }
+        typeText(aWetatorContext, tmpHtmlTextInput, tmpValue);
       } else {
         // simulate delete key
         final Keyboard tmpKeyboard = new Keyboard();
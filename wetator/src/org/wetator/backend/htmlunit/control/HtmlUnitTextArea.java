@@ -133,16 +133,7 @@ public class HtmlUnitTextArea extends HtmlUnitBaseControl<HtmlTextArea> implemen
       tmpHtmlTextArea.select();
 
       if (tmpValue.length() > 0) {
-        final long tmpDelay = 1000L / (aWetatorContext.getConfiguration().getTypingSpeedInKeystrokesPerMinute() / 60);
-
-        tmpHtmlTextArea.type(tmpValue.charAt(0));
-
-        for (int i = 1; i < tmpValue.length(); i++) {
-          aWetatorContext.getBrowser().waitForImmediateJobs(tmpDelay);
-
-          final char tmpChar = tmpValue.charAt(i);
-          tmpHtmlTextArea.type(tmpChar);
-        }
+        typeText(aWetatorContext, tmpHtmlTextArea, tmpValue);
       } else {
         // simulate delete key
         final Keyboard tmpKeyboard = new Keyboard();
@@ -17,11 +17,15 @@
 package org.wetator.commandset;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
@@ -191,7 +195,61 @@ public final class DefaultCommandSet extends AbstractCommandSet {
         i++;
       }
 
-      tmpWetatorContext.execute();
+      // after an error the module is only executed for the forced commands; the session state is not touched
+      String tmpSessionStateKey = null;
+      if (!aContext.isErrorOccurred()) {
+        tmpSessionStateKey = getSessionStateKey(aContext, tmpFile, tmpModuleParameters);
+      }
+      if (null != tmpSessionStateKey && aContext.getBrowser().restoreSessionState(tmpSessionStateKey)) {
+        aContext.informListenersInfo("moduleSessionStateRestored", tmpFile.getName());
+        return;
+      }
+
+      // every command of the module (including the used modules) has to be successful
+      if (tmpWetatorContext.execute() && !tmpWetatorContext.isCommandFailed()
+          && !tmpWetatorContext.isCommandIgnored() && null != tmpSessionStateKey) {
+        aContext.getBrowser().saveSessionState(tmpSessionStateKey);
+      }
+    }
+
+    /**
+     * The parameters (e.g. user and password) are part of the key only as hash; the key does not reveal secrets.
+     *
+     * @param aContext the context
+     * @param aFile the module file
+     * @param aModuleParameters the parameters of the module
+     * @return the key for the session state of the given module or null if the state of the module is not reused
+     * @throws InvalidInputException in case the module file can not be resolved
+     */
+    private String getSessionStateKey(final WetatorContext aContext, final File aFile,
+        final List<SecretString> aModuleParameters) throws InvalidInputException {
+      if (!aContext.getConfiguration().getSessionStateModules().contains(aFile.getName())) {
+        return null;
+      }
+
+      try {
+        final StringBuilder tmpKey = new StringBuilder("module:").append(aFile.getCanonicalPath());
+
+        // the parameters are part of the key (e.g. different users)
+        final MessageDigest tmpDigest = MessageDigest.getInstance("SHA-256");
+        for (final SecretString tmpParameter : aModuleParameters) {
+          tmpDigest.update(tmpParameter.getValue().getBytes(StandardCharsets.UTF_8));
+          tmpDigest.update((byte) 0);
+        }
+        tmpKey.append('|');
+        for (final byte tmpByte : tmpDigest.digest()) {
+          tmpKey.append(Character.forDigit((tmpByte >> 4) & 0xF, 16));
+          tmpKey.append(Character.forDigit(tmpByte & 0xF, 16));
+        }
+        return tmpKey.toString();
+      } catch (final NoSuchAlgorithmException e) {
+        // every jvm has to support SHA-256
+        throw new IllegalStateException(e);
+      } catch (final IOException e) {
+        final String tmpMessage = Messages.getMessage("moduleFileNotFound",
+            FilenameUtils.normalize(aFile.getAbsolutePath()));
+        throw new InvalidInputException(tmpMessage, e);
+      }
     }
   }
 
@@ -202,7 +260,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getFirstParameterWPath(aContext);
 
       SecretString tmpValueParam = aCommand.getSecondParameterValue(aContext);
       if (null == tmpValueParam) {
@@ -268,7 +326,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -298,7 +356,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -328,7 +386,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -358,7 +416,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -385,7 +443,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -412,7 +470,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -555,7 +613,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -591,7 +649,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -627,7 +685,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       SecretString tmpValueParam = aCommand.getSecondParameterValue(aContext);
       if (null == tmpValueParam) {
@@ -656,7 +714,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -683,7 +741,7 @@ public final class DefaultCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
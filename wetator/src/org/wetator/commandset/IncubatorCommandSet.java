@@ -83,7 +83,7 @@ public final class IncubatorCommandSet extends AbstractCommandSet {
     @Override
     public void execute(final WetatorContext aContext, final Command aCommand)
         throws CommandException, InvalidInputException {
-      final WPath tmpWPath = new WPath(aCommand.getRequiredFirstParameterValue(aContext), aContext.getConfiguration());
+      final WPath tmpWPath = aCommand.getRequiredFirstParameterWPath(aContext);
 
       aCommand.checkNoUnusedSecondParameter(aContext);
       aCommand.checkNoUnusedThirdParameter(aContext);
@@ -175,11 +175,18 @@ public final class IncubatorCommandSet extends AbstractCommandSet {
 
       final IBrowser tmpBrowser = getBrowser(aContext);
       try {
-        Thread.sleep(tmpWaitTime * 1000L);
+        if (tmpBrowser instanceof HtmlUnitBrowser) {
+          ((HtmlUnitBrowser) tmpBrowser).letTimePass(tmpWaitTime * 1000L);
+        } else {
+          Thread.sleep(tmpWaitTime * 1000L);
+        }
         tmpBrowser.saveCurrentWindowToLog();
       } catch (final InterruptedException e) {
         final String tmpMessage = Messages.getMessage("waitError");
         throw new ActionException(tmpMessage, e);
+      } catch (final BackendException e) {
+        final String tmpMessage = Messages.getMessage("commandBackendError", e.getMessage());
+        throw new ActionException(tmpMessage, e);
       }
     }
   }
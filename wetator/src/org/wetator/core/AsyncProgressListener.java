@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wetator.exception.AssertionException;
+
+/**
+ * Informs an {@link IProgressListener} asynchronously; the execution of the tests does not have to wait for the output
+ * of the listener.<br>
+ * Every event is put into a bounded queue and delivered in the original order by a thread owned by this listener. If
+ * the queue is full the executing thread waits until the listener has caught up. The {@link WetatorContext} passed to
+ * {@link #executeCommandStart(WetatorContext, Command)} is replaced by a snapshot because it changes while the
+ * execution goes on.<br>
+ * The time an event was published is available for the listener by {@link ProgressEventTime#currentTimeMillis()}.<br>
+ * {@link #end(WetatorEngine)} waits until all events are delivered.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+final class AsyncProgressListener implements IProgressListener {
+
+  private static final Logger LOG = LogManager.getLogger(AsyncProgressListener.class);
+
+  /** The maximum number of events waiting for delivery. */
+  private static final int QUEUE_SIZE = 1024;
+
+  /** Marks the end of the delivery. */
+  private static final Event STOP = new Event(aListener -> {
+    // nothing
+  });
+
+  private IProgressListener delegate;
+  private BlockingQueue<Event> events;
+  private Thread deliveryThread;
+
+  /**
+   * The constructor; starts the thread delivering the events.
+   *
+   * @param aDelegate the listener to inform
+   */
+  AsyncProgressListener(final IProgressListener aDelegate) {
+    super();
+    delegate = aDelegate;
+    events = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+    deliveryThread = new Thread(this::deliverEvents, "Wetator-" + aDelegate.getClass().getSimpleName());
+    deliveryThread.setDaemon(true);
+    deliveryThread.start();
+  }
+
+  /**
+   * @return the listener informed by this one
+   */
+  IProgressListener getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Waits until all events are delivered and stops the delivery thread. Events published afterwards are ignored.
+   */
+  void close() {
+    if (!deliveryThread.isAlive()) {
+      return;
+    }
+    publish(STOP);
+    try {
+      deliveryThread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while waiting for the progress listener '" + delegate.getClass().getName() + "'.");
+    }
+  }
+
+  private void deliverEvents() {
+    try {
+      while (true) {
+        final Event tmpEvent = events.take();
+        if (STOP == tmpEvent) {
+          return;
+        }
+        ProgressEventTime.setEventTime(tmpEvent.time);
+        try {
+          tmpEvent.action.accept(delegate);
+        } catch (final Throwable e) {
+          // go on with the next event; otherwise the executing thread may wait forever
+          LOG.error("The progress listener '" + delegate.getClass().getName() + "' failed.", e);
+        } finally {
+          ProgressEventTime.setEventTime(null);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void publish(final Consumer<IProgressListener> anAction) {
+    publish(new Event(anAction));
+  }
+
+  private void publish(final Event anEvent) {
+    if (!deliveryThread.isAlive()) {
+      return;
+    }
+    try {
+      events.put(anEvent);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while informing the progress listener '" + delegate.getClass().getName()
+          + "'; the event is lost.");
+    }
+  }
+
+  @Override
+  public void init(final WetatorEngine aWetatorEngine) {
+    publish(aListener -> aListener.init(aWetatorEngine));
+  }
+
+  @Override
+  public void start(final WetatorEngine aWetatorEngine) {
+    publish(aListener -> aListener.start(aWetatorEngine));
+  }
+
+  @Override
+  public void testCaseStart(final TestCase aTestCase) {
+    publish(aListener -> aListener.testCaseStart(aTestCase));
+  }
+
+  @Override
+  public void testRunStart(final String aBrowserName) {
+    publish(aListener -> aListener.testRunStart(aBrowserName));
+  }
+
+  @Override
+  public void testFileStart(final String aFileName) {
+    publish(aListener -> aListener.testFileStart(aFileName));
+  }
+
+  @Override
+  public void executeCommandStart(final WetatorContext aContext, final Command aCommand) {
+    final WetatorContext tmpSnapshot = aContext.createSnapshot();
+    publish(aListener -> aListener.executeCommandStart(tmpSnapshot, aCommand));
+  }
+
+  @Override
+  public void executeCommandSuccess() {
+    publish(IProgressListener::executeCommandSuccess);
+  }
+
+  @Override
+  public void executeCommandIgnored() {
+    publish(IProgressListener::executeCommandIgnored);
+  }
+
+  @Override
+  public void executeCommandFailure(final AssertionException anAssertionException) {
+    publish(aListener -> aListener.executeCommandFailure(anAssertionException));
+  }
+
+  @Override
+  public void executeCommandError(final Throwable aThrowable) {
+    publish(aListener -> aListener.executeCommandError(aThrowable));
+  }
+
+  @Override
+  public void executeCommandEnd() {
+    publish(IProgressListener::executeCommandEnd);
+  }
+
+  @Override
+  public void testFileEnd() {
+    publish(IProgressListener::testFileEnd);
+  }
+
+  @Override
+  public void testRunIgnored() {
+    publish(IProgressListener::testRunIgnored);
+  }
+
+  @Override
+  public void testRunEnd() {
+    publish(IProgressListener::testRunEnd);
+  }
+
+  @Override
+  public void testCaseEnd() {
+    publish(IProgressListener::testCaseEnd);
+  }
+
+  @Override
+  public void end(final WetatorEngine aWetatorEngine) {
+    publish(aListener -> aListener.end(aWetatorEngine));
+    // the results have to be complete when the engine returns
+    close();
+  }
+
+  @Override
+  public void htmlDescribe(final String aHtmlDescription) {
+    publish(aListener -> aListener.htmlDescribe(aHtmlDescription));
+  }
+
+  @Override
+  public void responseStored(final String aResponseFileName) {
+    publish(aListener -> aListener.responseStored(aResponseFileName));
+  }
+
+  @Override
+  public void highlightedResponse(final String aResponseFileName) {
+    publish(aListener -> aListener.highlightedResponse(aResponseFileName));
+  }
+
+  @Override
+  public void error(final Throwable aThrowable) {
+    publish(aListener -> aListener.error(aThrowable));
+  }
+
+  @Override
+  public void warn(final String aMessageKey, final Object[] aParameters, final String aDetails) {
+    final Object[] tmpParameters = null == aParameters ? null : aParameters.clone();
+    publish(aListener -> aListener.warn(aMessageKey, tmpParameters, aDetails));
+  }
+
+  @Override
+  public void info(final String aMessageKey, final Object... aParameters) {
+    final Object[] tmpParameters = null == aParameters ? null : aParameters.clone();
+    publish(aListener -> aListener.info(aMessageKey, tmpParameters));
+  }
+
+  /**
+   * An event waiting for delivery.
+   */
+  private static final class Event {
+    private Consumer<IProgressListener> action;
+    private long time;
+
+    /**
+     * The constructor; the event is published now.
+     *
+     * @param anAction the action informing the listener
+     */
+    Event(final Consumer<IProgressListener> anAction) {
+      action = anAction;
+      time = System.currentTimeMillis();
+    }
+  }
+}
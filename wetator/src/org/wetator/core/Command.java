@@ -20,6 +20,7 @@ import java.math.BigDecimal;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.wetator.backend.WPath;
 import org.wetator.exception.InvalidInputException;
 import org.wetator.i18n.Messages;
 import org.wetator.util.SecretString;
@@ -39,6 +40,10 @@ public final class Command {
   private Parameter thirdParameter;
   private int lineNo;
 
+  // the last WPath parsed from the first parameter and the key of the value it was parsed from
+  private WPath firstParameterWPath;
+  private String firstParameterWPathKey;
+
   /**
    * The constructor.
    *
@@ -194,6 +199,43 @@ public final class Command {
     return tmpFirstParameter.getValue(aContext);
   }
 
+  /**
+   * Returns the {@link WPath} parsed from the first parameter.<br>
+   * The last parsed {@link WPath} is reused as long as the parameter resolves to the same value (e.g. if the command
+   * is part of a module used again).
+   *
+   * @param aContext the context
+   * @return the {@link WPath}; an empty one if the first parameter was not set
+   * @throws InvalidInputException in case of an invalid {@link WPath}
+   */
+  public WPath getFirstParameterWPath(final WetatorContext aContext) throws InvalidInputException {
+    return getWPath(getFirstParameterValue(aContext), aContext);
+  }
+
+  /**
+   * Returns the {@link WPath} parsed from the first parameter.<br>
+   * The last parsed {@link WPath} is reused as long as the parameter resolves to the same value (e.g. if the command
+   * is part of a module used again).
+   *
+   * @param aContext the context
+   * @return the {@link WPath}
+   * @throws InvalidInputException if the first parameter is not set or in case of an invalid {@link WPath}
+   */
+  public WPath getRequiredFirstParameterWPath(final WetatorContext aContext) throws InvalidInputException {
+    return getWPath(getRequiredFirstParameterValue(aContext), aContext);
+  }
+
+  private WPath getWPath(final SecretString aValue, final WetatorContext aContext) throws InvalidInputException {
+    final WetatorConfiguration tmpConfiguration = aContext.getConfiguration();
+    // the print-out covers the secret parts; a WPath is never changed after parsing so it can be shared
+    final String tmpKey = tmpConfiguration.getWPathSeparator() + '\0' + aValue.getValue() + '\0' + aValue.toString();
+    if (!tmpKey.equals(firstParameterWPathKey)) {
+      firstParameterWPath = new WPath(aValue, tmpConfiguration);
+      firstParameterWPathKey = tmpKey;
+    }
+    return firstParameterWPath;
+  }
+
   /**
    * Returns the list of secret strings parsed from the second parameter.
    *
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+/**
+ * Provides the time of the progress event currently delivered to an {@link IProgressListener}.<br>
+ * If the listeners are informed asynchronously, the events are delivered later by another thread; listeners measuring
+ * times (e.g. the execution time of a command) have to use the time the event was published instead of the current
+ * time.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class ProgressEventTime {
+
+  private static final ThreadLocal<Long> EVENT_TIME = new ThreadLocal<>();
+
+  /**
+   * @return the time the event currently delivered was published or the current time if the event is delivered
+   *         synchronously (in milliseconds)
+   */
+  public static long currentTimeMillis() {
+    final Long tmpEventTime = EVENT_TIME.get();
+    if (null == tmpEventTime) {
+      return System.currentTimeMillis();
+    }
+    return tmpEventTime;
+  }
+
+  /**
+   * Sets the time of the event delivered by the current thread.
+   *
+   * @param anEventTime the time the event was published; null if no event is delivered
+   */
+  static void setEventTime(final Long anEventTime) {
+    if (null == anEventTime) {
+      EVENT_TIME.remove();
+    } else {
+      EVENT_TIME.set(anEventTime);
+    }
+  }
+
+  private ProgressEventTime() {
+    // nothing
+  }
+}
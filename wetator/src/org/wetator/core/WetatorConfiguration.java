@@ -103,16 +103,85 @@ public class WetatorConfiguration {
    */
   public static final String PROPERTY_TYPING_SPEED = PROPERTY_PREFIX + "typingSpeed";
 
+  /**
+   * The property name to enable the typing in bursts.
+   */
+  public static final String PROPERTY_TYPING_BURSTS = PROPERTY_PREFIX + "typingBursts";
+
   /**
    * The property name to set the javascript timeout.
    */
   public static final String PROPERTY_JAVASCRIPT_TIMEOUT = PROPERTY_PREFIX + "jsTimeout";
 
+  /**
+   * The property name to enable the virtual time for javascript jobs.<br>
+   * Only the scheduled jobs are moved; the javascript clock (<code>Date.now()</code>) still shows the real time.
+   */
+  public static final String PROPERTY_JS_VIRTUAL_TIME = PROPERTY_PREFIX + "jsVirtualTime";
+
   /**
    * The property name to set the http timeout.
    */
   public static final String PROPERTY_HTTP_TIMEOUT = PROPERTY_PREFIX + "httpTimeout";
 
+  /**
+   * The property name to enable the http cache shared by all sessions.
+   */
+  public static final String PROPERTY_SHARED_HTTP_CACHE = PROPERTY_PREFIX + "sharedHttpCache";
+
+  /**
+   * The property name to set the directory of the http cache.
+   */
+  public static final String PROPERTY_HTTP_CACHE_DIR = PROPERTY_PREFIX + "httpCacheDir";
+
+  /**
+   * The property name to enable the cache for compiled javascript shared by all sessions.
+   */
+  public static final String PROPERTY_SHARED_SCRIPT_CACHE = PROPERTY_PREFIX + "sharedScriptCache";
+
+  /**
+   * The property name to enable the preparation of the browser for the next session in the background.
+   */
+  public static final String PROPERTY_WARM_UP_WEB_CLIENTS = PROPERTY_PREFIX + "warmUpWebClients";
+
+  /**
+   * The property name to set the modules whose resulting session state is reused by later test cases.
+   */
+  public static final String PROPERTY_SESSION_STATE_MODULES = PROPERTY_PREFIX + "sessionStateModules";
+
+  /**
+   * The property name to set the number of threads writing the page snapshots in the background.
+   */
+  public static final String PROPERTY_SNAPSHOT_WRITER_THREADS = PROPERTY_PREFIX + "snapshotWriterThreads";
+
+  /**
+   * The property name to set the directory storing the content of the resources of the page snapshots only once.
+   */
+  public static final String PROPERTY_RESOURCE_BLOB_DIR = PROPERTY_PREFIX + "resourceBlobDir";
+
+  /**
+   * The property name to set the maximum size (in MB) of the archives the page snapshots are written to; 0 writes the
+   * snapshots as single files.
+   */
+  public static final String PROPERTY_SNAPSHOT_ARCHIVE_SIZE = PROPERTY_PREFIX + "snapshotArchiveSize";
+
+  /**
+   * The property name to set the number of page snapshots kept in memory per test run; the snapshots are only written
+   * in case of a failure or an error. Older snapshots are dropped, even if the test run fails later.
+   */
+  public static final String PROPERTY_SNAPSHOT_RETENTION = PROPERTY_PREFIX + "snapshotRetention";
+
+  /**
+   * The property name to set the number of threads fetching the resources of the page snapshots not downloaded by the
+   * browser.
+   */
+  public static final String PROPERTY_RESOURCE_FETCH_THREADS = PROPERTY_PREFIX + "resourceFetchThreads";
+
+  /**
+   * The property name to enable the page snapshots written as delta to a previous snapshot of the same page.
+   */
+  public static final String PROPERTY_SNAPSHOT_DELTAS = PROPERTY_PREFIX + "snapshotDeltas";
+
   // output
   /**
    * The property name to set the output directory.
@@ -141,6 +210,11 @@ public class WetatorConfiguration {
    */
   public static final String PROPERTY_RETROSPECT = PROPERTY_PREFIX + "retrospect";
 
+  /**
+   * The property name to enable the asynchronous informing of the progress listeners.
+   */
+  public static final String PROPERTY_ASYNC_PROGRESS_LISTENERS = PROPERTY_PREFIX + "asyncProgressListeners";
+
   // browser
   /**
    * The property name to set the supported {@link BrowserType}s (by their {@link BrowserType#getSymbol()}).
@@ -231,6 +305,12 @@ public class WetatorConfiguration {
    */
   public static final String SECRET_PREFIX = "$";
 
+  /**
+   * The name of the index file listing the archive of every page snapshot
+   * (see {@link #PROPERTY_SNAPSHOT_ARCHIVE_SIZE}).
+   */
+  public static final String SNAPSHOT_ARCHIVE_INDEX_FILE_NAME = "snapshots.xml";
+
   private File sourceFile;
 
   private List<IScripter> scripters;
@@ -238,8 +318,21 @@ public class WetatorConfiguration {
   private List<Class<? extends IControl>> controls;
   private String baseUrl;
   private int jsTimeoutInSeconds;
+  private boolean jsVirtualTime;
   private int httpTimeoutInSeconds;
+  private boolean sharedHttpCache;
+  private File httpCacheDir;
+  private boolean sharedScriptCache;
+  private boolean warmUpWebClients;
+  private List<String> sessionStateModules;
+  private int snapshotWriterThreads;
+  private File resourceBlobDir;
+  private int snapshotArchiveSize;
+  private int snapshotRetention;
+  private int resourceFetchThreads;
+  private boolean snapshotDeltas;
   private int typingSpeedInKeystrokesPerMinute;
+  private boolean typingBursts;
 
   private String wpathSeparator;
   private File outputDir;
@@ -274,6 +367,7 @@ public class WetatorConfiguration {
 
   private boolean debugLogging;
   private int retrospect;
+  private boolean asyncProgressListeners;
 
   /**
    * The constructor. It reads the the configuration properties from
@@ -457,6 +551,11 @@ public class WetatorConfiguration {
       throw new ConfigurationException("The property '" + PROPERTY_TYPING_SPEED + "' is no integer.");
     }
 
+    // typingBursts
+    tmpValue = tmpProperties.getProperty(PROPERTY_TYPING_BURSTS, "false");
+    tmpProperties.remove(PROPERTY_TYPING_BURSTS);
+    typingBursts = Boolean.parseBoolean(tmpValue);
+
     // jsTimeout
     tmpValue = tmpProperties.getProperty(PROPERTY_JAVASCRIPT_TIMEOUT, "1");
     try {
@@ -468,6 +567,11 @@ public class WetatorConfiguration {
       throw new ConfigurationException("The property '" + PROPERTY_JAVASCRIPT_TIMEOUT + "' is less than 1.");
     }
 
+    // jsVirtualTime
+    tmpValue = tmpProperties.getProperty(PROPERTY_JS_VIRTUAL_TIME, "false");
+    tmpProperties.remove(PROPERTY_JS_VIRTUAL_TIME);
+    jsVirtualTime = Boolean.parseBoolean(tmpValue);
+
     // httpTimeout
     tmpValue = tmpProperties.getProperty(PROPERTY_HTTP_TIMEOUT, "90");
     try {
@@ -479,6 +583,115 @@ public class WetatorConfiguration {
       throw new ConfigurationException("The property '" + PROPERTY_HTTP_TIMEOUT + "' is less than 1.");
     }
 
+    // sharedHttpCache
+    tmpValue = tmpProperties.getProperty(PROPERTY_SHARED_HTTP_CACHE, "false");
+    tmpProperties.remove(PROPERTY_SHARED_HTTP_CACHE);
+    sharedHttpCache = Boolean.parseBoolean(tmpValue);
+
+    // httpCacheDir
+    tmpValue = tmpProperties.getProperty(PROPERTY_HTTP_CACHE_DIR, "");
+    tmpProperties.remove(PROPERTY_HTTP_CACHE_DIR);
+    if (StringUtils.isNotBlank(tmpValue)) {
+      httpCacheDir = new File(tmpValue);
+      if (!httpCacheDir.isAbsolute()) {
+        // cache dir is relative to the base directory
+        httpCacheDir = new File(aBaseDirectory, tmpValue);
+      }
+      // the disk layer is part of the shared cache
+      sharedHttpCache = true;
+    }
+
+    // sharedScriptCache
+    tmpValue = tmpProperties.getProperty(PROPERTY_SHARED_SCRIPT_CACHE, "false");
+    tmpProperties.remove(PROPERTY_SHARED_SCRIPT_CACHE);
+    sharedScriptCache = Boolean.parseBoolean(tmpValue);
+
+    // warmUpWebClients
+    tmpValue = tmpProperties.getProperty(PROPERTY_WARM_UP_WEB_CLIENTS, "false");
+    tmpProperties.remove(PROPERTY_WARM_UP_WEB_CLIENTS);
+    warmUpWebClients = Boolean.parseBoolean(tmpValue);
+
+    // sessionStateModules
+    tmpValue = tmpProperties.getProperty(PROPERTY_SESSION_STATE_MODULES, "");
+    tmpProperties.remove(PROPERTY_SESSION_STATE_MODULES);
+
+    sessionStateModules = new ArrayList<>();
+    for (final String tmpString : StringUtil.extractStrings(tmpValue, ",", '\\')) {
+      if (StringUtils.isNotBlank(tmpString)) {
+        sessionStateModules.add(tmpString.trim());
+      }
+    }
+
+    // snapshotWriterThreads
+    tmpValue = tmpProperties.getProperty(PROPERTY_SNAPSHOT_WRITER_THREADS, "0");
+    tmpProperties.remove(PROPERTY_SNAPSHOT_WRITER_THREADS);
+    try {
+      snapshotWriterThreads = Integer.parseInt(tmpValue);
+    } catch (final NumberFormatException e) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_WRITER_THREADS + "' is no integer.");
+    }
+    if (snapshotWriterThreads < 0) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_WRITER_THREADS + "' is less than 0.");
+    }
+
+    // resourceBlobDir
+    tmpValue = tmpProperties.getProperty(PROPERTY_RESOURCE_BLOB_DIR, "");
+    tmpProperties.remove(PROPERTY_RESOURCE_BLOB_DIR);
+    if (StringUtils.isNotBlank(tmpValue)) {
+      resourceBlobDir = new File(tmpValue);
+      if (!resourceBlobDir.isAbsolute()) {
+        // blob dir is relative to the base directory
+        resourceBlobDir = new File(aBaseDirectory, tmpValue);
+      }
+    }
+
+    // snapshotArchiveSize
+    tmpValue = tmpProperties.getProperty(PROPERTY_SNAPSHOT_ARCHIVE_SIZE, "0");
+    tmpProperties.remove(PROPERTY_SNAPSHOT_ARCHIVE_SIZE);
+    try {
+      snapshotArchiveSize = Integer.parseInt(tmpValue);
+    } catch (final NumberFormatException e) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_ARCHIVE_SIZE + "' is no integer.");
+    }
+    if (snapshotArchiveSize < 0) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_ARCHIVE_SIZE + "' is less than 0.");
+    }
+    if (snapshotArchiveSize > 0 && null != resourceBlobDir) {
+      // the archives contain the resources themselves
+      LOG.warn("The property '" + PROPERTY_RESOURCE_BLOB_DIR + "' is ignored because the snapshots are written to "
+          + "archives (property '" + PROPERTY_SNAPSHOT_ARCHIVE_SIZE + "').");
+      resourceBlobDir = null;
+    }
+
+    // snapshotRetention
+    tmpValue = tmpProperties.getProperty(PROPERTY_SNAPSHOT_RETENTION, "0");
+    tmpProperties.remove(PROPERTY_SNAPSHOT_RETENTION);
+    try {
+      snapshotRetention = Integer.parseInt(tmpValue);
+    } catch (final NumberFormatException e) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_RETENTION + "' is no integer.");
+    }
+    if (snapshotRetention < 0) {
+      throw new ConfigurationException("The property '" + PROPERTY_SNAPSHOT_RETENTION + "' is less than 0.");
+    }
+
+    // resourceFetchThreads
+    tmpValue = tmpProperties.getProperty(PROPERTY_RESOURCE_FETCH_THREADS, "0");
+    tmpProperties.remove(PROPERTY_RESOURCE_FETCH_THREADS);
+    try {
+      resourceFetchThreads = Integer.parseInt(tmpValue);
+    } catch (final NumberFormatException e) {
+      throw new ConfigurationException("The property '" + PROPERTY_RESOURCE_FETCH_THREADS + "' is no integer.");
+    }
+    if (resourceFetchThreads < 0) {
+      throw new ConfigurationException("The property '" + PROPERTY_RESOURCE_FETCH_THREADS + "' is less than 0.");
+    }
+
+    // snapshotDeltas
+    tmpValue = tmpProperties.getProperty(PROPERTY_SNAPSHOT_DELTAS, "false");
+    tmpProperties.remove(PROPERTY_SNAPSHOT_DELTAS);
+    snapshotDeltas = Boolean.parseBoolean(tmpValue);
+
     // browserVersion
     tmpValue = tmpProperties.getProperty(PROPERTY_BROWSER_TYPE, "");
     tmpProperties.remove(PROPERTY_BROWSER_TYPE);
@@ -705,6 +918,11 @@ public class WetatorConfiguration {
       throw new ConfigurationException("The property '" + PROPERTY_RETROSPECT + "' is no integer.");
     }
 
+    // asyncProgressListeners
+    tmpValue = tmpProperties.getProperty(PROPERTY_ASYNC_PROGRESS_LISTENERS, "false");
+    tmpProperties.remove(PROPERTY_ASYNC_PROGRESS_LISTENERS);
+    asyncProgressListeners = Boolean.parseBoolean(tmpValue);
+
     // all properties starting with $ are variables
     mimeTypes = new HashMap<>();
     Set<Entry<Object, Object>> tmpOtherEntries = tmpProperties.entrySet();
@@ -933,6 +1151,14 @@ public class WetatorConfiguration {
     return jsTimeoutInSeconds;
   }
 
+  /**
+   * @return <code>true</code> if javascript jobs should be executed using a virtual clock; the javascript clock
+   *         (<code>Date.now()</code>) is not changed
+   */
+  public boolean isJsVirtualTimeEnabled() {
+    return jsVirtualTime;
+  }
+
   /**
    * @return the configured http timeout
    */
@@ -940,6 +1166,87 @@ public class WetatorConfiguration {
     return httpTimeoutInSeconds;
   }
 
+  /**
+   * @return <code>true</code> if all sessions of the same browser should share one http cache
+   */
+  public boolean isSharedHttpCacheEnabled() {
+    return sharedHttpCache;
+  }
+
+  /**
+   * @return the directory to store the cached http responses in; null if the shared cache is memory only
+   */
+  public File getHttpCacheDir() {
+    return httpCacheDir;
+  }
+
+  /**
+   * @return <code>true</code> if all sessions of the same browser should share the compiled javascript
+   */
+  public boolean isSharedScriptCacheEnabled() {
+    return sharedScriptCache;
+  }
+
+  /**
+   * @return <code>true</code> if the browser for the next session should be prepared in the background
+   */
+  public boolean isWarmUpWebClientsEnabled() {
+    return warmUpWebClients;
+  }
+
+  /**
+   * @return a list containing the file names of the modules whose resulting session state is reused
+   */
+  public List<String> getSessionStateModules() {
+    return sessionStateModules;
+  }
+
+  /**
+   * @return the number of threads writing the page snapshots in the background; 0 if the snapshots are written
+   *         immediately
+   */
+  public int getSnapshotWriterThreads() {
+    return snapshotWriterThreads;
+  }
+
+  /**
+   * @return the directory storing the content of the resources of the page snapshots only once; null if every
+   *         response directory contains its own copy
+   */
+  public File getResourceBlobDir() {
+    return resourceBlobDir;
+  }
+
+  /**
+   * @return the maximum size (in MB) of the archives the page snapshots are written to; 0 if the snapshots are
+   *         written as single files
+   */
+  public int getSnapshotArchiveSize() {
+    return snapshotArchiveSize;
+  }
+
+  /**
+   * @return the number of page snapshots kept in memory per test run; 0 if every snapshot is written
+   */
+  public int getSnapshotRetention() {
+    return snapshotRetention;
+  }
+
+  /**
+   * @return <code>true</code> if the page snapshots are written as delta to a previous snapshot of the same page
+   */
+  public boolean isSnapshotDeltas() {
+    return snapshotDeltas;
+  }
+
+  /**
+   * @return the number of threads fetching the resources of the page snapshots; 0 if the resources are fetched one
+   *         by one
+   */
+  public int getResourceFetchThreads() {
+    return resourceFetchThreads;
+  }
+
   /**
    * @return the configured wpath separator
    */
@@ -1115,6 +1422,13 @@ public class WetatorConfiguration {
     return typingSpeedInKeystrokesPerMinute;
   }
 
+  /**
+   * @return <code>true</code> if the typing should only wait for the javascript jobs scheduled by the keystrokes
+   */
+  public boolean isTypingBurstsEnabled() {
+    return typingBursts;
+  }
+
   /**
    * @return the configured number of steps for retrospection
    */
@@ -1122,6 +1436,13 @@ public class WetatorConfiguration {
     return retrospect;
   }
 
+  /**
+   * @return <code>true</code> if the progress listeners should be informed asynchronously
+   */
+  public boolean isAsyncProgressListeners() {
+    return asyncProgressListeners;
+  }
+
   /**
    * @return <code>true</code> if the (javascript) debug logging is switched on
    */
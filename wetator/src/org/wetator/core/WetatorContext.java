@@ -17,8 +17,10 @@
 package org.wetator.core;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -43,6 +45,14 @@ public class WetatorContext {
 
   private static final Logger LOG = LogManager.getLogger(WetatorContext.class);
 
+  /** Caches the presence of the {@link ForceExecution} annotation per command implementation class. */
+  private static final ClassValue<Boolean> FORCE_EXECUTION = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(final Class<?> aType) {
+      return aType.isAnnotationPresent(ForceExecution.class);
+    }
+  };
+
   /** The name of the {@link Variable} containing the name of the current test case. */
   public static final String VARIABLE_TESTCASE = "wetator.testcase";
   /** The name of the {@link Variable} containing the label of the current browser. */
@@ -57,11 +67,18 @@ public class WetatorContext {
   private File file;
   private BrowserType browserType;
   private List<Variable> variables; // store them in defined order
+  private Map<String, Variable> variableIndex; // the first variable with a name wins
+  private Map<String, Variable> configurationVariableIndex; // only used by the root context
+  private long variablesModCount;
+  private Map<String, SecretString> replacedValues; // created for replacedValuesVersion only
+  private long replacedValuesVersion = -1;
 
   private WetatorContext parentContext;
 
   private boolean errorOccurred;
   private boolean invalidInput;
+  private boolean commandFailed;
+  private boolean commandIgnored;
 
   /**
    * Constructor for a root context.
@@ -79,6 +96,7 @@ public class WetatorContext {
     file = aFile;
     browserType = aBrowserType;
     variables = new LinkedList<>();
+    variableIndex = new HashMap<>();
 
     // we add our implicit variables first so they always 'win' against variables with the same name defined
     // programmatically or by configuration
@@ -102,6 +120,36 @@ public class WetatorContext {
     errorOccurred = aContext.errorOccurred;
   }
 
+  /**
+   * Constructor for a snapshot.
+   *
+   * @param aContext the context to copy
+   */
+  private WetatorContext(final WetatorContext aContext) {
+    super();
+    engine = aContext.engine;
+    testCaseName = aContext.testCaseName;
+    file = aContext.file;
+    browserType = aContext.browserType;
+    variables = new LinkedList<>();
+    variableIndex = new HashMap<>();
+
+    // the variables of the parents are copied in the order of getVariables()
+    for (WetatorContext tmpContext = aContext; null != tmpContext; tmpContext = tmpContext.parentContext) {
+      for (final Variable tmpVariable : tmpContext.variables) {
+        addVariable(tmpVariable);
+      }
+      if (null == tmpContext.parentContext) {
+        configurationVariableIndex = tmpContext.getConfigurationVariableIndex();
+      }
+    }
+
+    errorOccurred = aContext.errorOccurred;
+    invalidInput = aContext.invalidInput;
+    commandFailed = aContext.commandFailed;
+    commandIgnored = aContext.commandIgnored;
+  }
+
   /**
    * @return the browserType
    */
@@ -119,6 +167,16 @@ public class WetatorContext {
     return new WetatorContext(this, aFile);
   }
 
+  /**
+   * Creates a copy of this context that does not change during the further execution (e.g. if variables are added).
+   * The variables of the parent contexts are part of the copy; the copy can be used by other threads.
+   *
+   * @return the snapshot
+   */
+  public WetatorContext createSnapshot() {
+    return new WetatorContext(this);
+  }
+
   /**
    * @return the file
    */
@@ -145,6 +203,55 @@ public class WetatorContext {
    */
   public void addVariable(final Variable aVariable) {
     variables.add(aVariable);
+    variableIndex.putIfAbsent(aVariable.getName(), aVariable);
+    variablesModCount++;
+  }
+
+  /**
+   * The version changes every time a variable is added to this context or one of its parent contexts.
+   *
+   * @return the version of the variables visible in this context
+   */
+  public long getVariablesVersion() {
+    long tmpVersion = 0;
+    for (WetatorContext tmpContext = this; null != tmpContext; tmpContext = tmpContext.parentContext) {
+      tmpVersion += tmpContext.variablesModCount;
+    }
+    return tmpVersion;
+  }
+
+  /**
+   * Looks up the variable with the given name along the chain of contexts (own variables first, then the ones of the
+   * parent context and finally the configured ones). Same result as the first occurrence in {@link #getVariables()}
+   * but without copying any list.
+   *
+   * @param aName the name of the variable
+   * @return the {@link Variable} or <code>null</code> if not found
+   */
+  public Variable getVariable(final String aName) {
+    WetatorContext tmpContext = this;
+    while (true) {
+      final Variable tmpVariable = tmpContext.variableIndex.get(aName);
+      if (null != tmpVariable) {
+        return tmpVariable;
+      }
+      if (null == tmpContext.parentContext) {
+        return tmpContext.getConfigurationVariableIndex().get(aName);
+      }
+      tmpContext = tmpContext.parentContext;
+    }
+  }
+
+  private Map<String, Variable> getConfigurationVariableIndex() {
+    // the configured variables do not change during the run
+    if (null == configurationVariableIndex) {
+      final Map<String, Variable> tmpIndex = new HashMap<>();
+      for (final Variable tmpVariable : getConfiguration().getVariables()) {
+        tmpIndex.putIfAbsent(tmpVariable.getName(), tmpVariable);
+      }
+      configurationVariableIndex = tmpIndex;
+    }
+    return configurationVariableIndex;
   }
 
   /**
@@ -170,15 +277,33 @@ public class WetatorContext {
   }
 
   /**
+   * The results are cached as long as the variables do not change; every call returns a new {@link SecretString}.
+   *
    * @param aStringWithPlaceholders the string containing the variables to replace
    * @return the {@link SecretString} (as the result of the replacement)
    */
   public SecretString replaceVariables(final String aStringWithPlaceholders) {
-    return new SecretString(aStringWithPlaceholders).replaceVariables(getVariables());
+    final long tmpVersion = getVariablesVersion();
+    if (null == replacedValues || tmpVersion != replacedValuesVersion) {
+      replacedValues = new HashMap<>();
+      replacedValuesVersion = tmpVersion;
+    }
+
+    SecretString tmpResult = replacedValues.get(aStringWithPlaceholders);
+    if (null == tmpResult) {
+      tmpResult = new SecretString(aStringWithPlaceholders).replaceVariablesByLookup(this::getVariable);
+      replacedValues.put(aStringWithPlaceholders, tmpResult);
+    }
+    // the callers may change the result
+    return tmpResult.copy();
   }
 
   /**
    * Processes the associated test file by reading all the commands from the file and executing every single command.
+   * <br>
+   * The implementations of all commands are determined before the first command is executed. If there is an
+   * unsupported command, the listeners are warned up front; the commands before are executed as usual and the error
+   * is reported when reaching the unsupported command.
    *
    * @return false if execution failed due to invalid input
    * @throws org.wetator.exception.ResourceException in case of problems reading the file
@@ -189,11 +314,15 @@ public class WetatorContext {
     engine.informListenersTestFileStart(tmpFile.getAbsolutePath());
     try {
       final List<Command> tmpCommands = engine.readCommandsFromFile(tmpFile);
+      final ICommandImplementation[] tmpCommandImplementations = engine.getCommandImplementationsFor(tmpCommands);
+      warnAboutUnsupportedCommands(tmpCommands, tmpCommandImplementations);
 
+      int i = 0;
       for (final Command tmpCommand : tmpCommands) {
-        if (!executeCommand(tmpCommand)) {
+        if (!executeCommand(tmpCommand, tmpCommandImplementations[i])) {
           setInvalidInput(true);
         }
+        i++;
       }
     } catch (final InvalidInputException e) {
       engine.informListenersError(e);
@@ -204,7 +333,20 @@ public class WetatorContext {
     return !invalidInput;
   }
 
-  private boolean executeCommand(final Command aCommand) {
+  private void warnAboutUnsupportedCommands(final List<Command> aCommands,
+      final ICommandImplementation[] aCommandImplementations) {
+    int i = 0;
+    for (final Command tmpCommand : aCommands) {
+      if (!tmpCommand.isComment() && null == aCommandImplementations[i]) {
+        // the error itself is reported when reaching the command
+        informListenersWarn("unsupportedCommandAhead", tmpCommand.getName(), getFile().getAbsolutePath(),
+            Integer.toString(tmpCommand.getLineNo()));
+      }
+      i++;
+    }
+  }
+
+  private boolean executeCommand(final Command aCommand, final ICommandImplementation aCommandImplementation) {
     engine.informListenersExecuteCommandStart(this, aCommand);
     try {
       if (aCommand.isComment()) {
@@ -213,20 +355,24 @@ public class WetatorContext {
         }
       } else {
         try {
-          if (determineAndExecuteCommandImpl(aCommand)) {
+          if (executeCommandImpl(aCommand, aCommandImplementation)) {
             engine.informListenersExecuteCommandSuccess();
           } else {
             engine.informListenersExecuteCommandIgnored();
+            setCommandIgnored();
           }
         } catch (final AssertionException e) {
           engine.informListenersExecuteCommandFailure(e);
+          setCommandFailed();
         } catch (final InvalidInputException e) {
           engine.informListenersExecuteCommandError(e);
           setErrorOccurred(true);
+          setCommandFailed();
           return false;
         } catch (final Exception e) {
           engine.informListenersExecuteCommandError(e);
           setErrorOccurred(true);
+          setCommandFailed();
         }
       }
     } finally {
@@ -244,20 +390,24 @@ public class WetatorContext {
    * @throws InvalidInputException in case of invalid user input
    */
   public boolean determineAndExecuteCommandImpl(final Command aCommand) throws CommandException, InvalidInputException {
-    final ICommandImplementation tmpCommandImplementation = engine.getCommandImplementationFor(aCommand.getName());
-    if (null == tmpCommandImplementation) {
+    return executeCommandImpl(aCommand, engine.getCommandImplementationFor(aCommand.getName()));
+  }
+
+  private boolean executeCommandImpl(final Command aCommand, final ICommandImplementation aCommandImplementation)
+      throws CommandException, InvalidInputException {
+    if (null == aCommandImplementation) {
       throw new InvalidInputException(Messages.getMessage("unsupportedCommand", aCommand.getName(),
           getFile().getAbsolutePath(), Integer.toString(aCommand.getLineNo())));
     }
 
     // execute the command only if no error occurred so far or the command should be executed even if an error occurred
-    if (!errorOccurred || tmpCommandImplementation.getClass().isAnnotationPresent(ForceExecution.class)) {
+    if (!errorOccurred || FORCE_EXECUTION.get(aCommandImplementation.getClass())) {
       final IBrowser tmpBrowser = getBrowser();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Executing '" + aCommand.toPrintableString(this) + "'");
       }
       try {
-        tmpCommandImplementation.execute(this, aCommand);
+        aCommandImplementation.execute(this, aCommand);
       } catch (final ActionException e) {
         tmpBrowser.saveCurrentWindowToLog();
         tmpBrowser.checkAndResetFailures();
@@ -338,6 +488,48 @@ public class WetatorContext {
     }
   }
 
+  /**
+   * @return <code>true</code> if an error occurred so far; the following commands are ignored
+   */
+  public boolean isErrorOccurred() {
+    return errorOccurred;
+  }
+
+  /**
+   * @return <code>true</code> if at least one of the commands executed in this context or one of its sub contexts
+   *         failed
+   */
+  public boolean isCommandFailed() {
+    return commandFailed;
+  }
+
+  /**
+   * Marks this context and all parent contexts as having a failed command.
+   */
+  private void setCommandFailed() {
+    commandFailed = true;
+    if (parentContext != null) {
+      parentContext.setCommandFailed();
+    }
+  }
+
+  /**
+   * @return <code>true</code> if at least one of the commands of this context or one of its sub contexts was ignored
+   */
+  public boolean isCommandIgnored() {
+    return commandIgnored;
+  }
+
+  /**
+   * Marks this context and all parent contexts as having an ignored command.
+   */
+  private void setCommandIgnored() {
+    commandIgnored = true;
+    if (parentContext != null) {
+      parentContext.setCommandIgnored();
+    }
+  }
+
   /**
    * Sets the invalidInput to the given value. Additionally if a parent context is present it is set there, too.
    *
@@ -17,9 +17,15 @@
 package org.wetator.core;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
@@ -57,6 +63,12 @@ public class WetatorEngine {
   private IBrowser browser;
   private List<ICommandSet> commandSets;
   private List<IScripter> scripter;
+  /** The commands already read from a file (by canonical path); shared by all test cases and sessions. */
+  private Map<String, ParsedFile> parsedFiles;
+  /** The same files by their (shared) list of commands. */
+  private Map<List<Command>, ParsedFile> parsedFilesByCommands;
+  /** The command implementations already looked up (by command name); null for unsupported commands. */
+  private Map<String, ICommandImplementation> commandImplementations;
   // access to the progressListeners must be synchronized to prevent interference in multithreading situations
   private List<IProgressListener> progressListener;
 
@@ -66,6 +78,9 @@ public class WetatorEngine {
   public WetatorEngine() {
     testCases = new LinkedList<>();
     progressListener = new LinkedList<>();
+    parsedFiles = new HashMap<>();
+    parsedFilesByCommands = new IdentityHashMap<>();
+    commandImplementations = new HashMap<>();
   }
 
   /**
@@ -96,6 +111,14 @@ public class WetatorEngine {
 
     // setup the command sets
     commandSets = getConfiguration().getCommandSets();
+    synchronized (commandImplementations) {
+      commandImplementations.clear();
+    }
+    synchronized (parsedFiles) {
+      for (final ParsedFile tmpParsedFile : parsedFiles.values()) {
+        tmpParsedFile.commandImplementations = null;
+      }
+    }
   }
 
   private WetatorConfiguration readConfiguration() {
@@ -145,6 +168,9 @@ public class WetatorEngine {
     setBrowser(tmpBrowser);
 
     addDefaultProgressListeners();
+    if (getConfiguration().isAsyncProgressListeners()) {
+      enableAsyncProgressListeners();
+    }
 
     informListenersStart();
     try {
@@ -195,6 +221,41 @@ public class WetatorEngine {
       }
     } finally {
       informListenersEnd();
+      disableAsyncProgressListeners();
+    }
+  }
+
+  /**
+   * Replaces all {@link IProgressListener}s not annotated with {@link SynchronousProgressListener} by an
+   * {@link AsyncProgressListener} informing them.
+   */
+  protected void enableAsyncProgressListeners() {
+    synchronized (progressListener) {
+      for (final ListIterator<IProgressListener> tmpIterator = progressListener.listIterator(); tmpIterator
+          .hasNext();) {
+        final IProgressListener tmpListener = tmpIterator.next();
+        if (!(tmpListener instanceof AsyncProgressListener)
+            && !tmpListener.getClass().isAnnotationPresent(SynchronousProgressListener.class)) {
+          tmpIterator.set(new AsyncProgressListener(tmpListener));
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until all events are delivered to the asynchronous {@link IProgressListener}s and replaces them by the
+   * original ones again.
+   */
+  protected void disableAsyncProgressListeners() {
+    synchronized (progressListener) {
+      for (final ListIterator<IProgressListener> tmpIterator = progressListener.listIterator(); tmpIterator
+          .hasNext();) {
+        final IProgressListener tmpListener = tmpIterator.next();
+        if (tmpListener instanceof AsyncProgressListener) {
+          ((AsyncProgressListener) tmpListener).close();
+          tmpIterator.set(((AsyncProgressListener) tmpListener).getDelegate());
+        }
+      }
     }
   }
 
@@ -251,7 +312,9 @@ public class WetatorEngine {
   }
 
   /**
-   * Reads all commands of the given file and returns them in the same order they occur in the file.
+   * Reads all commands of the given file and returns them in the same order they occur in the file.<br>
+   * The commands are cached; the file is only read again if it was modified in the meantime (last modification time
+   * or size changed).
    *
    * @param aFile the file to read the commands from.
    * @return a list of {@link Command}s.
@@ -260,10 +323,65 @@ public class WetatorEngine {
    * @throws org.wetator.exception.ResourceException in case of problems reading the file
    */
   protected List<Command> readCommandsFromFile(final File aFile) throws InvalidInputException {
+    String tmpPath;
+    try {
+      tmpPath = aFile.getCanonicalPath();
+    } catch (final IOException e) {
+      tmpPath = aFile.getAbsolutePath();
+    }
+    final long tmpLastModified = aFile.lastModified();
+    final long tmpLength = aFile.length();
+
+    synchronized (parsedFiles) {
+      final ParsedFile tmpParsedFile = parsedFiles.get(tmpPath);
+      if (null != tmpParsedFile && tmpParsedFile.lastModified == tmpLastModified
+          && tmpParsedFile.length == tmpLength) {
+        return tmpParsedFile.commands;
+      }
+    }
+
     final IScripter tmpScripter = createScripter(aFile);
 
     tmpScripter.script(aFile);
-    return tmpScripter.getCommands();
+    // the commands are shared, so they must not be changed
+    final List<Command> tmpCommands = Collections.unmodifiableList(new ArrayList<>(tmpScripter.getCommands()));
+
+    // a missing file has neither a modification time nor a size
+    if (tmpLastModified > 0) {
+      synchronized (parsedFiles) {
+        final ParsedFile tmpParsedFile = new ParsedFile(tmpLastModified, tmpLength, tmpCommands);
+        final ParsedFile tmpOutdated = parsedFiles.put(tmpPath, tmpParsedFile);
+        if (null != tmpOutdated) {
+          parsedFilesByCommands.remove(tmpOutdated.commands);
+        }
+        parsedFilesByCommands.put(tmpCommands, tmpParsedFile);
+      }
+    }
+    return tmpCommands;
+  }
+
+  /**
+   * The commands read from a file.
+   */
+  private static final class ParsedFile {
+    private long lastModified;
+    private long length;
+    private List<Command> commands;
+    /** The implementations of the commands (same order); determined on first use. */
+    private ICommandImplementation[] commandImplementations;
+
+    /**
+     * The constructor.
+     *
+     * @param aLastModified the last modification time of the file
+     * @param aLength the size of the file
+     * @param aCommands the commands
+     */
+    ParsedFile(final long aLastModified, final long aLength, final List<Command> aCommands) {
+      lastModified = aLastModified;
+      length = aLength;
+      commands = aCommands;
+    }
   }
 
   private IScripter createScripter(final File aFile) throws InvalidInputException {
@@ -295,17 +413,66 @@ public class WetatorEngine {
   }
 
   /**
+   * Determines the implementations of all the given commands. For commands read by
+   * {@link #readCommandsFromFile(File)} the result is cached together with the commands; the returned array is shared
+   * and must not be changed.
+   *
+   * @param aCommands the commands
+   * @return the {@link ICommandImplementation}s in the same order as the commands; <code>null</code> for comments and
+   *         unsupported commands
+   */
+  protected ICommandImplementation[] getCommandImplementationsFor(final List<Command> aCommands) {
+    final ParsedFile tmpParsedFile;
+    synchronized (parsedFiles) {
+      tmpParsedFile = parsedFilesByCommands.get(aCommands);
+      if (null != tmpParsedFile && null != tmpParsedFile.commandImplementations) {
+        return tmpParsedFile.commandImplementations;
+      }
+    }
+
+    final ICommandImplementation[] tmpResult = new ICommandImplementation[aCommands.size()];
+    int i = 0;
+    for (final Command tmpCommand : aCommands) {
+      if (!tmpCommand.isComment()) {
+        tmpResult[i] = getCommandImplementationFor(tmpCommand.getName());
+      }
+      i++;
+    }
+
+    if (null != tmpParsedFile) {
+      synchronized (parsedFiles) {
+        tmpParsedFile.commandImplementations = tmpResult;
+      }
+    }
+    return tmpResult;
+  }
+
+  /**
+   * The command sets are asked only once per command name; the result is cached.
+   *
    * @param aCommandName the name of the {@link ICommandImplementation}
    * @return the {@link ICommandImplementation} for the given name or <code>null</code> if none was found
    */
   protected ICommandImplementation getCommandImplementationFor(final String aCommandName) {
+    synchronized (commandImplementations) {
+      if (commandImplementations.containsKey(aCommandName)) {
+        return commandImplementations.get(aCommandName);
+      }
+    }
+
+    ICommandImplementation tmpResult = null;
     for (final ICommandSet tmpCommandSet : commandSets) {
       final ICommandImplementation tmpCommandImplementation = tmpCommandSet.getCommandImplementationFor(aCommandName);
       if (null != tmpCommandImplementation) {
-        return tmpCommandImplementation;
+        tmpResult = tmpCommandImplementation;
+        break;
       }
     }
-    return null;
+
+    synchronized (commandImplementations) {
+      commandImplementations.put(aCommandName, tmpResult);
+    }
+    return tmpResult;
   }
 
   /**
@@ -394,6 +561,12 @@ public class WetatorEngine {
       if (progressListener.contains(aProgressListener)) {
         return;
       }
+      for (final IProgressListener tmpListener : progressListener) {
+        if (tmpListener instanceof AsyncProgressListener
+            && ((AsyncProgressListener) tmpListener).getDelegate().equals(aProgressListener)) {
+          return;
+        }
+      }
       progressListener.add(aProgressListener);
     }
   }
@@ -580,10 +753,14 @@ public class WetatorEngine {
    * Informs all listeners about 'end'.
    */
   protected void informListenersEnd() {
+    // the listeners are ended without holding the lock; a listener may inform the others while ending (e.g. about
+    // the report generation) and an asynchronous one does this on its own thread
+    final List<IProgressListener> tmpListeners;
     synchronized (progressListener) {
-      for (final IProgressListener tmpListener : progressListener) {
-        tmpListener.end(this);
-      }
+      tmpListeners = new ArrayList<>(progressListener);
+    }
+    for (final IProgressListener tmpListener : tmpListeners) {
+      tmpListener.end(this);
     }
   }
 
@@ -66,6 +66,13 @@ final class RegExpSearchPattern extends SearchPattern {
     runAutomaton = new RunAutomaton(tmpAutomaton);
   }
 
+  /**
+   * @return the pattern used by the automaton
+   */
+  String getPatternString() {
+    return patternString;
+  }
+
   @Override
   public int getMinLength() {
     return minLength;
@@ -16,6 +16,7 @@
 
 package org.wetator.core.searchpattern;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -178,6 +179,52 @@ public abstract class SearchPattern {
     return tmpSearchPattern;
   }
 
+  /**
+   * Constructs a new {@link SearchPattern} matching every string that is matched by at least one of the given
+   * {@link SearchPattern}s.<br>
+   * All patterns are merged into one automaton; this way the check of a string costs only one run, regardless of the
+   * number of patterns.
+   *
+   * @param aSearchPatterns the {@link SearchPattern}s to combine (at least one)
+   * @return the combined {@link SearchPattern}
+   */
+  public static SearchPattern compileUnion(final Collection<SearchPattern> aSearchPatterns) {
+    final StringBuilder tmpOriginalString = new StringBuilder();
+    final StringBuilder tmpPattern = new StringBuilder();
+
+    for (final SearchPattern tmpSearchPattern : aSearchPatterns) {
+      final String tmpPatternString;
+      if (tmpSearchPattern instanceof MatchAllSearchPattern) {
+        return tmpSearchPattern;
+      } else if (tmpSearchPattern instanceof TextOnlySearchPattern) {
+        tmpPatternString = escapeText(((TextOnlySearchPattern) tmpSearchPattern).getPatternString());
+      } else {
+        tmpPatternString = ((RegExpSearchPattern) tmpSearchPattern).getPatternString();
+      }
+
+      if (tmpPattern.length() > 0) {
+        tmpOriginalString.append(" | ");
+        tmpPattern.append('|');
+      }
+      tmpOriginalString.append(tmpSearchPattern.getOriginalString());
+      tmpPattern.append('(').append(tmpPatternString).append(')');
+    }
+
+    return new RegExpSearchPattern(tmpOriginalString.toString(), tmpPattern.toString());
+  }
+
+  private static String escapeText(final String aText) {
+    final StringBuilder tmpPattern = new StringBuilder(aText.length() + 10);
+    for (int i = 0; i < aText.length(); i++) {
+      final char tmpChar = aText.charAt(i);
+      if ('*' == tmpChar || '?' == tmpChar || '\\' == tmpChar || SPECIAL_CHARS.indexOf(tmpChar) > -1) {
+        tmpPattern.append('\\');
+      }
+      tmpPattern.append(tmpChar);
+    }
+    return tmpPattern.toString();
+  }
+
   /**
    * The constructor.
    *
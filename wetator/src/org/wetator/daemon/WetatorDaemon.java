@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.wetator.Version;
+import org.wetator.core.TestCase;
+import org.wetator.core.WetatorEngine;
+import org.wetator.progresslistener.StdOutProgressListener;
+import org.wetator.util.Output;
+
+/**
+ * A long living Wetator process executing the test runs requested by the {@link WetatorDaemonClient}s (e.g. the
+ * command line interface or the Ant task) on the same machine.<br>
+ * The JVM, HtmlUnit and Rhino stay warm between the runs; every run still uses its own {@link WetatorEngine} reading
+ * the current configuration. The requests are executed one after the other; the output of the run is sent back to
+ * the client.<br>
+ * The daemon only listens on the loopback interface. Additionally every request has to contain the random token the
+ * daemon writes at startup to a file only the user can read (in the directory <code>.wetator</code> of the user's
+ * home); this way other users of the machine can not use the daemon.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class WetatorDaemon {
+
+  private static final Logger LOG = LogManager.getLogger(WetatorDaemon.class);
+
+  /** The port used if none is given. */
+  public static final int DEFAULT_PORT = 7480;
+  /** The directory for the token files if none is given. */
+  public static final File DEFAULT_TOKEN_DIR = new File(System.getProperty("user.home"), ".wetator");
+
+  // the protocol
+  static final int PROTOCOL_VERSION = 2;
+  static final byte REQUEST_RUN = 1;
+  static final byte REQUEST_STOP = 2;
+  static final byte RECORD_OUTPUT = 1;
+  static final byte RECORD_RESULT = 2;
+  static final byte RECORD_ERROR = 3;
+
+  /** The time a client has to send the request (in millis). */
+  private static final int REQUEST_TIMEOUT = 10000;
+
+  private ServerSocket serverSocket;
+  private int requestTimeout = REQUEST_TIMEOUT;
+  private byte[] token;
+  private File tokenFile;
+  private volatile boolean stopped;
+
+  /**
+   * The start point for the command line call.<br>
+   * Arguments:
+   * <ul>
+   * <li><code>-port &lt;port&gt;</code> the port to listen on (default {@value #DEFAULT_PORT})</li>
+   * <li><code>-stop</code> stops the daemon listening on the port</li>
+   * </ul>
+   *
+   * @param anArgsArray the command line arguments
+   */
+  public static void main(final String[] anArgsArray) {
+    int tmpPort = DEFAULT_PORT;
+    boolean tmpStop = false;
+    for (int i = 0; i < anArgsArray.length; i++) {
+      final String tmpArg = anArgsArray[i].trim();
+      if ("-port".equals(tmpArg) && i < (anArgsArray.length - 1)) {
+        tmpPort = Integer.parseInt(anArgsArray[i + 1].trim());
+        i++;
+      } else if ("-stop".equals(tmpArg)) {
+        tmpStop = true;
+      }
+    }
+
+    try {
+      if (tmpStop) {
+        new WetatorDaemonClient(tmpPort).stopDaemon();
+        return;
+      }
+
+      final WetatorDaemon tmpDaemon = new WetatorDaemon(tmpPort);
+      LOG.info(Version.getFullProductName());
+      LOG.info("    Daemon listening on port " + tmpDaemon.getPort());
+      LOG.info("    Token file " + tmpDaemon.tokenFile.getAbsolutePath());
+      tmpDaemon.run();
+    } catch (final Throwable e) {
+      System.out.println("Wetator daemon failed: " + e.getMessage()); // NOPMD
+      LOG.fatal("Wetator daemon failed:", e);
+      System.exit(1);
+    }
+    // there may be some threads left by the last run
+    System.exit(0);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param aPort the port to listen on; 0 for any free port
+   * @throws IOException in case the port is not available or the token file could not be written
+   */
+  public WetatorDaemon(final int aPort) throws IOException {
+    this(aPort, DEFAULT_TOKEN_DIR);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param aPort the port to listen on; 0 for any free port
+   * @param aTokenDir the directory to write the token file to
+   * @throws IOException in case the port is not available or the token file could not be written
+   */
+  public WetatorDaemon(final int aPort, final File aTokenDir) throws IOException {
+    super();
+    serverSocket = new ServerSocket(aPort, 50, InetAddress.getLoopbackAddress());
+
+    final byte[] tmpRandom = new byte[32];
+    new SecureRandom().nextBytes(tmpRandom);
+    final StringBuilder tmpToken = new StringBuilder(64);
+    for (final byte tmpByte : tmpRandom) {
+      tmpToken.append(String.format("%02x", tmpByte));
+    }
+    token = tmpToken.toString().getBytes(StandardCharsets.US_ASCII);
+
+    tokenFile = getTokenFile(aTokenDir, getPort());
+    try {
+      writeTokenFile(tokenFile, token);
+    } catch (final IOException e) {
+      serverSocket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @param aTokenDir the directory of the token files
+   * @param aPort the port of the daemon
+   * @return the file containing the token of the daemon listening on the given port
+   */
+  static File getTokenFile(final File aTokenDir, final int aPort) {
+    return new File(aTokenDir, "daemon-" + aPort + ".token");
+  }
+
+  private static void writeTokenFile(final File aFile, final byte[] aToken) throws IOException {
+    FileUtils.forceMkdir(aFile.getParentFile());
+    final Path tmpPath = aFile.toPath();
+    Files.deleteIfExists(tmpPath);
+    // the file is created without access for others before the token is written
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(tmpPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else {
+      Files.createFile(tmpPath);
+      if (!aFile.setReadable(false, false) || !aFile.setReadable(true, true) || !aFile.setWritable(false, false)
+          || !aFile.setWritable(true, true)) {
+        throw new IOException("Could not restrict the access to the token file '" + aFile.getAbsolutePath() + "'.");
+      }
+    }
+    Files.write(tmpPath, aToken);
+  }
+
+  /**
+   * Helper for tests.
+   *
+   * @param aRequestTimeout the time a client has to send the request (in millis)
+   */
+  void setRequestTimeout(final int aRequestTimeout) {
+    requestTimeout = aRequestTimeout;
+  }
+
+  /**
+   * @return the port the daemon is listening on
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accepts and executes the requests one after the other until the daemon gets stopped.
+   */
+  public void run() {
+    while (!stopped) {
+      try (Socket tmpSocket = serverSocket.accept()) {
+        handleRequest(tmpSocket);
+      } catch (final IOException e) {
+        if (!stopped) {
+          LOG.error("Processing the request failed.", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the daemon; a running request is finished.
+   */
+  public void stop() {
+    stopped = true;
+    try {
+      serverSocket.close();
+    } catch (final IOException e) {
+      LOG.warn("Closing the daemon socket failed.", e);
+    }
+    FileUtils.deleteQuietly(tokenFile);
+  }
+
+  private void handleRequest(final Socket aSocket) throws IOException {
+    final DataInputStream tmpIn = new DataInputStream(new BufferedInputStream(aSocket.getInputStream()));
+    final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(aSocket.getOutputStream()));
+
+    // the requests are handled one after the other; a client not sending its request must not block the others
+    aSocket.setSoTimeout(requestTimeout);
+    try {
+      handleRequest(tmpIn, tmpOut);
+    } catch (final SocketTimeoutException e) {
+      LOG.warn("Request not received within " + requestTimeout + "ms; rejected.");
+      writeError(tmpOut, "Request timed out.");
+    }
+  }
+
+  private void handleRequest(final DataInputStream anIn, final DataOutputStream anOut) throws IOException {
+    if (PROTOCOL_VERSION != anIn.readInt()) {
+      writeError(anOut, "Unsupported protocol version.");
+      return;
+    }
+    // only the user able to read the token file is allowed to use the daemon
+    if (!MessageDigest.isEqual(token, anIn.readUTF().getBytes(StandardCharsets.US_ASCII))) {
+      LOG.warn("Request with invalid token rejected.");
+      writeError(anOut, "Invalid token.");
+      return;
+    }
+    final byte tmpRequest = anIn.readByte();
+    if (REQUEST_STOP == tmpRequest) {
+      LOG.info("Daemon stopped.");
+      stop();
+      return;
+    }
+    if (REQUEST_RUN != tmpRequest) {
+      writeError(anOut, "Unsupported request " + tmpRequest + ".");
+      return;
+    }
+
+    final String tmpConfigFileName = anIn.readUTF();
+    final int tmpPropertyCount = anIn.readInt();
+    final Map<String, String> tmpProperties = new HashMap<>();
+    for (int i = 0; i < tmpPropertyCount; i++) {
+      tmpProperties.put(anIn.readUTF(), anIn.readUTF());
+    }
+    final int tmpTestCaseCount = anIn.readInt();
+    final List<TestCase> tmpTestCases = new ArrayList<>(tmpTestCaseCount);
+    for (int i = 0; i < tmpTestCaseCount; i++) {
+      tmpTestCases.add(new TestCase(anIn.readUTF(), new File(anIn.readUTF())));
+    }
+    final boolean tmpWholeLines = anIn.readBoolean();
+
+    final DaemonProgressListener tmpListener = new DaemonProgressListener(new RecordWriter(anOut), tmpWholeLines);
+    try {
+      runTests(tmpConfigFileName, tmpProperties, tmpTestCases, tmpListener);
+    } catch (final Exception e) {
+      LOG.error("Wetator execution failed:", e);
+      writeError(anOut, e.toString());
+      return;
+    }
+
+    anOut.writeByte(RECORD_RESULT);
+    anOut.writeLong(tmpListener.getTestCountProcessed());
+    anOut.writeLong(tmpListener.getTestCountError());
+    anOut.writeLong(tmpListener.getTestCountFailure());
+    anOut.writeLong(tmpListener.getTestCountIgnored());
+    anOut.flush();
+  }
+
+  private void runTests(final String aConfigFileName, final Map<String, String> aProperties,
+      final List<TestCase> aTestCases, final DaemonProgressListener aListener) throws Exception {
+    final WetatorEngine tmpWetatorEngine = new WetatorEngine();
+    try {
+      if (!aConfigFileName.isEmpty()) {
+        tmpWetatorEngine.setConfigFileName(aConfigFileName);
+      }
+      tmpWetatorEngine.setExternalProperties(aProperties);
+      tmpWetatorEngine.addProgressListener(aListener);
+      tmpWetatorEngine.init();
+
+      for (final TestCase tmpTestCase : aTestCases) {
+        tmpWetatorEngine.addTestCase(tmpTestCase.getName(), tmpTestCase.getFile());
+      }
+
+      tmpWetatorEngine.executeTests();
+    } finally {
+      tmpWetatorEngine.shutdown();
+    }
+  }
+
+  private static void writeError(final DataOutputStream anOut, final String aMessage) throws IOException {
+    anOut.writeByte(RECORD_ERROR);
+    anOut.writeUTF(aMessage);
+    anOut.flush();
+  }
+
+  /**
+   * Sends everything written as output records to the client.<br>
+   * The output is collected until the next flush; the progress listener flushes after every print, so a line
+   * printed at once is sent as one record (only lines longer than the record limit are split).
+   */
+  private static final class RecordWriter extends Writer {
+    // writeUTF is limited to 64k bytes (up to 3 bytes per char)
+    private static final int MAX_CHUNK_LENGTH = 16 * 1024;
+
+    private DataOutputStream out;
+    private StringBuilder buffer;
+
+    /**
+     * The constructor.
+     *
+     * @param anOut the stream to write the records to
+     */
+    RecordWriter(final DataOutputStream anOut) {
+      super();
+      out = anOut;
+      buffer = new StringBuilder();
+    }
+
+    @Override
+    public void write(final char[] aCbuf, final int anOff, final int aLen) throws IOException {
+      buffer.append(aCbuf, anOff, aLen);
+    }
+
+    @Override
+    public void write(final String aString, final int anOff, final int aLen) throws IOException {
+      buffer.append(aString, anOff, anOff + aLen);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      final int tmpLength = buffer.length();
+      for (int i = 0; i < tmpLength; i += MAX_CHUNK_LENGTH) {
+        out.writeByte(RECORD_OUTPUT);
+        out.writeUTF(buffer.substring(i, Math.min(i + MAX_CHUNK_LENGTH, tmpLength)));
+      }
+      buffer.setLength(0);
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * The progress output for the client; optionally only whole lines are sent (e.g. for the Ant task).
+   */
+  private static final class DaemonProgressListener extends StdOutProgressListener {
+    private boolean wholeLines;
+    private StringBuilder printBuffer;
+
+    /**
+     * The constructor.
+     *
+     * @param aWriter the writer to write on
+     * @param aWholeLinesFlag true if only whole lines should be written
+     */
+    DaemonProgressListener(final Writer aWriter, final boolean aWholeLinesFlag) {
+      super();
+      output = new Output(aWriter, "  ");
+      wholeLines = aWholeLinesFlag;
+      printBuffer = new StringBuilder();
+    }
+
+    @Override
+    protected void print(final String aString) {
+      if (wholeLines) {
+        printBuffer.append(aString);
+      } else {
+        super.print(aString);
+      }
+    }
+
+    @Override
+    protected void println(final String aString) {
+      if (wholeLines) {
+        printBuffer.append(aString);
+        super.println(printBuffer.toString());
+        printBuffer.setLength(0);
+      } else {
+        super.println(aString);
+      }
+    }
+  }
+}
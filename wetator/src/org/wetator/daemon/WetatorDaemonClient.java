@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.wetator.core.TestCase;
+import org.wetator.exception.ResourceException;
+
+/**
+ * The client to let a {@link WetatorDaemon} running on the same machine execute the tests.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class WetatorDaemonClient {
+
+  private int port;
+  private File tokenDir;
+
+  /**
+   * The constructor.
+   *
+   * @param aPort the port the daemon is listening on
+   */
+  public WetatorDaemonClient(final int aPort) {
+    this(aPort, WetatorDaemon.DEFAULT_TOKEN_DIR);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param aPort the port the daemon is listening on
+   * @param aTokenDir the directory containing the token file of the daemon
+   */
+  public WetatorDaemonClient(final int aPort, final File aTokenDir) {
+    super();
+    port = aPort;
+    tokenDir = aTokenDir;
+  }
+
+  /**
+   * Lets the daemon execute the given tests; the output of the run is written to the given writer while the tests are
+   * running.
+   *
+   * @param aConfigFileName the absolute name of the configuration file; null for the default one of the daemon
+   * @param anExternalProperties the properties overwriting the ones of the configuration file
+   * @param aTestCases the test cases (with absolute files)
+   * @param aWriter the writer for the output
+   * @param aWholeLinesFlag true if the output should only contain whole lines
+   * @return an array with the test counts (processed, error, failure, ignored)
+   * @throws IOException in case of problems communicating with the daemon
+   * @throws ResourceException if the daemon could not execute the tests or the token file of the daemon does not
+   *         exist
+   */
+  public long[] runTests(final String aConfigFileName, final Map<String, String> anExternalProperties,
+      final List<TestCase> aTestCases, final Writer aWriter, final boolean aWholeLinesFlag) throws IOException {
+    final Map<String, String> tmpProperties = new LinkedHashMap<>();
+    if (null != anExternalProperties) {
+      for (final Entry<String, String> tmpEntry : anExternalProperties.entrySet()) {
+        if (null != tmpEntry.getKey() && null != tmpEntry.getValue()) {
+          tmpProperties.put(tmpEntry.getKey(), tmpEntry.getValue());
+        }
+      }
+    }
+
+    final String tmpToken = readToken();
+    try (Socket tmpSocket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(tmpSocket.getOutputStream()));
+      tmpOut.writeInt(WetatorDaemon.PROTOCOL_VERSION);
+      tmpOut.writeUTF(tmpToken);
+      tmpOut.writeByte(WetatorDaemon.REQUEST_RUN);
+      tmpOut.writeUTF(null == aConfigFileName ? "" : aConfigFileName);
+      tmpOut.writeInt(tmpProperties.size());
+      for (final Entry<String, String> tmpEntry : tmpProperties.entrySet()) {
+        tmpOut.writeUTF(tmpEntry.getKey());
+        tmpOut.writeUTF(tmpEntry.getValue());
+      }
+      tmpOut.writeInt(aTestCases.size());
+      for (final TestCase tmpTestCase : aTestCases) {
+        tmpOut.writeUTF(tmpTestCase.getName());
+        tmpOut.writeUTF(tmpTestCase.getFile().getAbsolutePath());
+      }
+      tmpOut.writeBoolean(aWholeLinesFlag);
+      tmpOut.flush();
+
+      final DataInputStream tmpIn = new DataInputStream(new BufferedInputStream(tmpSocket.getInputStream()));
+      while (true) {
+        final byte tmpRecord = tmpIn.readByte();
+        if (WetatorDaemon.RECORD_OUTPUT == tmpRecord) {
+          aWriter.write(tmpIn.readUTF());
+          aWriter.flush();
+        } else if (WetatorDaemon.RECORD_RESULT == tmpRecord) {
+          return new long[] { tmpIn.readLong(), tmpIn.readLong(), tmpIn.readLong(), tmpIn.readLong() };
+        } else if (WetatorDaemon.RECORD_ERROR == tmpRecord) {
+          throw new ResourceException("The Wetator daemon failed to execute the tests: " + tmpIn.readUTF());
+        } else {
+          throw new IOException("Unknown record " + tmpRecord + " received from the Wetator daemon.");
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the daemon after the current run.
+   *
+   * @throws IOException in case of problems communicating with the daemon
+   * @throws ResourceException if the token file of the daemon does not exist
+   */
+  public void stopDaemon() throws IOException {
+    final String tmpToken = readToken();
+    try (Socket tmpSocket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      final DataOutputStream tmpOut = new DataOutputStream(tmpSocket.getOutputStream());
+      tmpOut.writeInt(WetatorDaemon.PROTOCOL_VERSION);
+      tmpOut.writeUTF(tmpToken);
+      tmpOut.writeByte(WetatorDaemon.REQUEST_STOP);
+      tmpOut.flush();
+    }
+  }
+
+  /**
+   * @return the token written by the daemon
+   * @throws IOException in case the token file could not be read
+   * @throws ResourceException if the token file does not exist
+   */
+  private String readToken() throws IOException {
+    final File tmpTokenFile = WetatorDaemon.getTokenFile(tokenDir, port);
+    if (!tmpTokenFile.isFile()) {
+      throw new ResourceException("The token file '" + tmpTokenFile.getAbsolutePath()
+          + "' does not exist; is the Wetator daemon running on port " + port + "?");
+    }
+    return new String(Files.readAllBytes(tmpTokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+  }
+}
@@ -40,6 +40,7 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.wetator.core.Command;
 import org.wetator.core.IProgressListener;
 import org.wetator.core.Parameter;
+import org.wetator.core.SynchronousProgressListener;
 import org.wetator.core.TestCase;
 import org.wetator.core.WetatorConfiguration;
 import org.wetator.core.WetatorContext;
@@ -63,6 +64,7 @@ import org.wetator.util.Output;
  * @author rbri
  * @author frank.danek
  */
+@SynchronousProgressListener
 public class Log4jProgressListener extends AbstractAppender implements IProgressListener {
 
   private static final Logger LOG = LogManager.getLogger(Log4jProgressListener.class);
@@ -41,6 +41,7 @@ import org.wetator.core.ICommandSet;
 import org.wetator.core.IProgressListener;
 import org.wetator.core.IScripter;
 import org.wetator.core.Parameter;
+import org.wetator.core.ProgressEventTime;
 import org.wetator.core.TestCase;
 import org.wetator.core.Variable;
 import org.wetator.core.WetatorConfiguration;
@@ -103,12 +104,14 @@ public class XMLResultWriter implements IProgressListener {
   private static final String TAG_CONTROL = "control";
   private static final String TAG_MIME_TYPE = "mimetype";
   private static final String TAG_IGNORED = "ignored";
+  private static final String TAG_SNAPSHOT_INDEX = "snapshotIndex";
 
   private Output output;
   private XMLUtil xmlUtil;
   private File resultFile;
   private File outputDir;
   private List<String> xslTemplates;
+  private boolean completed; // the result file is written completely
 
   private long tagId;
   private long executionStartTime;
@@ -318,12 +321,19 @@ public class XMLResultWriter implements IProgressListener {
       printConfigurationProperty(WetatorConfiguration.PROPERTY_JS_DEBUGGER,
           Boolean.toString(tmpConfiguration.startJsDebugger()));
 
+      if (tmpConfiguration.getSnapshotArchiveSize() > 0) {
+        printConfigurationProperty(WetatorConfiguration.PROPERTY_SNAPSHOT_ARCHIVE_SIZE,
+            tmpConfiguration.getSnapshotArchiveSize() + "MB");
+        // the report resolves the pages using this index
+        printlnNode(TAG_SNAPSHOT_INDEX, WetatorConfiguration.SNAPSHOT_ARCHIVE_INDEX_FILE_NAME);
+      }
+
       for (final java.util.Map.Entry<String, String> tmpEntry : tmpConfiguration.getMimeTypes().entrySet()) {
         printStartTagOpener(TAG_MIME_TYPE);
         output.print(" extension=\"");
-        output.print(xmlUtil.normalizeAttributeValue(tmpEntry.getKey()));
+        xmlUtil.appendAttributeValue(output, tmpEntry.getKey());
         output.print("\" type=\"");
-        output.print(xmlUtil.normalizeAttributeValue(tmpEntry.getValue()));
+        xmlUtil.appendAttributeValue(output, tmpEntry.getValue());
         output.println("\"/>");
       }
 
@@ -333,7 +343,7 @@ public class XMLResultWriter implements IProgressListener {
       for (final Variable tmpVariable : tmpVariables) {
         printStartTagOpener(TAG_VARIABLE);
         output.print(" name=\"");
-        output.print(xmlUtil.normalizeAttributeValue(tmpVariable.getName()));
+        xmlUtil.appendAttributeValue(output, tmpVariable.getName());
         output.print("\" value=\"");
 
         String tmpValue = tmpVariable.getValue().toString();
@@ -341,7 +351,7 @@ public class XMLResultWriter implements IProgressListener {
         tmpValue = tmpValue.replace("\r", "\\r");
         tmpValue = tmpValue.replace("\t", "\\t");
 
-        output.print(xmlUtil.normalizeAttributeValue(tmpValue));
+        xmlUtil.appendAttributeValue(output, tmpValue);
         output.println("\"/>");
       }
 
@@ -351,7 +361,7 @@ public class XMLResultWriter implements IProgressListener {
       for (final ICommandSet tmpCommandSet : tmpCommandSets) {
         printStartTagOpener(TAG_COMMAND_SET);
         output.print(" class=\"");
-        output.print(xmlUtil.normalizeAttributeValue(tmpCommandSet.getClass().toString()));
+        xmlUtil.appendAttributeValue(output, tmpCommandSet.getClass().toString());
         output.println("\">");
 
         output.indent();
@@ -366,7 +376,7 @@ public class XMLResultWriter implements IProgressListener {
       for (final Class<? extends IControl> tmpControl : tmpControls) {
         printStartTagOpener(TAG_CONTROL);
         output.print(" class=\"");
-        output.print(xmlUtil.normalizeAttributeValue(tmpControl.getClass().toString()));
+        xmlUtil.appendAttributeValue(output, tmpControl.getClass().toString());
         output.println("\"/>");
       }
 
@@ -377,7 +387,7 @@ public class XMLResultWriter implements IProgressListener {
         printlnNode(TAG_TEST_FILE, FilenameUtils.normalize(tmpTestCase.getFile().getAbsolutePath()));
       }
 
-      executionStartTime = System.currentTimeMillis();
+      executionStartTime = ProgressEventTime.currentTimeMillis();
     } catch (final IOException e) {
       LOG.error(e.getMessage(), e);
     }
@@ -388,9 +398,9 @@ public class XMLResultWriter implements IProgressListener {
     try {
       printStartTagOpener(TAG_TESTCASE);
       output.print(" name=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aTestCase.getName()));
+      xmlUtil.appendAttributeValue(output, aTestCase.getName());
       output.print("\" file=\"");
-      output.print(xmlUtil.normalizeAttributeValue(FilenameUtils.normalize(aTestCase.getFile().getAbsolutePath())));
+      xmlUtil.appendAttributeValue(output, FilenameUtils.normalize(aTestCase.getFile().getAbsolutePath()));
       output.println("\">");
       output.indent();
     } catch (final IOException e) {
@@ -403,7 +413,7 @@ public class XMLResultWriter implements IProgressListener {
     try {
       printStartTagOpener(TAG_TESTRUN);
       output.print(" browser=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aBrowserName));
+      xmlUtil.appendAttributeValue(output, aBrowserName);
       output.println("\">");
       output.indent();
     } catch (final IOException e) {
@@ -416,7 +426,7 @@ public class XMLResultWriter implements IProgressListener {
     try {
       printStartTagOpener(TAG_TESTFILE);
       output.print(" file=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aFileName));
+      xmlUtil.appendAttributeValue(output, aFileName);
       output.println("\">");
       output.indent();
     } catch (final IOException e) {
@@ -429,7 +439,7 @@ public class XMLResultWriter implements IProgressListener {
     try {
       printStartTagOpener(TAG_COMMAND);
       output.print(" name=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aCommand.getName()));
+      xmlUtil.appendAttributeValue(output, aCommand.getName());
       output.print("\" line=\"" + aCommand.getLineNo());
       if (aCommand.isComment()) {
         output.print("\" isComment=\"true");
@@ -440,7 +450,7 @@ public class XMLResultWriter implements IProgressListener {
       Parameter tmpParameter = aCommand.getFirstParameter();
       printStartTag(TAG_FIRST_PARAM);
       if (null != tmpParameter) {
-        output.print(xmlUtil.normalizeBodyValue(tmpParameter.getValue(aContext).toString()));
+        xmlUtil.appendBodyValue(output, tmpParameter.getValue(aContext).toString());
       }
       printEndTag(TAG_FIRST_PARAM);
       output.println();
@@ -448,7 +458,7 @@ public class XMLResultWriter implements IProgressListener {
       tmpParameter = aCommand.getSecondParameter();
       printStartTag(TAG_SECOND_PARAM);
       if (null != tmpParameter) {
-        output.print(xmlUtil.normalizeBodyValue(tmpParameter.getValue(aContext).toString()));
+        xmlUtil.appendBodyValue(output, tmpParameter.getValue(aContext).toString());
       }
       printEndTag(TAG_SECOND_PARAM);
       output.println();
@@ -456,12 +466,12 @@ public class XMLResultWriter implements IProgressListener {
       tmpParameter = aCommand.getThirdParameter();
       printStartTag(TAG_THIRD_PARAM);
       if (null != tmpParameter) {
-        output.print(xmlUtil.normalizeBodyValue(tmpParameter.getValue(aContext).toString()));
+        xmlUtil.appendBodyValue(output, tmpParameter.getValue(aContext).toString());
       }
       printEndTag(TAG_THIRD_PARAM);
       output.println();
 
-      commandExecutionStartTimes.push(System.currentTimeMillis());
+      commandExecutionStartTimes.push(ProgressEventTime.currentTimeMillis());
     } catch (final IOException e) {
       LOG.error(e.getMessage(), e);
     }
@@ -516,7 +526,8 @@ public class XMLResultWriter implements IProgressListener {
   @Override
   public void executeCommandEnd() {
     try {
-      printlnNode(TAG_EXECUTION_TIME, Long.toString(System.currentTimeMillis() - commandExecutionStartTimes.pop()));
+      final long tmpExecutionTime = ProgressEventTime.currentTimeMillis() - commandExecutionStartTimes.pop();
+      printlnNode(TAG_EXECUTION_TIME, Long.toString(tmpExecutionTime));
 
       printlnEndTag(TAG_COMMAND);
     } catch (final IOException e) {
@@ -566,7 +577,7 @@ public class XMLResultWriter implements IProgressListener {
   @Override
   public void end(final WetatorEngine aWetatorEngine) {
     try {
-      printlnNode(TAG_EXECUTION_TIME, Long.toString(System.currentTimeMillis() - executionStartTime));
+      printlnNode(TAG_EXECUTION_TIME, Long.toString(ProgressEventTime.currentTimeMillis() - executionStartTime));
 
       output.println("<!--");
       output.println(SearchPattern.getStatistics());
@@ -574,10 +585,12 @@ public class XMLResultWriter implements IProgressListener {
 
       printlnEndTag(TAG_WET);
       output.close();
+      completed = true;
 
       if (!xslTemplates.isEmpty()) {
         final XSLTransformer tmpXSLTransformer = new XSLTransformer(resultFile);
-        tmpXSLTransformer.transform(xslTemplates, outputDir);
+        final long tmpTime = tmpXSLTransformer.transform(xslTemplates, outputDir);
+        aWetatorEngine.informListenersInfo("reportGenerationTime", xslTemplates.size(), tmpTime);
       }
     } catch (final IOException e) {
       LOG.error(e.getMessage(), e);
@@ -642,6 +655,10 @@ public class XMLResultWriter implements IProgressListener {
 
   @Override
   public void info(final String aMessageKey, final Object... aParameters) {
+    if (completed) {
+      // e.g. the report generation time; the result file is closed already
+      return;
+    }
     try {
       final String tmpMessage = Messages.getMessage(aMessageKey, aParameters);
       if (LOG.isInfoEnabled()) {
@@ -722,10 +739,10 @@ public class XMLResultWriter implements IProgressListener {
   private void printConfigurationProperty(final String aKey, final String aValue) throws IOException {
     printStartTagOpener(TAG_PROPERTY);
     output.print(" key=\"");
-    output.print(xmlUtil.normalizeAttributeValue(aKey));
+    xmlUtil.appendAttributeValue(output, aKey);
     if (null != aValue) {
       output.print("\" value=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aValue));
+      xmlUtil.appendAttributeValue(output, aValue);
     }
     output.println("\" />");
   }
@@ -733,17 +750,17 @@ public class XMLResultWriter implements IProgressListener {
   private void printConfigurationProperty(final String aKey, final SecretString aValue) throws IOException {
     printStartTagOpener(TAG_PROPERTY);
     output.print(" key=\"");
-    output.print(xmlUtil.normalizeAttributeValue(aKey));
+    xmlUtil.appendAttributeValue(output, aKey);
     if (null != aValue) {
       output.print("\" value=\"");
-      output.print(xmlUtil.normalizeAttributeValue(aValue.toString()));
+      xmlUtil.appendAttributeValue(output, aValue.toString());
     }
     output.println("\" />");
   }
 
   private void printlnNode(final String aNodeName, final String aNodeValue) throws IOException {
     printStartTag(aNodeName);
-    output.print(xmlUtil.normalizeBodyValue(aNodeValue));
+    xmlUtil.appendBodyValue(output, aNodeValue);
     printEndTag(aNodeName);
     output.println();
   }
@@ -22,8 +22,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -45,6 +55,10 @@ public final class XSLTransformer {
   private static final Logger LOG = LogManager.getLogger(XSLTransformer.class);
 
   private static final String RESOURCES_DIRECTORY = "resources";
+
+  // the compiled templates by xsl file; shared by all runs in this vm
+  private static final Map<File, CompiledTemplates> TEMPLATES = new ConcurrentHashMap<>();
+
   private File xmlResultFile;
 
   /**
@@ -58,74 +72,147 @@ public final class XSLTransformer {
 
   /**
    * Transforms the result xml file to various output files. The stylesheets are
-   * read from the configured location.
+   * read from the configured location.<br>
+   * The templates are applied in parallel; every transformation reads the result xml file on its own.
    *
    * @param aListOfXslFileNames the names of the xsl files for transformation
    * @param anOutputDirectory the directory to write to
+   * @return the time the transformation took (in milliseconds)
    */
-  public void transform(final Iterable<String> aListOfXslFileNames, final File anOutputDirectory) {
-    for (final String tmpXslFileName : aListOfXslFileNames) {
-      final File tmpXslFile = new File(tmpXslFileName);
+  public long transform(final Iterable<String> aListOfXslFileNames, final File anOutputDirectory) {
+    final long tmpStartTime = System.currentTimeMillis();
 
-      // TODO determine file type (based on template name)
-      final File tmpResultFile = new File(anOutputDirectory, tmpXslFile.getName() + ".html");
+    final List<File> tmpXslFiles = new ArrayList<>();
+    for (final String tmpXslFileName : aListOfXslFileNames) {
+      tmpXslFiles.add(new File(tmpXslFileName));
+    }
 
+    if (tmpXslFiles.size() < 2) {
+      for (final File tmpXslFile : tmpXslFiles) {
+        transform(tmpXslFile, anOutputDirectory);
+      }
+    } else {
+      final AtomicInteger tmpThreadNo = new AtomicInteger();
+      final ExecutorService tmpExecutor = Executors.newFixedThreadPool(
+          Math.min(tmpXslFiles.size(), Runtime.getRuntime().availableProcessors()), aRunnable -> {
+            final Thread tmpThread = new Thread(aRunnable, "Wetator report " + tmpThreadNo.incrementAndGet());
+            tmpThread.setDaemon(true);
+            return tmpThread;
+          });
       try {
-        final StreamSource tmpXlsStreamSource = new StreamSource(tmpXslFile);
-
-        final TransformerFactory tmpTransformerFactory = TransformerFactory.newInstance();
-        tmpTransformerFactory.setErrorListener(new ErrorListener() {
-          @Override
-          public void warning(final TransformerException anException) throws TransformerException {
-            LOG.warn("Problem parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "' ("
-                + anException.getMessage() + ").");
-          }
-
-          @Override
-          public void fatalError(final TransformerException anException) throws TransformerException {
-            LOG.error("Parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "' failed ("
-                + anException.getMessage() + ").");
-          }
-
-          @Override
-          public void error(final TransformerException anException) throws TransformerException {
-            LOG.error("Problem parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath())
-                + "' failed (" + anException.getMessage() + ").");
-          }
-        });
-        final Transformer tmpTransformer = tmpTransformerFactory.newTransformer(tmpXlsStreamSource);
-        // if building the transformer fails, then
-        // we got null here (instead of an exception)
-        if (null == tmpTransformer) {
-          LOG.error("Problem parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath())
-              + "'. Aborting.");
-          return;
+        final List<Future<?>> tmpFutures = new ArrayList<>();
+        for (final File tmpXslFile : tmpXslFiles) {
+          tmpFutures.add(tmpExecutor.submit(() -> transform(tmpXslFile, anOutputDirectory)));
+        }
+        for (final Future<?> tmpFuture : tmpFutures) {
+          tmpFuture.get();
         }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.error("Report generation interrupted.", e);
+      } catch (final ExecutionException e) {
+        LOG.error("Report generation failed.", e.getCause());
+      } finally {
+        tmpExecutor.shutdown();
+      }
+    }
 
-        final StreamSource tmpXmlStreamSource = new StreamSource(xmlResultFile);
+    final long tmpTime = System.currentTimeMillis() - tmpStartTime;
+    LOG.info("Report generation took " + tmpTime + "ms (" + tmpXslFiles.size() + " template(s)).");
+    return tmpTime;
+  }
 
-        try (OutputStream tmpFileOutputStream = Files.newOutputStream(tmpResultFile.toPath());
-            BufferedOutputStream tmpBufferedOutputStream = new BufferedOutputStream(tmpFileOutputStream)) {
-          final StreamResult tmpStreamResult = new StreamResult(tmpBufferedOutputStream);
+  /**
+   * Transforms the result xml file using the given stylesheet.
+   *
+   * @param aXslFile the xsl file for the transformation
+   * @param anOutputDirectory the directory to write to
+   */
+  private void transform(final File aXslFile, final File anOutputDirectory) {
+    final long tmpStartTime = System.currentTimeMillis();
 
-          tmpTransformer.transform(tmpXmlStreamSource, tmpStreamResult);
-          copyImages(tmpXslFile.getParentFile(), anOutputDirectory);
+    // TODO determine file type (based on template name)
+    final File tmpResultFile = new File(anOutputDirectory, aXslFile.getName() + ".html");
 
-          LOG.info("Report written to " + FilenameUtils.normalize(tmpResultFile.getAbsolutePath()));
-        }
-      } catch (final TransformerConfigurationException e) {
-        LOG.error(
-            "Problem loading XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "'. Aborting.",
-            e);
-      } catch (final IOException e) {
-        LOG.error(
-            "Problem writing Report '" + FilenameUtils.normalize(tmpResultFile.getAbsolutePath()) + "'. Aborting.", e);
-      } catch (final Exception e) {
+    try {
+      final Templates tmpTemplates = getTemplates(aXslFile);
+      // if building the templates fails, then
+      // we got null here (instead of an exception)
+      if (null == tmpTemplates) {
         LOG.error(
-            "Problem applying XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "'. Aborting.",
-            e);
+            "Problem parsing XSL-Template '" + FilenameUtils.normalize(aXslFile.getAbsolutePath()) + "'. Aborting.");
+        return;
       }
+      final Transformer tmpTransformer = tmpTemplates.newTransformer();
+
+      final StreamSource tmpXmlStreamSource = new StreamSource(xmlResultFile);
+
+      try (OutputStream tmpFileOutputStream = Files.newOutputStream(tmpResultFile.toPath());
+          BufferedOutputStream tmpBufferedOutputStream = new BufferedOutputStream(tmpFileOutputStream)) {
+        final StreamResult tmpStreamResult = new StreamResult(tmpBufferedOutputStream);
+
+        tmpTransformer.transform(tmpXmlStreamSource, tmpStreamResult);
+        copyImages(aXslFile.getParentFile(), anOutputDirectory);
+
+        LOG.info("Report written to " + FilenameUtils.normalize(tmpResultFile.getAbsolutePath()) + " in "
+            + (System.currentTimeMillis() - tmpStartTime) + "ms");
+      }
+    } catch (final TransformerConfigurationException e) {
+      LOG.error(
+          "Problem loading XSL-Template '" + FilenameUtils.normalize(aXslFile.getAbsolutePath()) + "'. Aborting.", e);
+    } catch (final IOException e) {
+      LOG.error("Problem writing Report '" + FilenameUtils.normalize(tmpResultFile.getAbsolutePath()) + "'. Aborting.",
+          e);
+    } catch (final Exception e) {
+      LOG.error(
+          "Problem applying XSL-Template '" + FilenameUtils.normalize(aXslFile.getAbsolutePath()) + "'. Aborting.", e);
+    }
+  }
+
+  /**
+   * The compiled templates are cached as long as the xsl file is not changed; this helps if many runs are done in
+   * the same vm (e.g. by the daemon).
+   *
+   * @param aXslFile the xsl file
+   * @return the compiled templates; null if the compilation failed
+   * @throws TransformerConfigurationException in case of problems
+   */
+  private static Templates getTemplates(final File aXslFile) throws TransformerConfigurationException {
+    final File tmpXslFile = aXslFile.getAbsoluteFile();
+    final CompiledTemplates tmpCached = TEMPLATES.get(tmpXslFile);
+    if (null != tmpCached && tmpCached.isUpToDate()) {
+      return tmpCached.templates;
+    }
+
+    // the stylesheet may include others; the cache only checks the main file
+    final CompiledTemplates tmpCompiled = new CompiledTemplates(tmpXslFile);
+    final StreamSource tmpXlsStreamSource = new StreamSource(tmpXslFile);
+
+    final TransformerFactory tmpTransformerFactory = TransformerFactory.newInstance();
+    tmpTransformerFactory.setErrorListener(new ErrorListener() {
+      @Override
+      public void warning(final TransformerException anException) throws TransformerException {
+        LOG.warn("Problem parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "' ("
+            + anException.getMessage() + ").");
+      }
+
+      @Override
+      public void fatalError(final TransformerException anException) throws TransformerException {
+        LOG.error("Parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath()) + "' failed ("
+            + anException.getMessage() + ").");
+      }
+
+      @Override
+      public void error(final TransformerException anException) throws TransformerException {
+        LOG.error("Problem parsing XSL-Template '" + FilenameUtils.normalize(tmpXslFile.getAbsolutePath())
+            + "' failed (" + anException.getMessage() + ").");
+      }
+    });
+    tmpCompiled.templates = tmpTransformerFactory.newTemplates(tmpXlsStreamSource);
+    if (null != tmpCompiled.templates) {
+      TEMPLATES.put(tmpXslFile, tmpCompiled);
     }
+    return tmpCompiled.templates;
   }
 
   /**
@@ -133,13 +220,14 @@ public final class XSLTransformer {
    * It copies the folder "images" from the folder,
    * where the stylesheet is located to the folder where
    * the output is written to.
-   * If "images" already exists, nothing is copied.
+   * If "images" already exists, nothing is copied.<br>
+   * Synchronized because the templates are applied in parallel.
    *
    * @param aSourceDir the directory to copy from
    * @param aTargetDir the directory to copy to
    * @throws IOException in case of problems
    */
-  public void copyImages(final File aSourceDir, final File aTargetDir) throws IOException {
+  public synchronized void copyImages(final File aSourceDir, final File aTargetDir) throws IOException {
     final File tmpSourceDir = new File(aSourceDir, RESOURCES_DIRECTORY);
     final File tmpTargetDir = new File(aTargetDir, RESOURCES_DIRECTORY);
 
@@ -193,4 +281,32 @@ public final class XSLTransformer {
       }
     }
   }
+
+  /**
+   * Compiled templates together with the state of the xsl file.
+   */
+  private static final class CompiledTemplates {
+    private File xslFile;
+    private long lastModified;
+    private long length;
+    private Templates templates;
+
+    /**
+     * The constructor.
+     *
+     * @param anXslFile the xsl file
+     */
+    CompiledTemplates(final File anXslFile) {
+      xslFile = anXslFile;
+      lastModified = anXslFile.lastModified();
+      length = anXslFile.length();
+    }
+
+    /**
+     * @return true if the xsl file is not changed since the compilation
+     */
+    boolean isUpToDate() {
+      return lastModified == xslFile.lastModified() && length == xslFile.length();
+    }
+  }
 }
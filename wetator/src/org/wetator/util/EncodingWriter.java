@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A buffered {@link Writer} encoding the chars directly to a {@link WritableByteChannel}.<br>
+ * This replaces the usual stack of BufferedWriter, OutputStreamWriter and OutputStream (each with its own small
+ * buffer) by one large char buffer encoded in one go. Like the {@link java.io.OutputStreamWriter} malformed and
+ * unmappable chars are replaced.<br>
+ * This class is not thread safe.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public final class EncodingWriter extends Writer {
+
+  /** The default size of the char buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private WritableByteChannel channel;
+  private CharsetEncoder encoder;
+  private CharBuffer chars;
+  private ByteBuffer bytes;
+  private boolean closed;
+
+  /**
+   * The constructor.
+   *
+   * @param aChannel the channel to write to; closed together with this writer
+   * @param aCharset the charset to encode the chars with
+   */
+  public EncodingWriter(final WritableByteChannel aChannel, final Charset aCharset) {
+    this(aChannel, aCharset, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * The constructor.
+   *
+   * @param aChannel the channel to write to; closed together with this writer
+   * @param aCharset the charset to encode the chars with
+   * @param aBufferSize the size of the char buffer
+   */
+  public EncodingWriter(final WritableByteChannel aChannel, final Charset aCharset, final int aBufferSize) {
+    super();
+    channel = aChannel;
+    encoder = aCharset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    chars = CharBuffer.allocate(aBufferSize);
+    // a bigger output is written in chunks
+    bytes = ByteBuffer.allocate((int) (aBufferSize * encoder.averageBytesPerChar()) + 16);
+  }
+
+  @Override
+  public void write(final int aChar) throws IOException {
+    if (!chars.hasRemaining()) {
+      encode(false);
+    }
+    chars.put((char) aChar);
+  }
+
+  @Override
+  public void write(final char[] aBuffer, final int anOffset, final int aLength) throws IOException {
+    int tmpOffset = anOffset;
+    int tmpLength = aLength;
+    while (tmpLength > 0) {
+      if (!chars.hasRemaining()) {
+        encode(false);
+      }
+      final int tmpCount = Math.min(tmpLength, chars.remaining());
+      chars.put(aBuffer, tmpOffset, tmpCount);
+      tmpOffset += tmpCount;
+      tmpLength -= tmpCount;
+    }
+  }
+
+  @Override
+  public void write(final String aString, final int anOffset, final int aLength) throws IOException {
+    int tmpOffset = anOffset;
+    int tmpLength = aLength;
+    while (tmpLength > 0) {
+      if (!chars.hasRemaining()) {
+        encode(false);
+      }
+      // copy directly into the backing array; no temporary char array
+      final int tmpCount = Math.min(tmpLength, chars.remaining());
+      final int tmpPosition = chars.position();
+      aString.getChars(tmpOffset, tmpOffset + tmpCount, chars.array(), chars.arrayOffset() + tmpPosition);
+      chars.position(tmpPosition + tmpCount);
+      tmpOffset += tmpCount;
+      tmpLength -= tmpCount;
+    }
+  }
+
+  /**
+   * Encodes the buffered chars and writes them to the channel.
+   */
+  @Override
+  public void flush() throws IOException {
+    encode(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      encode(true);
+      writeBytes(encoder.flush(bytes));
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Encodes the buffered chars; a surrogate at the end is kept in the buffer until the next char is known.
+   *
+   * @param anEndOfInput true if there are no more chars
+   * @throws IOException in case of problems
+   */
+  private void encode(final boolean anEndOfInput) throws IOException {
+    chars.flip();
+    CoderResult tmpResult;
+    do {
+      tmpResult = encoder.encode(chars, bytes, anEndOfInput);
+      writeBytes(tmpResult);
+    } while (tmpResult.isOverflow());
+    chars.compact();
+  }
+
+  private void writeBytes(final CoderResult aResult) throws IOException {
+    if (aResult.isError()) {
+      // not possible with CodingErrorAction.REPLACE
+      aResult.throwException();
+    }
+
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+}
@@ -19,6 +19,8 @@ package org.wetator.util;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -28,24 +30,30 @@ import org.apache.commons.lang3.StringUtils;
  * @author rbri
  * @author frank.danek
  */
-public final class Output {
+public final class Output implements Appendable {
   private static final String NEW_LINE = System.getProperty("line.separator");
 
   private Writer writer;
-  private StringBuffer currentIndent;
+  private List<String> indents; // the indent strings by level; built once
+  private int level;
   private boolean afterNewLine;
   private final String indent; // NOPMD
 
   /**
    * Constructor.
    *
-   * @param aWriter the writer to write to
+   * @param aWriter the writer to write to; wrapped by a {@link BufferedWriter} if not buffered already
    * @param anIndent String to be used for indenting (e.g. "", " ", " ", "\t")
    */
   public Output(final Writer aWriter, final String anIndent) {
-    writer = new BufferedWriter(aWriter);
+    if (aWriter instanceof BufferedWriter || aWriter instanceof EncodingWriter) {
+      writer = aWriter;
+    } else {
+      writer = new BufferedWriter(aWriter);
+    }
     indent = anIndent;
-    currentIndent = new StringBuffer();
+    indents = new ArrayList<>();
+    indents.add("");
   }
 
   /**
@@ -78,6 +86,32 @@ public final class Output {
     return this;
   }
 
+  @Override
+  public Output append(final CharSequence aCharSequence) throws IOException {
+    writeIndentIfNeeded();
+    writer.append(aCharSequence);
+
+    return this;
+  }
+
+  @Override
+  public Output append(final CharSequence aCharSequence, final int aStart, final int anEnd) throws IOException {
+    writeIndentIfNeeded();
+    if (aCharSequence instanceof String) {
+      // the writer would create a substring
+      writer.write((String) aCharSequence, aStart, anEnd - aStart);
+    } else {
+      writer.append(aCharSequence, aStart, anEnd);
+    }
+
+    return this;
+  }
+
+  @Override
+  public Output append(final char aChar) throws IOException {
+    return print(aChar);
+  }
+
   /**
    * Write the string on a new line.
    *
@@ -159,7 +193,10 @@ public final class Output {
    * @return this (for convenience)
    */
   public Output indent() {
-    currentIndent.append(indent);
+    level++;
+    if (level == indents.size()) {
+      indents.add(indents.get(level - 1) + indent);
+    }
 
     return this;
   }
@@ -170,7 +207,7 @@ public final class Output {
    * @return this (for convenience)
    */
   public Output unindent() {
-    currentIndent.setLength(Math.max(0, currentIndent.length() - indent.length()));
+    level = Math.max(0, level - 1);
 
     return this;
   }
@@ -182,7 +219,7 @@ public final class Output {
    */
   private void writeIndentIfNeeded() throws IOException {
     if (afterNewLine) {
-      writer.write(currentIndent.toString());
+      writer.write(indents.get(level));
       afterNewLine = false;
     }
   }
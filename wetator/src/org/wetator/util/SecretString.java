@@ -16,11 +16,19 @@
 
 package org.wetator.util;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 import org.wetator.core.Variable;
@@ -170,6 +178,15 @@ public final class SecretString {
     return tmpResult;
   }
 
+  /**
+   * @return a new {@link SecretString} with the same value and the same secret parts
+   */
+  public SecretString copy() {
+    final SecretString tmpResult = new SecretString(value);
+    secrets.forEach(f -> tmpResult.secrets.add(new FindSpot(f)));
+    return tmpResult;
+  }
+
   /**
    * Returns <code>true</code> if the value starts with the given prefix or the given prefix is an empty string.
    *
@@ -333,79 +350,177 @@ public final class SecretString {
       return this;
     }
 
-    int tmpLoops = 0;
-    int tmpReplace = replace(aVariables, value.length());
-    while (tmpReplace > -1 && tmpLoops < 4444) {
-      tmpLoops++;
-      tmpReplace = replace(aVariables, tmpReplace);
+    // the first occurrence of a variable wins
+    final Map<String, Variable> tmpIndex = new HashMap<>();
+    for (final Variable tmpVariable : aVariables) {
+      tmpIndex.putIfAbsent(tmpVariable.getName(), tmpVariable);
     }
-    if (tmpLoops >= 4444) {
-      throw new IllegalArgumentException("Recursion during variable replacement (" + toString() + ").");
+    return replaceVariablesByLookup(tmpIndex::get);
+  }
+
+  /**
+   * Replaces all the variable placeholders in one pass. The placeholders may be nested
+   * (e.g. <code>${var${no}}</code>), the values of the variables are replaced, too. The secret parts of the values
+   * stay secret.
+   *
+   * @param aVariableLookup the function to look up a variable by name; returns <code>null</code> for unknown variables
+   * @return the {@link SecretString} (as the result of the replacement)
+   * @throws IllegalArgumentException in case of recursive variables
+   */
+  public SecretString replaceVariablesByLookup(final Function<String, Variable> aVariableLookup) {
+    if (value.contains(VAR_START_SEQ)) {
+      final SecretString tmpResult = new VariableExpander(aVariableLookup).expand(this);
+      value = tmpResult.value;
+      secrets = tmpResult.secrets;
     }
     Collections.sort(secrets, (aFindSpot1, aFindSpot2) -> aFindSpot1.getStartPos() - aFindSpot2.getStartPos());
 
     return this;
   }
 
-  private int replace(final List<Variable> aVariables, final int aFrom) {
-    final int tmpVarStartPos = value.lastIndexOf(VAR_START_SEQ, aFrom);
-    if (tmpVarStartPos < 0) {
-      return -1;
-    }
-
-    int tmpVarEndPos = value.indexOf(VAR_END_SEQ, tmpVarStartPos);
-    if (tmpVarEndPos < 0) {
-      return tmpVarStartPos - 1;
+  /**
+   * Replaces the variables of a {@link SecretString} building the new value and the new secrets in one pass.
+   * The value of every variable is expanded only once per replacement.
+   */
+  private static final class VariableExpander {
+    private Function<String, Variable> variableLookup;
+    private Map<String, SecretString> expandedValues;
+    private Set<String> variablesInProgress;
+
+    /**
+     * The constructor.
+     *
+     * @param aVariableLookup the function to look up a variable by name
+     */
+    VariableExpander(final Function<String, Variable> aVariableLookup) {
+      variableLookup = aVariableLookup;
+      expandedValues = new HashMap<>();
+      variablesInProgress = new HashSet<>();
     }
-    final String tmpVarName = value.substring(tmpVarStartPos + VAR_START_SEQ.length(), tmpVarEndPos);
 
-    tmpVarEndPos++;
-    for (final Variable tmpVariable : aVariables) {
-      if (tmpVarName.equals(tmpVariable.getName())) {
-        final SecretString tmpVarSecret = tmpVariable.getValue();
-        final String tmpVarSecretValue = tmpVarSecret.getValue();
-
-        // replace
-        value = value.substring(0, tmpVarStartPos) + tmpVarSecretValue + value.substring(tmpVarEndPos);
-
-        final int tmpOffset = tmpVarSecretValue.length() - (tmpVarEndPos - tmpVarStartPos);
-        // merge in the secrets
-        boolean tmpEnclosed = false;
-        for (final Iterator<FindSpot> tmpSecretsIterator = secrets.iterator(); tmpSecretsIterator.hasNext();) {
-          final FindSpot tmpSpot = tmpSecretsIterator.next();
-          if (tmpSpot.getStartPos() <= tmpVarStartPos && tmpVarEndPos <= tmpSpot.getEndPos()) {
-            // whole replace area was a secret
-            tmpSpot.setEndPos(tmpSpot.getEndPos() + tmpOffset);
-            tmpEnclosed = true;
-          } else if (tmpSpot.getStartPos() > tmpVarStartPos && tmpVarEndPos > tmpSpot.getEndPos()) {
-            // whole secret was inside replace area
-            tmpSecretsIterator.remove();
-          } else {
-            if (tmpVarStartPos < tmpSpot.getStartPos()) {
-              tmpSpot.setStartPos(tmpSpot.getStartPos() + tmpOffset);
-            }
-            if (tmpVarEndPos < tmpSpot.getEndPos()) {
-              tmpSpot.setEndPos(tmpSpot.getEndPos() + tmpOffset);
-            }
+    /**
+     * @param aTemplate the {@link SecretString} containing the placeholders; not changed
+     * @return a new {@link SecretString} with all known variables replaced
+     */
+    SecretString expand(final SecretString aTemplate) {
+      final String tmpTemplate = aTemplate.value;
+      final List<FindSpot> tmpTemplateSecrets = aTemplate.secrets;
+
+      final SecretString tmpResult = new SecretString();
+      final StringBuilder tmpValue = new StringBuilder(tmpTemplate.length() + 16);
+      // the secrets of the result belonging to the currently open secrets of the template
+      final Map<FindSpot, FindSpot> tmpOpenSecrets = new HashMap<>();
+      final Deque<Integer> tmpVarStarts = new ArrayDeque<>();
+
+      final int tmpLength = tmpTemplate.length();
+      for (int i = 0; i <= tmpLength; i++) {
+        for (final FindSpot tmpSpot : tmpTemplateSecrets) {
+          if (tmpSpot.getStartPos() == i) {
+            final FindSpot tmpNewSpot = new FindSpot(tmpValue.length(), tmpValue.length());
+            tmpResult.secrets.add(tmpNewSpot);
+            tmpOpenSecrets.put(tmpSpot, tmpNewSpot);
           }
+          if (tmpSpot.getEndPos() == i) {
+            tmpOpenSecrets.remove(tmpSpot);
+          }
+        }
+        if (i == tmpLength) {
+          break;
         }
-        if (!tmpEnclosed) {
-          for (final FindSpot tmpSpot : tmpVarSecret.secrets) {
-            final FindSpot tmpNewSpot = new FindSpot();
-            tmpNewSpot.setStartPos(tmpSpot.getStartPos() + tmpVarStartPos);
-            tmpNewSpot.setEndPos(tmpSpot.getEndPos() + tmpVarStartPos);
 
-            secrets.add(tmpNewSpot);
+        final char tmpChar = tmpTemplate.charAt(i);
+        tmpValue.append(tmpChar);
+        for (final FindSpot tmpSpot : tmpOpenSecrets.values()) {
+          tmpSpot.setEndPos(tmpValue.length());
+        }
+
+        if ('$' == tmpChar && tmpTemplate.startsWith(VAR_START_SEQ, i)) {
+          tmpVarStarts.push(tmpValue.length() - 1);
+        } else if ('}' == tmpChar && !tmpVarStarts.isEmpty()) {
+          replace(tmpValue, tmpVarStarts.pop(), tmpResult.secrets);
+          for (final FindSpot tmpSpot : tmpOpenSecrets.values()) {
+            tmpSpot.setEndPos(tmpValue.length());
           }
         }
+      }
+
+      tmpResult.value = tmpValue.toString();
+      return tmpResult;
+    }
 
-        // avoid recursion
-        if (!(VAR_START_SEQ + tmpVarName + VAR_END_SEQ).equals(tmpVarSecretValue)) {
-          return aFrom;
+    /**
+     * Replaces the placeholder at the end of the given value.
+     *
+     * @param aValue the value ending with the placeholder
+     * @param aVarStartPos the start of the placeholder
+     * @param aSecrets the secrets of the value
+     */
+    private void replace(final StringBuilder aValue, final int aVarStartPos, final List<FindSpot> aSecrets) {
+      final int tmpVarEndPos = aValue.length();
+      final String tmpVarName = aValue.substring(aVarStartPos + VAR_START_SEQ.length(),
+          tmpVarEndPos - VAR_END_SEQ.length());
+      if (tmpVarName.isEmpty()) {
+        return;
+      }
+      final Variable tmpVariable = variableLookup.apply(tmpVarName);
+      if (null == tmpVariable) {
+        return;
+      }
+
+      final SecretString tmpVarSecret = getExpandedValue(tmpVariable);
+      final int tmpOffset = tmpVarSecret.value.length() - (tmpVarEndPos - aVarStartPos);
+
+      // merge in the secrets
+      boolean tmpEnclosed = false;
+      for (final Iterator<FindSpot> tmpSecretsIterator = aSecrets.iterator(); tmpSecretsIterator.hasNext();) {
+        final FindSpot tmpSpot = tmpSecretsIterator.next();
+        if (tmpSpot.getStartPos() <= aVarStartPos && tmpVarEndPos <= tmpSpot.getEndPos()) {
+          // whole replace area was a secret
+          tmpSpot.setEndPos(tmpSpot.getEndPos() + tmpOffset);
+          tmpEnclosed = true;
+        } else if (tmpSpot.getStartPos() > aVarStartPos && tmpVarEndPos > tmpSpot.getEndPos()) {
+          // whole secret was inside replace area
+          tmpSecretsIterator.remove();
+        } else if (aVarStartPos < tmpSpot.getStartPos()) {
+          // the placeholder is always at the end, so only the start can be behind the replace area
+          tmpSpot.setStartPos(tmpSpot.getStartPos() + tmpOffset);
         }
       }
+
+      // replace
+      aValue.setLength(aVarStartPos);
+      aValue.append(tmpVarSecret.value);
+      if (!tmpEnclosed) {
+        for (final FindSpot tmpSpot : tmpVarSecret.secrets) {
+          aSecrets.add(new FindSpot(tmpSpot.getStartPos() + aVarStartPos, tmpSpot.getEndPos() + aVarStartPos));
+        }
+      }
+    }
+
+    /**
+     * @param aVariable the variable
+     * @return the value of the variable with all variables replaced; must not be changed
+     */
+    private SecretString getExpandedValue(final Variable aVariable) {
+      final String tmpName = aVariable.getName();
+      SecretString tmpResult = expandedValues.get(tmpName);
+      if (null != tmpResult) {
+        return tmpResult;
+      }
+
+      tmpResult = aVariable.getValue();
+      // a variable referencing itself is not replaced any further
+      if (tmpResult.value.contains(VAR_START_SEQ)
+          && !(VAR_START_SEQ + tmpName + VAR_END_SEQ).equals(tmpResult.value)) {
+        if (!variablesInProgress.add(tmpName)) {
+          throw new IllegalArgumentException("Recursion during variable replacement (" + tmpResult + ").");
+        }
+        tmpResult = expand(tmpResult);
+        variablesInProgress.remove(tmpName);
+      }
+      expandedValues.put(tmpName, tmpResult);
+      return tmpResult;
     }
-    return tmpVarStartPos - 1;
   }
 
   /**
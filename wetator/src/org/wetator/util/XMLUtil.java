@@ -16,8 +16,12 @@
 
 package org.wetator.util;
 
+import java.io.IOException;
+
 /**
- * XmlUtil contains some useful helpers for XML-File handling.
+ * XmlUtil contains some useful helpers for XML-File handling.<br>
+ * The escaping scans for the first char to be replaced; strings without such a char are used unchanged. All chars
+ * outside of ASCII are written as character references.
  *
  * @author rbri
  * @author frank.danek
@@ -29,95 +33,10 @@ public class XMLUtil {
    * Sample: <code>normalizeBodyValue("&lt;\\abc&gt;")</code> returns <code>"&amp;lt;\abc&amp;gt;"</code>
    *
    * @param aString the String to be normalized or null
-   * @return a new String
+   * @return a new String; the given one if nothing has to be escaped
    */
   public String normalizeBodyValue(final String aString) {
-    if (aString == null) {
-      return "";
-    }
-
-    char tmpChar;
-    final int tmpLength = aString.length();
-
-    final StringBuilder tmpResult = new StringBuilder();
-
-    // we have some kind of optimization here
-    // if there is no special character inside, then we
-    // are returning the original one
-    int i = 0;
-    while (i < tmpLength) {
-      tmpChar = aString.charAt(i);
-
-      if (tmpChar < 32 && tmpChar != 9 && tmpChar != 10 && tmpChar != 13) {
-        // ignore
-        tmpResult.append(aString.substring(0, i));
-        i++;
-        break;
-      } else if (tmpChar > 0xD7FF && tmpChar < 0xE000 || tmpChar > 0xFFFD) {
-        // ignore
-        tmpResult.append(aString.substring(0, i));
-        i++;
-        break;
-      } else if (tmpChar == '<') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&lt;");
-        i++;
-        break;
-      } else if (tmpChar == '>') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&gt;");
-        i++;
-        break;
-      } else if (tmpChar == '&') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&amp;");
-        i++;
-        break;
-      } else if (!canEncode(tmpChar)) {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&#");
-        tmpResult.append(Integer.toString(tmpChar));
-        tmpResult.append(';');
-        i++;
-        break;
-      }
-      i++;
-    }
-
-    while (i < tmpLength) {
-      tmpChar = aString.charAt(i);
-
-      if (tmpChar == 9 || tmpChar == 10 || tmpChar == 13
-          || tmpChar > 31 && (tmpChar <= 0xD7FF || tmpChar >= 0xE000 && tmpChar <= 0xFFFD)) {
-
-        switch (tmpChar) {
-          case '<':
-            tmpResult.append("&lt;");
-            break;
-          case '>':
-            tmpResult.append("&gt;");
-            break;
-          case '&':
-            tmpResult.append("&amp;");
-            break;
-
-          default:
-            if (canEncode(tmpChar)) {
-              tmpResult.append(tmpChar);
-            } else {
-              tmpResult.append("&#");
-              tmpResult.append(Integer.toString(tmpChar));
-              tmpResult.append(';');
-            }
-        }
-      }
-      i++;
-    }
-
-    if (tmpResult.length() < 1) {
-      return aString;
-    }
-    return tmpResult.toString();
+    return normalize(aString, false);
   }
 
   /**
@@ -127,113 +46,155 @@ public class XMLUtil {
    *
    * @param aString
    *        the String to be normalized or null
-   * @return a new String
+   * @return a new String; the given one if nothing has to be escaped
    */
   public String normalizeAttributeValue(final String aString) {
+    return normalize(aString, true);
+  }
+
+  /**
+   * Escapes the given string like {@link #normalizeBodyValue(String)} and appends the result directly to the given
+   * target.
+   *
+   * @param aTarget the target to append to
+   * @param aString the String to be normalized or null
+   * @throws IOException in case of problems
+   */
+  public void appendBodyValue(final Appendable aTarget, final String aString) throws IOException {
+    append(aTarget, aString, false);
+  }
+
+  /**
+   * Escapes the given string like {@link #normalizeAttributeValue(String)} and appends the result directly to the
+   * given target.
+   *
+   * @param aTarget the target to append to
+   * @param aString the String to be normalized or null
+   * @throws IOException in case of problems
+   */
+  public void appendAttributeValue(final Appendable aTarget, final String aString) throws IOException {
+    append(aTarget, aString, true);
+  }
+
+  private String normalize(final String aString, final boolean anAttributeFlag) {
     if (aString == null) {
       return "";
     }
 
-    char tmpChar;
-    final int tmpLength = aString.length();
+    final int tmpFirst = indexOfSpecialChar(aString, 0, anAttributeFlag);
+    if (tmpFirst < 0) {
+      return aString;
+    }
 
-    final StringBuilder tmpResult = new StringBuilder();
-
-    int i = 0;
-    for (; i < tmpLength; i++) {
-      tmpChar = aString.charAt(i);
-
-      if (tmpChar < 32 && tmpChar != 9 && tmpChar != 10 && tmpChar != 13) {
-        // ignore
-        tmpResult.append(aString.substring(0, i));
-        i++;
-        break;
-      } else if (tmpChar > 0xD7FF && tmpChar < 0xE000 || tmpChar > 0xFFFD) {
-        // ignore
-        tmpResult.append(aString.substring(0, i));
-        i++;
-        break;
-      } else if (tmpChar == '<') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&lt;");
-        i++;
-        break;
-      } else if (tmpChar == '>') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&gt;");
-        i++;
-        break;
-      } else if (tmpChar == '&') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&amp;");
-        i++;
-        break;
-      } else if (tmpChar == '\'') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&apos;");
-        i++;
-        break;
-      } else if (tmpChar == '"') {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&quot;");
-        i++;
-        break;
-      } else if (!canEncode(tmpChar)) {
-        tmpResult.append(aString.substring(0, i));
-        tmpResult.append("&#");
-        tmpResult.append(Integer.toString(tmpChar));
-        tmpResult.append(';');
-        i++;
-        break;
-      }
+    final StringBuilder tmpResult = new StringBuilder(aString.length() + 16);
+    try {
+      escape(tmpResult, aString, tmpFirst, anAttributeFlag);
+    } catch (final IOException e) {
+      // a StringBuilder does not throw
+      throw new IllegalStateException(e);
     }
+    return tmpResult.toString();
+  }
+
+  private void append(final Appendable aTarget, final String aString, final boolean anAttributeFlag)
+      throws IOException {
+    if (aString == null) {
+      return;
+    }
+
+    final int tmpFirst = indexOfSpecialChar(aString, 0, anAttributeFlag);
+    if (tmpFirst < 0) {
+      aTarget.append(aString);
+    } else {
+      escape(aTarget, aString, tmpFirst, anAttributeFlag);
+    }
+  }
+
+  /**
+   * Appends the given string escaped; the runs of plain chars are appended in one go.
+   *
+   * @param aTarget the target to append to
+   * @param aString the string
+   * @param aFirst the index of the first special char
+   * @param anAttributeFlag true if the quotes have to be escaped
+   * @throws IOException in case of problems
+   */
+  private void escape(final Appendable aTarget, final String aString, final int aFirst,
+      final boolean anAttributeFlag) throws IOException {
+    int tmpStart = 0;
+    int tmpIndex = aFirst;
+    while (tmpIndex >= 0) {
+      if (tmpIndex > tmpStart) {
+        aTarget.append(aString, tmpStart, tmpIndex);
+      }
 
-    for (; i < tmpLength; i++) {
-      tmpChar = aString.charAt(i);
-
-      if (tmpChar == 9 || tmpChar == 10 || tmpChar == 13
-          || tmpChar > 31 && (tmpChar <= 0xD7FF || tmpChar >= 0xE000 && tmpChar <= 0xFFFD)) {
-
-        switch (tmpChar) {
-          case '<':
-            tmpResult.append("&lt;");
-            break;
-          case '>':
-            tmpResult.append("&gt;");
-            break;
-          case '&':
-            tmpResult.append("&amp;");
-            break;
-          case '\'':
-            tmpResult.append("&apos;");
-            break;
-          case '"':
-            tmpResult.append("&quot;");
-            break;
-
-          default:
-            if (canEncode(tmpChar)) {
-              tmpResult.append(tmpChar);
-            } else {
-              tmpResult.append("&#");
-              tmpResult.append(Integer.toString(tmpChar));
-              tmpResult.append(';');
-            }
-        }
+      final char tmpChar = aString.charAt(tmpIndex);
+      switch (tmpChar) {
+        case '<':
+          aTarget.append("&lt;");
+          break;
+        case '>':
+          aTarget.append("&gt;");
+          break;
+        case '&':
+          aTarget.append("&amp;");
+          break;
+        case '\'':
+          aTarget.append("&apos;");
+          break;
+        case '"':
+          aTarget.append("&quot;");
+          break;
+
+        default:
+          // the control chars, the surrogates and 0xFFFE/0xFFFF are not allowed in xml; ignore
+          if (tmpChar > 127 && (tmpChar <= 0xD7FF || tmpChar >= 0xE000 && tmpChar <= 0xFFFD)) {
+            appendCharReference(aTarget, tmpChar);
+          }
       }
+
+      tmpStart = tmpIndex + 1;
+      tmpIndex = indexOfSpecialChar(aString, tmpStart, anAttributeFlag);
     }
 
-    if (tmpResult.length() < 1) {
-      return aString;
+    if (aString.length() > tmpStart) {
+      aTarget.append(aString, tmpStart, aString.length());
     }
-    return tmpResult.toString();
+  }
 
+  /**
+   * @param aString the string
+   * @param aStart the index to start at
+   * @param anAttributeFlag true if the quotes are special, too
+   * @return the index of the next char to be escaped or ignored; -1 if there is none
+   */
+  private static int indexOfSpecialChar(final String aString, final int aStart, final boolean anAttributeFlag) {
+    final int tmpLength = aString.length();
+    for (int i = aStart; i < tmpLength; i++) {
+      final char tmpChar = aString.charAt(i);
+      if (tmpChar > 127 || tmpChar < 32 && tmpChar != 9 && tmpChar != 10 && tmpChar != 13 || tmpChar == '<'
+          || tmpChar == '>' || tmpChar == '&' || anAttributeFlag && (tmpChar == '"' || tmpChar == '\'')) {
+        return i;
+      }
+    }
+    return -1;
   }
 
-  private boolean canEncode(final char aChar) {
-    // return charsetEncoder.canEncode(aChar);
-    // we have some problems with this, so lets stay
-    // at the save side
-    return aChar < 128;
+  /**
+   * Appends the decimal character reference without creating a string.
+   */
+  private static void appendCharReference(final Appendable aTarget, final char aChar) throws IOException {
+    aTarget.append("&#");
+    int tmpDivisor = 10000;
+    while (tmpDivisor > aChar) {
+      tmpDivisor /= 10;
+    }
+    int tmpValue = aChar;
+    while (tmpDivisor > 0) {
+      aTarget.append((char) ('0' + tmpValue / tmpDivisor));
+      tmpValue %= tmpDivisor;
+      tmpDivisor /= 10;
+    }
+    aTarget.append(';');
   }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentMatchers;
+import org.wetator.backend.IBrowser.BrowserType;
+import org.wetator.backend.htmlunit.control.HtmlUnitInputText;
+import org.wetator.core.WetatorConfiguration;
+import org.wetator.core.WetatorContext;
+import org.wetator.core.WetatorEngine;
+import org.wetator.util.SecretString;
+
+import com.gargoylesoftware.htmlunit.html.HtmlTextInput;
+
+/**
+ * Tests for the handling of the JavaScript jobs by the {@link HtmlUnitBrowser}.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public class HtmlUnitBrowserJobsTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private WetatorConfiguration configuration;
+  private WetatorEngine engine;
+  private HtmlUnitBrowser browser;
+
+  @Before
+  public void setupMocks() throws Exception {
+    configuration = mock(WetatorConfiguration.class);
+    when(configuration.getOutputDir()).thenReturn(tmpFolder.newFolder());
+    when(configuration.getJsTimeoutInSeconds()).thenReturn(1);
+    when(configuration.getHttpTimeoutInSeconds()).thenReturn(10);
+    when(configuration.getBrowserTypes()).thenReturn(Arrays.asList(BrowserType.FIREFOX_78));
+  }
+
+  @After
+  public void closeBrowser() {
+    if (null != browser) {
+      browser.endSession();
+      browser.close();
+    }
+  }
+
+  @Test
+  public void waitForJobsScheduledAfter_OldJobsIgnored() throws Exception {
+    // @formatter:off
+    open("<html><body><script>"
+        + "setInterval(function() { }, 20);"
+        + "</script></body></html>");
+    // @formatter:on
+
+    final int tmpJobId = browser.getNewestJobId();
+    Assert.assertTrue(tmpJobId >= 0);
+
+    // the polling is always pending but not scheduled after the id
+    final long tmpStart = System.currentTimeMillis();
+    Assert.assertFalse(browser.waitForJobsScheduledAfter(tmpJobId, 2000));
+    Assert.assertTrue(System.currentTimeMillis() - tmpStart < 1000);
+  }
+
+  @Test
+  public void waitForJobsScheduledAfter_NewJob() throws Exception {
+    // @formatter:off
+    open("<html><body><script>"
+        + "var log = '';"
+        + "setInterval(function() { }, 20);"
+        + "</script></body></html>");
+    // @formatter:on
+
+    final int tmpJobId = browser.getNewestJobId();
+    execute("setTimeout(function() { log += 'done'; }, 100);");
+
+    Assert.assertFalse(browser.waitForJobsScheduledAfter(tmpJobId, 2000));
+    Assert.assertEquals("done", execute("log"));
+  }
+
+  @Test
+  public void waitForJobsScheduledAfter_Timeout() throws Exception {
+    open("<html><body><script>var log = '';</script></body></html>");
+
+    final int tmpJobId = browser.getNewestJobId();
+    execute("setTimeout(function() { log += 'done'; }, 5000);");
+
+    // still pending
+    Assert.assertTrue(browser.waitForJobsScheduledAfter(tmpJobId, 200));
+    Assert.assertEquals("", execute("log"));
+  }
+
+  @Test
+  public void virtualTime_LetTimePass() throws Exception {
+    when(configuration.isJsVirtualTimeEnabled()).thenReturn(true);
+    // @formatter:off
+    open("<html><body><script>"
+        + "var log = '';"
+        + "setTimeout(function() { log += 'done'; }, 5000);"
+        + "</script></body></html>");
+    // @formatter:on
+
+    final long tmpStart = System.currentTimeMillis();
+    browser.letTimePass(10000);
+    Assert.assertTrue(System.currentTimeMillis() - tmpStart < 2000);
+    Assert.assertEquals("done", execute("log"));
+  }
+
+  @Test
+  public void virtualTime_WaitForImmediateJobs() throws Exception {
+    when(configuration.isJsVirtualTimeEnabled()).thenReturn(true);
+    open("<html><body><script>var log = '';</script></body></html>");
+
+    execute("setTimeout(function() { log += 'a'; setTimeout(function() { log += 'b'; }, 400); }, 400);");
+    final long tmpStart = System.currentTimeMillis();
+    Assert.assertFalse(browser.waitForImmediateJobs(1000));
+    Assert.assertTrue(System.currentTimeMillis() - tmpStart < 500);
+    Assert.assertEquals("ab", execute("log"));
+
+    // the virtual time is limited by the timeout
+    execute("setTimeout(function() { log += 'c'; }, 5000);");
+    Assert.assertTrue(browser.waitForImmediateJobs(1000));
+    Assert.assertEquals("ab", execute("log"));
+  }
+
+  @Test
+  public void virtualTime_DateNotMoved() throws Exception {
+    when(configuration.isJsVirtualTimeEnabled()).thenReturn(true);
+    // @formatter:off
+    open("<html><body><script>"
+        + "var start = Date.now();"
+        + "var elapsed = -1;"
+        + "setTimeout(function() { elapsed = Date.now() - start; }, 5000);"
+        + "</script></body></html>");
+    // @formatter:on
+
+    browser.letTimePass(10000);
+
+    // only the jobs are moved; the javascript clock shows the real time
+    final long tmpElapsed = ((Number) execute("elapsed")).longValue();
+    Assert.assertTrue("Elapsed " + tmpElapsed + "ms", tmpElapsed >= 0 && tmpElapsed < 5000);
+  }
+
+  @Test
+  public void animationFrames_Limit() throws Exception {
+    // @formatter:off
+    open("<html><body><p id='out'></p><script>"
+        + "var count = 0;"
+        + "function frame() {"
+        + "  count++;"
+        + "  document.getElementById('out').textContent = 'frame ' + count;"
+        + "  requestAnimationFrame(frame);"
+        + "}"
+        + "requestAnimationFrame(frame);"
+        + "</script></body></html>");
+    // @formatter:on
+    execute("count = 0;");
+    clearInvocations(engine);
+
+    // every frame changes the dom; stopped by the frame limit
+    browser.waitForImmediateJobs(1000);
+    Assert.assertEquals(100, ((Number) execute("count")).intValue());
+    verify(engine).informListenersWarn(eq("stillAnimationFramesPending"), any(Object[].class),
+        ArgumentMatchers.<String> isNull());
+  }
+
+  @Test
+  public void animationFrames_Idle() throws Exception {
+    // @formatter:off
+    open("<html><body><p id='out'></p><script>"
+        + "var count = 0;"
+        + "function frame() {"
+        + "  count++;"
+        + "  requestAnimationFrame(frame);"
+        + "}"
+        + "requestAnimationFrame(frame);"
+        + "</script></body></html>");
+    // @formatter:on
+    execute("count = 0;");
+    clearInvocations(engine);
+
+    // the frames are not changing the dom; stopped after the first frame and three idle ones
+    browser.waitForImmediateJobs(1000);
+    Assert.assertEquals(4, ((Number) execute("count")).intValue());
+    verify(engine, never()).informListenersWarn(eq("stillAnimationFramesPending"), any(Object[].class),
+        ArgumentMatchers.<String> isNull());
+
+    // a change of the dom resets the idle frames
+    execute("count = 0; var changes = 2;"
+        + "frame = function() {"
+        + "  count++;"
+        + "  if (changes-- > 0) { document.getElementById('out').textContent = 'frame ' + count; }"
+        + "  requestAnimationFrame(frame);"
+        + "};");
+    browser.waitForImmediateJobs(1000);
+    Assert.assertEquals(6, ((Number) execute("count")).intValue());
+  }
+
+  @Test
+  public void typingBursts() throws Exception {
+    when(configuration.isTypingBurstsEnabled()).thenReturn(true);
+
+    // every keystroke has to be finished before the next one; the polling is ignored
+    final long tmpTime = type("abcde");
+    Assert.assertEquals("ktktktktkt", execute("log"));
+    Assert.assertTrue("Typing took " + tmpTime + "ms", tmpTime < 800);
+  }
+
+  @Test
+  public void typingBurstsDisabled() throws Exception {
+    when(configuration.isTypingBurstsEnabled()).thenReturn(false);
+
+    // the typing waits for the polling after every keystroke
+    final long tmpTime = type("abcde");
+    Assert.assertEquals("ktktktktkt", execute("log"));
+    Assert.assertTrue("Typing took " + tmpTime + "ms", tmpTime >= 800);
+  }
+
+  private long type(final String aText) throws Exception {
+    // 200ms per keystroke; the last keystroke stops the polling to keep the final wait for silence short
+    when(configuration.getTypingSpeedInKeystrokesPerMinute()).thenReturn(300);
+    // @formatter:off
+    open("<html><body>"
+        + "<input type='text' id='myId' onkeydown=\"keydown();\">"
+        + "<script>"
+        + "var log = '';"
+        + "var polling = setInterval(function() { }, 20);"
+        + "function keydown() {"
+        + "  log += 'k';"
+        + "  setTimeout(function() { log += 't'; }, 10);"
+        + "  if (log.length >= 9) { clearInterval(polling); }"
+        + "}"
+        + "</script></body></html>");
+    // @formatter:on
+
+    final WetatorContext tmpContext = mock(WetatorContext.class);
+    when(tmpContext.getBrowser()).thenReturn(browser);
+    when(tmpContext.getConfiguration()).thenReturn(configuration);
+    final HtmlUnitInputText tmpControl = new HtmlUnitInputText(
+        (HtmlTextInput) browser.getCurrentHtmlPage().getHtmlElementById("myId"));
+
+    final long tmpStart = System.currentTimeMillis();
+    tmpControl.setValue(tmpContext, new SecretString(aText), null);
+    final long tmpTime = System.currentTimeMillis() - tmpStart;
+    browser.waitForImmediateJobs(100);
+    return tmpTime;
+  }
+
+  private Object execute(final String aScript) throws Exception {
+    return browser.getCurrentHtmlPage().executeJavaScript(aScript).getJavaScriptResult();
+  }
+
+  private void open(final String aHtml) throws Exception {
+    engine = mock(WetatorEngine.class);
+    when(engine.getConfiguration()).thenReturn(configuration);
+    browser = new HtmlUnitBrowser(engine);
+    browser.startNewSession(BrowserType.FIREFOX_78);
+
+    final File tmpFile = tmpFolder.newFile("test.html");
+    Files.write(tmpFile.toPath(), aHtml.getBytes(StandardCharsets.UTF_8));
+    browser.openUrl(tmpFile.toURI().toURL());
+  }
+}
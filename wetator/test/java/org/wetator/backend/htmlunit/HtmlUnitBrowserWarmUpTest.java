@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wetator.backend.IBrowser.BrowserType;
+import org.wetator.core.WetatorConfiguration;
+import org.wetator.core.WetatorEngine;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class HtmlUnitBrowserWarmUpTest {
+
+  private static final String WARM_UP_THREAD = "Wetator WebClient warm up";
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private WetatorConfiguration configuration;
+  private HtmlUnitBrowser browser;
+
+  // the threads creating the WebClients
+  private List<String> creatorThreads;
+  private boolean failInBackground;
+
+  @Before
+  public void setupMocks() throws Exception {
+    configuration = mock(WetatorConfiguration.class);
+    when(configuration.getOutputDir()).thenReturn(tmpFolder.newFolder());
+    when(configuration.getJsTimeoutInSeconds()).thenReturn(1);
+    when(configuration.getHttpTimeoutInSeconds()).thenReturn(10);
+    when(configuration.getBrowserTypes()).thenReturn(Arrays.asList(BrowserType.FIREFOX_78, BrowserType.CHROME));
+    when(configuration.isWarmUpWebClientsEnabled()).thenReturn(true);
+
+    // the proxy host is asked once per WebClient created
+    creatorThreads = Collections.synchronizedList(new ArrayList<>());
+    when(configuration.getProxyHost()).thenAnswer(anInvocation -> {
+      final String tmpThreadName = Thread.currentThread().getName();
+      creatorThreads.add(tmpThreadName);
+      if (failInBackground && WARM_UP_THREAD.equals(tmpThreadName)) {
+        throw new IllegalStateException("failed");
+      }
+      return null;
+    });
+
+    final WetatorEngine tmpEngine = mock(WetatorEngine.class);
+    when(tmpEngine.getConfiguration()).thenReturn(configuration);
+    browser = new HtmlUnitBrowser(tmpEngine);
+  }
+
+  @After
+  public void closeBrowser() {
+    browser.endSession();
+    browser.close();
+  }
+
+  @Test
+  public void nextBrowserTypePrepared() throws Exception {
+    browser.startNewSession(BrowserType.FIREFOX_78);
+    Assert.assertEquals(BrowserVersion.FIREFOX_78, browser.getWebClient().getBrowserVersion());
+
+    // the next session uses the next configured browser type
+    final Future<WebClient> tmpWarmWebClient = browser.getWarmWebClient(BrowserType.CHROME);
+    Assert.assertNotNull(tmpWarmWebClient);
+    final WebClient tmpWebClient = tmpWarmWebClient.get();
+    Assert.assertEquals(BrowserVersion.CHROME, tmpWebClient.getBrowserVersion());
+    Assert.assertEquals(Arrays.asList(Thread.currentThread().getName(), WARM_UP_THREAD), creatorThreads);
+
+    browser.startNewSession(BrowserType.CHROME);
+    Assert.assertSame(tmpWebClient, browser.getWebClient());
+    Assert.assertNull(browser.getWarmWebClient(BrowserType.CHROME));
+
+    // and again the first one
+    Assert.assertEquals(BrowserVersion.FIREFOX_78,
+        browser.getWarmWebClient(BrowserType.FIREFOX_78).get().getBrowserVersion());
+    Assert.assertEquals(Arrays.asList(Thread.currentThread().getName(), WARM_UP_THREAD, WARM_UP_THREAD),
+        creatorThreads);
+  }
+
+  @Test
+  public void preparationFailed() throws Exception {
+    failInBackground = true;
+
+    browser.startNewSession(BrowserType.FIREFOX_78);
+    try {
+      browser.getWarmWebClient(BrowserType.CHROME).get();
+      Assert.fail("ExecutionException expected");
+    } catch (final ExecutionException e) {
+      Assert.assertEquals("failed", e.getCause().getMessage());
+    }
+
+    // the WebClient is created for the session itself
+    browser.startNewSession(BrowserType.CHROME);
+    Assert.assertEquals(BrowserVersion.CHROME, browser.getWebClient().getBrowserVersion());
+    Assert.assertEquals(Thread.currentThread().getName(), creatorThreads.get(2));
+  }
+
+  @Test
+  public void unusedClosed() throws Exception {
+    browser.startNewSession(BrowserType.FIREFOX_78);
+    final WebClient tmpWebClient = browser.getWarmWebClient(BrowserType.CHROME).get();
+
+    // closing a WebClient clears its cache
+    final WebRequest tmpRequest = new WebRequest(new URL("http://www.wetator.org/wetator.js"));
+    final List<NameValuePair> tmpHeaders = new ArrayList<>();
+    tmpHeaders.add(new NameValuePair("Content-Type", "text/javascript"));
+    tmpHeaders.add(new NameValuePair("Cache-Control", "max-age=3600"));
+    tmpHeaders.add(new NameValuePair("Last-Modified", "Tue, 01 Jan 2019 00:00:00 GMT"));
+    tmpHeaders.add(new NameValuePair("Expires", "Fri, 01 Jan 2100 00:00:00 GMT"));
+    final WebResponseData tmpData = new WebResponseData("var x = 'wetator';".getBytes(StandardCharsets.UTF_8), 200,
+        "OK", tmpHeaders);
+    Assert.assertTrue(
+        tmpWebClient.getCache().cacheIfPossible(tmpRequest, new WebResponse(tmpData, tmpRequest, 0), null));
+    Assert.assertEquals(1, tmpWebClient.getCache().getSize());
+
+    browser.endSession();
+    browser.close();
+    Assert.assertEquals(0, tmpWebClient.getCache().getSize());
+    Assert.assertNull(browser.getWarmWebClient(BrowserType.CHROME));
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class ResourceBlobStoreTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void sameContent() throws Exception {
+    final File tmpBlobDir = tmpFolder.newFolder();
+    final File tmpOutDir = tmpFolder.newFolder();
+    final byte[] tmpContent = "body { color: red; }".getBytes(StandardCharsets.UTF_8);
+
+    final ResourceBlobStore tmpStore = new ResourceBlobStore(tmpBlobDir);
+    final File tmpFile1 = new File(tmpOutDir, "run1/resource/wetator.css");
+    final File tmpFile2 = new File(tmpOutDir, "run2/resource/wetator_1.css");
+    tmpStore.store(tmpFile1, tmpContent);
+    tmpStore.store(tmpFile2, tmpContent);
+
+    Assert.assertArrayEquals(tmpContent, Files.readAllBytes(tmpFile1.toPath()));
+    Assert.assertArrayEquals(tmpContent, Files.readAllBytes(tmpFile2.toPath()));
+    Assert.assertEquals(2, tmpStore.getStoreCount());
+    Assert.assertEquals(1, tmpStore.getReuseCount());
+    Assert.assertEquals(tmpContent.length, tmpStore.getReusedBytes());
+
+    // only one blob
+    final File[] tmpSubDirs = tmpBlobDir.listFiles();
+    Assert.assertEquals(1, tmpSubDirs.length);
+    Assert.assertEquals(1, tmpSubDirs[0].list().length);
+  }
+
+  @Test
+  public void differentContent() throws Exception {
+    final File tmpBlobDir = tmpFolder.newFolder();
+    final File tmpOutDir = tmpFolder.newFolder();
+
+    final ResourceBlobStore tmpStore = new ResourceBlobStore(tmpBlobDir);
+    final File tmpFile = new File(tmpOutDir, "wetator.css");
+    tmpStore.store(tmpFile, "a".getBytes(StandardCharsets.UTF_8));
+    // overwrite; the first blob must not change
+    tmpStore.store(tmpFile, "b".getBytes(StandardCharsets.UTF_8));
+
+    Assert.assertEquals("b", new String(Files.readAllBytes(tmpFile.toPath()), StandardCharsets.UTF_8));
+    Assert.assertEquals(2, tmpStore.getStoreCount());
+    Assert.assertEquals(0, tmpStore.getReuseCount());
+
+    final File tmpOtherFile = new File(tmpOutDir, "other.css");
+    tmpStore.store(tmpOtherFile, "a".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("a", new String(Files.readAllBytes(tmpOtherFile.toPath()), StandardCharsets.UTF_8));
+    Assert.assertEquals(1, tmpStore.getReuseCount());
+  }
+}
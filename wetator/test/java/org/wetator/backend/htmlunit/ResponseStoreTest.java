@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.gargoylesoftware.htmlunit.HttpWebConnection;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.HtmlImage;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class ResponseStoreTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void pageRetention() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+    tmpStore.setPageRetention(2);
+
+    final String tmpFile1 = tmpStore.storeTextContent("one");
+    final String tmpFile2 = tmpStore.storeTextContent("two");
+    final String tmpFile3 = tmpStore.storeTextContent("three");
+    // the dropped page is already reported; only a note is written
+    Assert.assertTrue(read(new File(tmpDir, tmpFile1)).startsWith("The snapshot was not kept"));
+    Assert.assertFalse(new File(tmpDir, tmpFile2).exists());
+    Assert.assertFalse(new File(tmpDir, tmpFile3).exists());
+
+    // failure; the last two pages and all following are written
+    tmpStore.writeRetainedPages();
+    Assert.assertTrue(read(new File(tmpDir, tmpFile1)).startsWith("The snapshot was not kept"));
+    Assert.assertEquals("two", read(new File(tmpDir, tmpFile2)));
+    Assert.assertEquals("three", read(new File(tmpDir, tmpFile3)));
+
+    final String tmpFile4 = tmpStore.storeTextContent("four");
+    Assert.assertEquals("four", read(new File(tmpDir, tmpFile4)));
+
+    // next test run
+    tmpStore.discardRetainedPages();
+    final String tmpFile5 = tmpStore.storeTextContent("five");
+    Assert.assertFalse(new File(tmpDir, tmpFile5).exists());
+    tmpStore.discardRetainedPages();
+    tmpStore.writeRetainedPages();
+    Assert.assertTrue(read(new File(tmpDir, tmpFile5)).startsWith("The snapshot was not kept"));
+  }
+
+  @Test
+  public void noPageRetention() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+    tmpStore.setPageRetention(0);
+
+    final String tmpFile = tmpStore.storeTextContent("one");
+    Assert.assertEquals("one", read(new File(tmpDir, tmpFile)));
+  }
+
+  @Test
+  public void processCSS() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+
+    final MockWebConnection tmpConnection = new MockWebConnection();
+    tmpConnection.setResponse(new URL("http://www.wetator.org/index.html"), "<html><body></body></html>");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/a.png"), "png", "image/png");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/style/b.css"), "b {}", "text/css");
+
+    try (WebClient tmpWebClient = new WebClient()) {
+      tmpWebClient.setWebConnection(tmpConnection);
+      final Page tmpPage = tmpWebClient.getPage("http://www.wetator.org/index.html");
+      tmpStore.storePage(tmpWebClient, tmpPage);
+
+      final String tmpCss = tmpStore.processCSS(new URL("http://www.wetator.org/index.html"),
+          "a { background: url(img/a.png); }\n@import 'style/b.css';\n"
+              + "i { background: url( \"http://www.other.org/x.png\" ); }\nu { background: url('img/a.png') }",
+          0);
+      Assert.assertEquals("a { background: url(./img/a.png); }\n@import'./style/b.css';\n"
+          + "i { background: url( \"http://www.other.org/x.png\" ); }\nu { background: url('./img/a.png') }", tmpCss);
+    }
+  }
+
+  @Test
+  public void resourceReused() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+
+    final FetchConnection tmpConnection = new FetchConnection();
+    tmpConnection.setResponse(new URL("http://www.wetator.org/index.html"),
+        "<html><body><img src='img/a.png'></body></html>");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/a.png"), "png a", "image/png");
+
+    storePage(tmpStore, tmpConnection, true, true);
+
+    // the image downloaded by the browser is not requested again
+    Assert.assertEquals(1, tmpStore.getHarvestStatistics().getResourceCount());
+    Assert.assertEquals(1, tmpStore.getHarvestStatistics().getReusedCount());
+    Assert.assertEquals(1, tmpConnection.getRequests("http://www.wetator.org/img/a.png").size());
+    Assert.assertEquals("png a", readResource(tmpDir, "a.png"));
+  }
+
+  @Test
+  public void resourcesFetchedInParallel() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+
+    final FetchConnection tmpConnection = new FetchConnection();
+    tmpConnection.setResponse(new URL("http://www.wetator.org/index.html"),
+        "<html><body><img src='img/a.png'><img src='img/b.png'></body></html>");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/a.png"), "png a", "image/png");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/b.png"), "png b", "image/png");
+
+    storePage(tmpStore, tmpConnection, false, true);
+
+    Assert.assertEquals(2, tmpStore.getHarvestStatistics().getResourceCount());
+    Assert.assertEquals(0, tmpStore.getHarvestStatistics().getReusedCount());
+    // requested once by the fetcher with the referer and the cookies of the session
+    Assert.assertEquals(
+        "[fetcher | Referer=http://www.wetator.org/index.html | Cookie=session=4711]",
+        tmpConnection.getRequests("http://www.wetator.org/img/a.png").toString());
+    Assert.assertEquals(
+        "[fetcher | Referer=http://www.wetator.org/index.html | Cookie=session=4711]",
+        tmpConnection.getRequests("http://www.wetator.org/img/b.png").toString());
+    Assert.assertEquals("png a", readResource(tmpDir, "a.png"));
+    Assert.assertEquals("png b", readResource(tmpDir, "b.png"));
+  }
+
+  @Test
+  public void resourceFetchFailed() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+
+    final FetchConnection tmpConnection = new FetchConnection();
+    tmpConnection.setResponse(new URL("http://www.wetator.org/index.html"),
+        "<html><body><img src='img/a.png'></body></html>");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/a.png"), "png a", "image/png");
+    tmpConnection.failOnce("http://www.wetator.org/img/a.png");
+
+    storePage(tmpStore, tmpConnection, false, true);
+
+    // requested again one by one by the browser
+    final List<String> tmpRequests = tmpConnection.getRequests("http://www.wetator.org/img/a.png");
+    Assert.assertEquals(2, tmpRequests.size());
+    Assert.assertTrue(tmpRequests.get(0).startsWith("fetcher"));
+    Assert.assertTrue(tmpRequests.get(1).startsWith(Thread.currentThread().getName()));
+    Assert.assertEquals("png a", readResource(tmpDir, "a.png"));
+  }
+
+  @Test
+  public void resourcesFetchedOneByOne() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final ResponseStore tmpStore = new ResponseStore(tmpDir, "firefox", true);
+
+    final FetchConnection tmpConnection = new FetchConnection();
+    tmpConnection.setResponse(new URL("http://www.wetator.org/index.html"),
+        "<html><body><img src='img/a.png'><img src='img/b.png'></body></html>");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/a.png"), "png a", "image/png");
+    tmpConnection.setResponse(new URL("http://www.wetator.org/img/b.png"), "png b", "image/png");
+
+    // the connection of the session is no HttpWebConnection; it can not be copied for the fetcher
+    storePage(tmpStore, tmpConnection, false, false);
+
+    // requested one by one by the browser
+    Assert.assertEquals(2, tmpStore.getHarvestStatistics().getResourceCount());
+    Assert.assertEquals(
+        "[" + Thread.currentThread().getName() + " | Referer=http://www.wetator.org/index.html]",
+        tmpConnection.getRequests("http://www.wetator.org/img/a.png").toString());
+    Assert.assertEquals(
+        "[" + Thread.currentThread().getName() + " | Referer=http://www.wetator.org/index.html]",
+        tmpConnection.getRequests("http://www.wetator.org/img/b.png").toString());
+    Assert.assertEquals("png a", readResource(tmpDir, "a.png"));
+    Assert.assertEquals("png b", readResource(tmpDir, "b.png"));
+  }
+
+  private static void storePage(final ResponseStore aStore, final FetchConnection aConnection,
+      final boolean aLoadImagesFlag, final boolean anHttpConnectionFlag) throws Exception {
+    final ExecutorService tmpExecutor = Executors.newFixedThreadPool(2, aRunnable -> new Thread(aRunnable, "fetcher"));
+    try (WebClient tmpWebClient = new WebClient()) {
+      aStore.setResourceFetchExecutor(tmpExecutor);
+      if (anHttpConnectionFlag) {
+        tmpWebClient.setWebConnection(new SessionConnection(tmpWebClient, aConnection));
+        aStore.setFetchWebConnection(aConnection);
+      } else {
+        tmpWebClient.setWebConnection(aConnection);
+      }
+      tmpWebClient.getCookieManager().addCookie(new Cookie("www.wetator.org", "session", "4711"));
+
+      final HtmlPage tmpPage = tmpWebClient.getPage("http://www.wetator.org/index.html");
+      if (aLoadImagesFlag) {
+        for (final Object tmpImage : tmpPage.getElementsByTagName("img")) {
+          ((HtmlImage) tmpImage).getWebResponse(true);
+        }
+      }
+      aStore.storePage(tmpWebClient, tmpPage);
+      aStore.closeResourceFetcher();
+    } finally {
+      tmpExecutor.shutdownNow();
+    }
+  }
+
+  private static String readResource(final File aDir, final String aFileName) throws Exception {
+    try (Stream<Path> tmpFiles = Files.walk(aDir.toPath())) {
+      final Path tmpFile = tmpFiles.filter(aPath -> aPath.getFileName().toString().equals(aFileName)).findFirst()
+          .orElseThrow(() -> new AssertionError("File '" + aFileName + "' not written."));
+      return read(tmpFile.toFile());
+    }
+  }
+
+  /**
+   * A real connection of a session answering the requests by the given connection.
+   */
+  private static final class SessionConnection extends HttpWebConnection {
+    private WebConnection connection;
+
+    SessionConnection(final WebClient aWebClient, final WebConnection aConnection) {
+      super(aWebClient);
+      connection = aConnection;
+    }
+
+    @Override
+    public WebResponse getResponse(final WebRequest aRequest) throws IOException {
+      return connection.getResponse(aRequest);
+    }
+  }
+
+  /**
+   * Records the thread and the headers of the requests; may fail once for a url.
+   */
+  private static final class FetchConnection extends MockWebConnection {
+    private Map<String, List<String>> requests = new HashMap<>();
+    private Set<String> failingUrls = new HashSet<>();
+
+    @Override
+    public synchronized WebResponse getResponse(final WebRequest aRequest) throws IOException {
+      final String tmpUrl = aRequest.getUrl().toExternalForm();
+      final StringBuilder tmpRequest = new StringBuilder(Thread.currentThread().getName());
+      for (final String tmpHeader : new String[] { "Referer", "Cookie" }) {
+        if (aRequest.getAdditionalHeaders().containsKey(tmpHeader)) {
+          tmpRequest.append(" | ").append(tmpHeader).append('=').append(aRequest.getAdditionalHeader(tmpHeader));
+        }
+      }
+      requests.computeIfAbsent(tmpUrl, aKey -> new ArrayList<>()).add(tmpRequest.toString());
+
+      if (failingUrls.remove(tmpUrl)) {
+        throw new IOException("failed");
+      }
+      return super.getResponse(aRequest);
+    }
+
+    synchronized List<String> getRequests(final String aUrl) {
+      return requests.getOrDefault(aUrl, new ArrayList<>());
+    }
+
+    synchronized void failOnce(final String aUrl) {
+      failingUrls.add(aUrl);
+    }
+  }
+
+  private static String read(final File aFile) throws Exception {
+    return new String(Files.readAllBytes(aFile.toPath()), StandardCharsets.UTF_8);
+  }
+}
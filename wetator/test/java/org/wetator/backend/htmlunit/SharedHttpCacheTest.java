@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SharedHttpCacheTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void survivesClear() throws Exception {
+    final SharedHttpCache tmpCache = new SharedHttpCache(null);
+    final WebRequest tmpRequest = new WebRequest(new URL("http://www.wetator.org/wetator.css"));
+    Assert.assertTrue(tmpCache.cacheIfPossible(tmpRequest, createResponse(tmpRequest, "max-age=3600"), null));
+
+    tmpCache.clear();
+    Assert.assertNotNull(tmpCache.getCachedResponse(tmpRequest));
+    Assert.assertEquals(1, tmpCache.getRequestCount());
+    Assert.assertEquals(1, tmpCache.getHitCount());
+    Assert.assertEquals(0, tmpCache.getDiskHitCount());
+
+    tmpCache.dispose();
+    Assert.assertNull(tmpCache.getCachedResponse(tmpRequest));
+    Assert.assertEquals(2, tmpCache.getRequestCount());
+    Assert.assertEquals(1, tmpCache.getHitCount());
+  }
+
+  @Test
+  public void resetStatistics() throws Exception {
+    final SharedHttpCache tmpCache = new SharedHttpCache(null);
+    final WebRequest tmpRequest = new WebRequest(new URL("http://www.wetator.org/wetator.css"));
+    Assert.assertTrue(tmpCache.cacheIfPossible(tmpRequest, createResponse(tmpRequest, "max-age=3600"), null));
+    Assert.assertNotNull(tmpCache.getCachedResponse(tmpRequest));
+
+    tmpCache.resetStatistics();
+    Assert.assertEquals(0, tmpCache.getRequestCount());
+    Assert.assertEquals(0, tmpCache.getHitCount());
+    Assert.assertEquals(0, tmpCache.getSavedBytes());
+
+    // the responses are kept
+    Assert.assertNotNull(tmpCache.getCachedResponse(tmpRequest));
+    Assert.assertEquals(1, tmpCache.getRequestCount());
+    Assert.assertEquals(1, tmpCache.getHitCount());
+  }
+
+  @Test
+  public void disk() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final WebRequest tmpRequest = new WebRequest(new URL("http://www.wetator.org/wetator.js"));
+
+    SharedHttpCache tmpCache = new SharedHttpCache(tmpDir);
+    tmpCache.cacheIfPossible(tmpRequest, createResponse(tmpRequest, "max-age=3600"), null);
+    tmpCache.dispose();
+
+    // next run
+    tmpCache = new SharedHttpCache(tmpDir);
+    final WebResponse tmpResponse = tmpCache.getCachedResponse(tmpRequest);
+    Assert.assertNotNull(tmpResponse);
+    Assert.assertEquals("var x = 'wetator';", tmpResponse.getContentAsString());
+    Assert.assertEquals("text/javascript", tmpResponse.getContentType());
+    Assert.assertEquals(1, tmpCache.getDiskHitCount());
+    Assert.assertEquals(1, tmpCache.getHitCount());
+
+    // now from memory
+    Assert.assertNotNull(tmpCache.getCachedResponse(tmpRequest));
+    Assert.assertEquals(1, tmpCache.getDiskHitCount());
+    Assert.assertEquals(2, tmpCache.getHitCount());
+  }
+
+  @Test
+  public void diskNoExplicitExpiration() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final WebRequest tmpRequest = new WebRequest(new URL("http://www.wetator.org/wetator.js"));
+
+    SharedHttpCache tmpCache = new SharedHttpCache(tmpDir);
+    tmpCache.cacheIfPossible(tmpRequest, createResponse(tmpRequest, "no-cache, max-age=3600"), null);
+    tmpCache.dispose();
+
+    tmpCache = new SharedHttpCache(tmpDir);
+    Assert.assertNull(tmpCache.getCachedResponse(tmpRequest));
+    Assert.assertEquals(0, tmpDir.list().length);
+  }
+
+  private WebResponse createResponse(final WebRequest aRequest, final String aCacheControl) {
+    final List<NameValuePair> tmpHeaders = new ArrayList<>();
+    tmpHeaders.add(new NameValuePair("Content-Type", "text/javascript"));
+    tmpHeaders.add(new NameValuePair("Cache-Control", aCacheControl));
+    final WebResponseData tmpData = new WebResponseData("var x = 'wetator';".getBytes(StandardCharsets.UTF_8), 200,
+        "OK", tmpHeaders);
+    return new WebResponse(tmpData, aRequest, 0);
+  }
+}
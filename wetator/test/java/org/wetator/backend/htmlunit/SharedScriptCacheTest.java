@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wetator.backend.IBrowser.BrowserType;
+import org.wetator.core.WetatorConfiguration;
+import org.wetator.core.WetatorEngine;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SharedScriptCacheTest {
+
+  private static final String SOURCE_NAME = "http://www.wetator.org/wetator.js";
+  private static final String CODE = "var x = 1;";
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void hit() {
+    final SharedScriptCache tmpCache = new SharedScriptCache();
+    final Script tmpScript = mock(Script.class);
+
+    Assert.assertNull(tmpCache.get(SOURCE_NAME, 1, CODE));
+    tmpCache.put(SOURCE_NAME, 1, CODE, tmpScript);
+
+    // an equal but not the same string
+    Assert.assertSame(tmpScript, tmpCache.get(SOURCE_NAME, 1, new String(CODE)));
+    Assert.assertSame(tmpScript, tmpCache.get(SOURCE_NAME, 1, CODE));
+    Assert.assertEquals(2, tmpCache.getHitCount());
+    Assert.assertEquals(1, tmpCache.getMissCount());
+  }
+
+  @Test
+  public void changedContent() {
+    final SharedScriptCache tmpCache = new SharedScriptCache();
+    tmpCache.put(SOURCE_NAME, 1, CODE, mock(Script.class));
+
+    Assert.assertNull(tmpCache.get(SOURCE_NAME, 1, "var x = 2;"));
+    // another line or source
+    Assert.assertNull(tmpCache.get(SOURCE_NAME, 2, CODE));
+    Assert.assertNull(tmpCache.get("http://www.wetator.org/other.js", 1, CODE));
+    Assert.assertEquals(0, tmpCache.getHitCount());
+    Assert.assertEquals(3, tmpCache.getMissCount());
+
+    // the changed content replaces the old one
+    final Script tmpScript = mock(Script.class);
+    tmpCache.put(SOURCE_NAME, 1, "var x = 2;", tmpScript);
+    Assert.assertSame(tmpScript, tmpCache.get(SOURCE_NAME, 1, "var x = 2;"));
+    Assert.assertNull(tmpCache.get(SOURCE_NAME, 1, CODE));
+  }
+
+  @Test
+  public void leastRecentlyUsedRemoved() {
+    final SharedScriptCache tmpCache = new SharedScriptCache(2);
+    final Script tmpScript1 = mock(Script.class);
+    final Script tmpScript2 = mock(Script.class);
+    final Script tmpScript3 = mock(Script.class);
+
+    tmpCache.put(SOURCE_NAME, 1, CODE, tmpScript1);
+    tmpCache.put(SOURCE_NAME, 2, CODE, tmpScript2);
+    // script 1 is used again; script 2 is the eldest now
+    Assert.assertSame(tmpScript1, tmpCache.get(SOURCE_NAME, 1, CODE));
+    tmpCache.put(SOURCE_NAME, 3, CODE, tmpScript3);
+
+    Assert.assertSame(tmpScript1, tmpCache.get(SOURCE_NAME, 1, CODE));
+    Assert.assertNull(tmpCache.get(SOURCE_NAME, 2, CODE));
+    Assert.assertSame(tmpScript3, tmpCache.get(SOURCE_NAME, 3, CODE));
+    Assert.assertEquals(3, tmpCache.getHitCount());
+    Assert.assertEquals(1, tmpCache.getMissCount());
+  }
+
+  @Test
+  public void resetStatistics() {
+    final SharedScriptCache tmpCache = new SharedScriptCache();
+    final Script tmpScript = mock(Script.class);
+    tmpCache.put(SOURCE_NAME, 1, CODE, tmpScript);
+    tmpCache.get(SOURCE_NAME, 1, CODE);
+    tmpCache.get(SOURCE_NAME, 2, CODE);
+
+    tmpCache.resetStatistics();
+    Assert.assertEquals(0, tmpCache.getHitCount());
+    Assert.assertEquals(0, tmpCache.getMissCount());
+
+    // the scripts are kept
+    Assert.assertSame(tmpScript, tmpCache.get(SOURCE_NAME, 1, CODE));
+  }
+
+  @Test
+  public void scriptReusedByOtherPages() throws Exception {
+    final WetatorConfiguration tmpConfiguration = mock(WetatorConfiguration.class);
+    when(tmpConfiguration.getOutputDir()).thenReturn(tmpFolder.newFolder());
+    when(tmpConfiguration.getJsTimeoutInSeconds()).thenReturn(1);
+    when(tmpConfiguration.getHttpTimeoutInSeconds()).thenReturn(10);
+    when(tmpConfiguration.getBrowserTypes()).thenReturn(Arrays.asList(BrowserType.FIREFOX_78));
+    when(tmpConfiguration.isSharedScriptCacheEnabled()).thenReturn(true);
+    final WetatorEngine tmpEngine = mock(WetatorEngine.class);
+    when(tmpEngine.getConfiguration()).thenReturn(tmpConfiguration);
+
+    final HtmlUnitBrowser tmpBrowser = new HtmlUnitBrowser(tmpEngine);
+    try {
+      // the same script (source name, line and content) on different pages
+      final File tmpFile = tmpFolder.newFile("test.html");
+      tmpBrowser.startNewSession(BrowserType.FIREFOX_78);
+      Assert.assertEquals("first", openPage(tmpBrowser, tmpFile, "first"));
+      Assert.assertEquals("second", openPage(tmpBrowser, tmpFile, "second"));
+      tmpBrowser.endSession();
+
+      // another web client
+      tmpBrowser.startNewSession(BrowserType.FIREFOX_78);
+      Assert.assertEquals("third", openPage(tmpBrowser, tmpFile, "third"));
+      tmpBrowser.endSession();
+
+      // the statistics are reported per session
+      verify(tmpEngine).informListenersInfo("scriptCacheStatistics", 1L, 2L);
+      verify(tmpEngine).informListenersInfo("scriptCacheStatistics", 1L, 1L);
+    } finally {
+      tmpBrowser.close();
+    }
+  }
+
+  private String openPage(final HtmlUnitBrowser aBrowser, final File aFile, final String aText) throws Exception {
+    // every page has its own scope; the state of the page before must not be visible
+    // @formatter:off
+    final String tmpHtml = "<html><head><title></title></head><body>\n"
+        + "<p id='text'>" + aText + "</p>\n"
+        + "<script>"
+        + "var texts = window.texts || [];"
+        + "texts.push(document.getElementById('text').textContent);"
+        + "document.title = texts.join(',');"
+        + "</script>\n"
+        + "</body></html>";
+    // @formatter:on
+    Files.write(aFile.toPath(), tmpHtml.getBytes(StandardCharsets.UTF_8));
+    aBrowser.openUrl(aFile.toURI().toURL());
+    return aBrowser.getCurrentHtmlPage().getTitleText();
+  }
+}
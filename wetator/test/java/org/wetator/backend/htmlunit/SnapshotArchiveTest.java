@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wetator.core.WetatorConfiguration;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SnapshotArchiveTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void singleArchive() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+
+    final SnapshotArchive tmpArchive = new SnapshotArchive(tmpDir, 1024 * 1024);
+    tmpArchive.write("firefox/responses_current/response_1.html", bytes("<html></html>"), true);
+    tmpArchive.write("firefox/responses_current/wetator.css", bytes("body {}"), false);
+    Assert.assertEquals(2, tmpArchive.getFileCount());
+    Assert.assertEquals(20, tmpArchive.getBytes());
+    tmpArchive.close();
+
+    Assert.assertEquals(1, tmpArchive.getArchiveCount());
+    try (ZipFile tmpZip = new ZipFile(new File(tmpDir, "snapshots_1.zip"))) {
+      Assert.assertEquals(2, tmpZip.size());
+      Assert.assertEquals("body {}", IOUtils.toString(
+          tmpZip.getInputStream(tmpZip.getEntry("firefox/responses_current/wetator.css")), StandardCharsets.UTF_8));
+    }
+
+    Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<snapshots>\n"
+        + "  <archive name=\"snapshots_1.zip\" files=\"2\">\n"
+        + "    <entry>firefox/responses_current/response_1.html</entry>\n" + "  </archive>\n" + "</snapshots>\n",
+        readIndex(tmpDir));
+  }
+
+  @Test
+  public void rolling() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    // leftover from a previous run
+    Files.write(new File(tmpDir, "snapshots_7.zip").toPath(), bytes("old"));
+
+    final SnapshotArchive tmpArchive = new SnapshotArchive(tmpDir, 1);
+    Assert.assertFalse(new File(tmpDir, "snapshots_7.zip").exists());
+
+    tmpArchive.write("response_1.html", bytes("<html>1</html>"), true);
+    tmpArchive.write("response_2.html", bytes("<html>2</html>"), true);
+    tmpArchive.writeIndex();
+    Assert.assertEquals(2, tmpArchive.getArchiveCount());
+
+    tmpArchive.resetStatistics();
+    Assert.assertEquals(0, tmpArchive.getFileCount());
+
+    tmpArchive.write("response_3.html", bytes("<html>3</html>"), true);
+    tmpArchive.close();
+
+    Assert.assertEquals(3, tmpArchive.getArchiveCount());
+    for (int i = 1; i <= 3; i++) {
+      try (ZipFile tmpZip = new ZipFile(new File(tmpDir, "snapshots_" + i + ".zip"))) {
+        Assert.assertNotNull(tmpZip.getEntry("response_" + i + ".html"));
+      }
+    }
+    Assert.assertTrue(readIndex(tmpDir).contains(
+        "  <archive name=\"snapshots_3.zip\" files=\"1\">\n" + "    <entry>response_3.html</entry>\n"));
+  }
+
+  private static byte[] bytes(final String aString) {
+    return aString.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String readIndex(final File aDir) throws Exception {
+    return new String(
+        Files.readAllBytes(new File(aDir, WetatorConfiguration.SNAPSHOT_ARCHIVE_INDEX_FILE_NAME).toPath()),
+        StandardCharsets.UTF_8);
+  }
+}
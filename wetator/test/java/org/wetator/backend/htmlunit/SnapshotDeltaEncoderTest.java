@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SnapshotDeltaEncoderTest {
+
+  private static final String PAGE = "<html>\n<head>\n<title>Wetator</title>\n</head>\n<body>\n"
+      + "<p>first paragraph</p>\n<p>second paragraph</p>\n<p>third paragraph</p>\n<p>fourth paragraph</p>\n"
+      + "<p>fifth paragraph</p>\n</body>\n</html>\n";
+
+  @Test
+  public void diff() {
+    final SnapshotDeltaEncoder.Base tmpBase = new SnapshotDeltaEncoder.Base("base.js", PAGE.split("\n", -1));
+
+    assertDiff(tmpBase, PAGE);
+    assertDiff(tmpBase, PAGE.replace("third", "3rd"));
+    assertDiff(tmpBase, PAGE.replace("<p>second paragraph</p>\n", ""));
+    assertDiff(tmpBase, PAGE.replace("</body>", "<p>new \"paragraph\"</p>\n</body>"));
+    assertDiff(tmpBase, PAGE.replace("fifth", "first").replace("<body>", "<body>\n<p>fifth paragraph</p>"));
+  }
+
+  @Test
+  public void encode() {
+    final SnapshotDeltaEncoder tmpEncoder = new SnapshotDeltaEncoder();
+
+    Assert.assertNull(tmpEncoder.encode("http://www.wetator.org", "response_1.js", PAGE));
+    // another page
+    Assert.assertNull(tmpEncoder.encode("http://www.wetator.org/other", "response_2.js", PAGE));
+
+    SnapshotDeltaEncoder.Delta tmpDelta = tmpEncoder.encode("http://www.wetator.org", "response_3.js",
+        PAGE.replace("third", "3rd"));
+    Assert.assertNotNull(tmpDelta);
+    Assert.assertEquals("response_1.js", tmpDelta.getBaseScriptName());
+    Assert.assertTrue(tmpDelta.getBaseScript().startsWith("var wetatorSnapshotBase = [\"<html>\",\n\"<head>\""));
+    Assert.assertTrue(tmpDelta.getPage().contains("<script src=\"response_1.js\" charset=\"UTF-8\"></script>"));
+    Assert.assertTrue(
+        tmpDelta.getPage().contains("wetatorSnapshotDelta([[0,7],\n\"<p>3rd paragraph<\\/p>\",\n[8,5]]);"));
+
+    // the base script is written only once
+    tmpDelta = tmpEncoder.encode("http://www.wetator.org", "response_4.js", PAGE.replace("fourth", "4th"));
+    Assert.assertNotNull(tmpDelta);
+    Assert.assertEquals("response_1.js", tmpDelta.getBaseScriptName());
+    Assert.assertNull(tmpDelta.getBaseScript());
+
+    // too many changes; new base
+    final String tmpChanged = PAGE.replace("paragraph", "line");
+    Assert.assertNull(tmpEncoder.encode("http://www.wetator.org", "response_5.js", tmpChanged));
+    tmpDelta = tmpEncoder.encode("http://www.wetator.org", "response_6.js", tmpChanged);
+    Assert.assertNotNull(tmpDelta);
+    Assert.assertEquals("response_5.js", tmpDelta.getBaseScriptName());
+    Assert.assertNotNull(tmpDelta.getBaseScript());
+  }
+
+  @Test
+  public void statistics() {
+    final SnapshotDeltaEncoder tmpEncoder = new SnapshotDeltaEncoder();
+
+    Assert.assertNull(tmpEncoder.encode("http://www.wetator.org", "response_1.js", PAGE));
+    final String tmpSnapshot = PAGE.replace("third", "3rd");
+    final SnapshotDeltaEncoder.Delta tmpDelta = tmpEncoder.encode("http://www.wetator.org", "response_2.js",
+        tmpSnapshot);
+
+    Assert.assertEquals(2, tmpEncoder.getSnapshotCount());
+    Assert.assertEquals(1, tmpEncoder.getDeltaCount());
+    Assert.assertEquals(tmpSnapshot.length(), tmpEncoder.getFullSize());
+    // the base script is written together with the first delta
+    Assert.assertEquals(tmpDelta.getPage().length() + tmpDelta.getBaseScript().length(), tmpEncoder.getDeltaSize());
+
+    tmpEncoder.resetStatistics();
+    Assert.assertEquals(0, tmpEncoder.getSnapshotCount());
+    Assert.assertEquals(0, tmpEncoder.getDeltaCount());
+    Assert.assertEquals(0, tmpEncoder.getFullSize());
+    Assert.assertEquals(0, tmpEncoder.getDeltaSize());
+
+    // the bases are kept
+    Assert.assertNotNull(tmpEncoder.encode("http://www.wetator.org", "response_3.js", PAGE.replace("fifth", "5th")));
+    Assert.assertEquals(1, tmpEncoder.getDeltaCount());
+  }
+
+  private void assertDiff(final SnapshotDeltaEncoder.Base aBase, final String aContent) {
+    final String[] tmpBaseLines = PAGE.split("\n", -1);
+    final List<String> tmpLines = new ArrayList<>();
+    for (final Object tmpOperation : SnapshotDeltaEncoder.diff(aBase, aContent.split("\n", -1))) {
+      if (tmpOperation instanceof String) {
+        tmpLines.add((String) tmpOperation);
+      } else {
+        final int[] tmpCopy = (int[]) tmpOperation;
+        for (int i = 0; i < tmpCopy[1]; i++) {
+          tmpLines.add(tmpBaseLines[tmpCopy[0] + i]);
+        }
+      }
+    }
+    Assert.assertEquals(aContent, String.join("\n", tmpLines));
+  }
+}
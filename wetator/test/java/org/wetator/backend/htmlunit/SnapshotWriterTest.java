@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.backend.htmlunit;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SnapshotWriterTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void flush() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final SnapshotWriter tmpWriter = new SnapshotWriter(2);
+    try {
+      // more files than the queue can take
+      for (int i = 0; i < 500; i++) {
+        tmpWriter.write(new File(tmpDir, "sub/response_" + i + ".html"),
+            ("<html>" + i + "</html>").getBytes(StandardCharsets.UTF_8));
+      }
+      tmpWriter.flush();
+
+      for (int i = 0; i < 500; i++) {
+        Assert.assertEquals("<html>" + i + "</html>",
+            FileUtils.readFileToString(new File(tmpDir, "sub/response_" + i + ".html"), StandardCharsets.UTF_8));
+      }
+    } finally {
+      tmpWriter.shutdown();
+    }
+  }
+
+  @Test
+  public void afterShutdown() throws Exception {
+    final File tmpDir = tmpFolder.newFolder();
+    final SnapshotWriter tmpWriter = new SnapshotWriter(1);
+    tmpWriter.shutdown();
+
+    tmpWriter.write(new File(tmpDir, "response.html"), "<html></html>".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("<html></html>",
+        FileUtils.readFileToString(new File(tmpDir, "response.html"), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.wetator.backend.IBrowser.BrowserType;
+
+/**
+ * @author frank.danek
+ */
+public class AsyncProgressListenerTest {
+
+  private WetatorEngine engine;
+
+  @Before
+  public void setupMocks() {
+    final WetatorConfiguration tmpConfiguration = mock(WetatorConfiguration.class);
+    when(tmpConfiguration.getBaseUrl()).thenReturn("http://baseurl");
+
+    engine = mock(WetatorEngine.class);
+    when(engine.getConfiguration()).thenReturn(tmpConfiguration);
+  }
+
+  @Test
+  public void order() {
+    final List<Object> tmpInfos = new ArrayList<>();
+    final IProgressListener tmpListener = mock(IProgressListener.class);
+    doAnswer(anInvocation -> tmpInfos.add(anInvocation.getArgument(1))).when(tmpListener).info(eq("info"), any());
+    final AsyncProgressListener tmpAsyncListener = new AsyncProgressListener(tmpListener);
+
+    // more events than the queue can take
+    tmpAsyncListener.start(engine);
+    for (int i = 0; i < 5000; i++) {
+      tmpAsyncListener.info("info", i);
+    }
+    tmpAsyncListener.executeCommandSuccess();
+    tmpAsyncListener.end(engine);
+
+    // end waits for the delivery
+    final InOrder tmpInOrder = inOrder(tmpListener);
+    tmpInOrder.verify(tmpListener).start(engine);
+    tmpInOrder.verify(tmpListener).executeCommandSuccess();
+    tmpInOrder.verify(tmpListener).end(engine);
+    assertEquals(5000, tmpInfos.size());
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(i, tmpInfos.get(i));
+    }
+  }
+
+  @Test
+  public void failingListener() {
+    final IProgressListener tmpListener = mock(IProgressListener.class);
+    doThrow(new IllegalStateException("failed")).when(tmpListener).testFileStart("file");
+    final AsyncProgressListener tmpAsyncListener = new AsyncProgressListener(tmpListener);
+
+    tmpAsyncListener.testFileStart("file");
+    tmpAsyncListener.testFileEnd();
+    tmpAsyncListener.end(engine);
+
+    final InOrder tmpInOrder = inOrder(tmpListener);
+    tmpInOrder.verify(tmpListener).testFileStart("file");
+    tmpInOrder.verify(tmpListener).testFileEnd();
+    tmpInOrder.verify(tmpListener).end(engine);
+  }
+
+  @Test
+  public void eventTime() throws InterruptedException {
+    final List<Long> tmpTimes = new ArrayList<>();
+    final CountDownLatch tmpRelease = new CountDownLatch(1);
+    final IProgressListener tmpListener = mock(IProgressListener.class);
+    doAnswer(anInvocation -> {
+      // a slow listener
+      tmpRelease.await();
+      return null;
+    }).when(tmpListener).testFileStart("file");
+    doAnswer(anInvocation -> {
+      tmpTimes.add(ProgressEventTime.currentTimeMillis());
+      tmpTimes.add(System.currentTimeMillis());
+      return null;
+    }).when(tmpListener).testFileEnd();
+    final AsyncProgressListener tmpAsyncListener = new AsyncProgressListener(tmpListener);
+
+    tmpAsyncListener.testFileStart("file");
+    final long tmpBeforePublish = System.currentTimeMillis();
+    tmpAsyncListener.testFileEnd();
+    final long tmpAfterPublish = System.currentTimeMillis();
+    // the event is delivered later
+    Thread.sleep(20);
+    tmpRelease.countDown();
+    tmpAsyncListener.end(engine);
+
+    // the listener gets the time the event was published and not the time it was delivered
+    assertEquals(2, tmpTimes.size());
+    assertTrue(tmpBeforePublish <= tmpTimes.get(0));
+    assertTrue(tmpTimes.get(0) <= tmpAfterPublish);
+    assertTrue(tmpTimes.get(1) > tmpAfterPublish);
+  }
+
+  @Test
+  public void contextSnapshot() {
+    final IProgressListener tmpListener = mock(IProgressListener.class);
+    final AsyncProgressListener tmpAsyncListener = new AsyncProgressListener(tmpListener);
+
+    final WetatorContext tmpContext = new WetatorContext(engine, "file", new File("file"), BrowserType.FIREFOX_78);
+    final WetatorContext tmpSubContext = tmpContext.createSubContext(new File("module"));
+    tmpSubContext.addVariable(new Variable("var", "value"));
+    final Command tmpCommand = new Command("command", false);
+
+    tmpAsyncListener.executeCommandStart(tmpSubContext, tmpCommand);
+    // changed after the event
+    tmpSubContext.addVariable(new Variable("later", "value"));
+    tmpAsyncListener.end(engine);
+
+    final ArgumentCaptor<WetatorContext> tmpCaptor = ArgumentCaptor.forClass(WetatorContext.class);
+    verify(tmpListener).executeCommandStart(tmpCaptor.capture(), same(tmpCommand));
+    final WetatorContext tmpSnapshot = tmpCaptor.getValue();
+    assertNotSame(tmpSubContext, tmpSnapshot);
+    assertEquals("value", tmpSnapshot.replaceVariables("${var}").getValue());
+    assertEquals("module", tmpSnapshot.replaceVariables("${wetator.testfile}").getValue());
+    assertEquals("http://baseurl", tmpSnapshot.replaceVariables("${wetator.baseurl}").getValue());
+    assertNull(tmpSnapshot.getVariable("later"));
+  }
+}
@@ -16,8 +16,15 @@
 
 package org.wetator.core;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.wetator.backend.IBrowser.BrowserType;
+import org.wetator.backend.WPath;
 
 /**
  * @author rbri
@@ -43,4 +50,29 @@ public class CommandTest {
     Assert.assertEquals(-1, tmpCommand.getLineNo());
     // TODO Assert.assertEquals("", tmpCommand.toPrintableString(aContext));
   }
+
+  @Test
+  public void firstParameterWPath() throws Exception {
+    final WetatorConfiguration tmpConfiguration = mock(WetatorConfiguration.class);
+    when(tmpConfiguration.getWPathSeparator()).thenReturn(">");
+    final WetatorEngine tmpEngine = mock(WetatorEngine.class);
+    when(tmpEngine.getConfiguration()).thenReturn(tmpConfiguration);
+    final WetatorContext tmpContext = new WetatorContext(tmpEngine, "file", new File("file"), BrowserType.FIREFOX_78);
+    tmpContext.addVariable(new Variable("field", "name"));
+
+    final Command tmpCommand = new Command("command", false);
+    tmpCommand.setFirstParameter(new Parameter("form > ${field}"));
+
+    final WPath tmpWPath = tmpCommand.getRequiredFirstParameterWPath(tmpContext);
+    Assert.assertEquals("form > name", tmpWPath.toString());
+    Assert.assertSame(tmpWPath, tmpCommand.getRequiredFirstParameterWPath(tmpContext));
+    Assert.assertSame(tmpWPath, tmpCommand.getFirstParameterWPath(tmpContext));
+
+    // the variable has another value
+    final WetatorContext tmpModuleContext = tmpContext.createSubContext(new File("module"));
+    tmpModuleContext.addVariable(new Variable("field", "other"));
+    final WPath tmpOtherWPath = tmpCommand.getRequiredFirstParameterWPath(tmpModuleContext);
+    Assert.assertNotSame(tmpWPath, tmpOtherWPath);
+    Assert.assertEquals("form > other", tmpOtherWPath.toString());
+  }
 }
@@ -16,6 +16,7 @@
 
 package org.wetator.core;
 
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doThrow;
@@ -28,6 +29,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -84,6 +86,17 @@ public class WetatorContextExecuteTest {
     when(engine.getConfiguration()).thenReturn(configuration);
     when(engine.getCommandImplementationFor(command1.getName())).thenReturn(commandImplementation1);
     when(engine.getCommandImplementationFor(command2.getName())).thenReturn(commandImplementation2);
+    // resolve the implementations by name like the engine does
+    when(engine.getCommandImplementationsFor(anyList())).thenAnswer(anInvocation -> {
+      final List<Command> tmpCommands = anInvocation.getArgument(0);
+      final ICommandImplementation[] tmpResult = new ICommandImplementation[tmpCommands.size()];
+      for (int i = 0; i < tmpResult.length; i++) {
+        if (!tmpCommands.get(i).isComment()) {
+          tmpResult[i] = engine.getCommandImplementationFor(tmpCommands.get(i).getName());
+        }
+      }
+      return tmpResult;
+    });
   }
 
   /**
@@ -764,6 +777,40 @@ public class WetatorContextExecuteTest {
     verify(engine, never()).informListenersError(isA(Throwable.class));
   }
 
+  /**
+   * Test for the context.<br>
+   * <br>
+   * Assertion: If no {@link ICommandImplementation} is found for a later command, the listeners are warned up front;
+   * the commands before are executed as usual.
+   */
+  @Test
+  public void commandImplementationNotFoundLater() throws CommandException, InvalidInputException {
+    // setup
+    command2 = new Command("unknown", false);
+
+    when(engine.readCommandsFromFile(file1)).thenReturn(Arrays.asList(command1, command2));
+
+    // run
+    final WetatorContext tmpContext = new WetatorContext(engine, file1.getName(), file1, browserType);
+    Assert.assertFalse(tmpContext.execute());
+
+    // assert
+    final InOrder tmpInOrder = inOrder(engine, browser, commandImplementation1, commandImplementation2);
+    tmpInOrder.verify(engine).informListenersTestFileStart(file1.getAbsolutePath());
+    tmpInOrder.verify(engine).informListenersWarn("unsupportedCommandAhead",
+        new String[] { "unknown", file1.getAbsolutePath(), "-1" }, (String) null);
+    assertCommandSuccess(tmpInOrder, tmpContext, command1, commandImplementation1);
+    tmpInOrder.verify(engine).informListenersExecuteCommandStart(tmpContext, command2);
+    tmpInOrder.verify(engine).informListenersExecuteCommandError(isA(InvalidInputException.class));
+    tmpInOrder.verify(engine).informListenersExecuteCommandEnd();
+    tmpInOrder.verify(engine).informListenersTestFileEnd();
+
+    verify(engine, never()).informListenersExecuteCommandIgnored();
+    verify(engine, never()).informListenersExecuteCommandFailure(isA(AssertionException.class));
+    verify(engine).informListenersExecuteCommandError(isA(Throwable.class));
+    verify(engine, never()).informListenersError(isA(Throwable.class));
+  }
+
   /**
    * Test for the context.<br>
    * <br>
@@ -17,6 +17,7 @@
 package org.wetator.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -30,7 +31,8 @@ import org.junit.Test;
 import org.wetator.backend.IBrowser.BrowserType;
 
 /**
- * Tests for {@link WetatorContext#addVariable(Variable)} and {@link WetatorContext#getVariables()}.
+ * Tests for {@link WetatorContext#addVariable(Variable)}, {@link WetatorContext#getVariables()} and
+ * {@link WetatorContext#getVariable(String)}.
  *
  * @author frank.danek
  */
@@ -324,6 +326,39 @@ public class WetatorContextGetVariablesTest {
     assertVariable("ctx", "ctx value", tmpVariables.get(4));
   }
 
+  @Test
+  public void lookupShadowing() throws Exception {
+    // setup
+    when(configuration.getVariables()).thenReturn(Arrays.asList(
+        new Variable(WetatorContext.VARIABLE_TESTFILE, "conf value"), new Variable("conf", "conf value")));
+
+    final WetatorContext tmpContext = new WetatorContext(engine, file1.getName(), file1, browserType);
+    tmpContext.addVariable(new Variable("ctx", "ctx value"));
+    final WetatorContext tmpSubContext = tmpContext.createSubContext(file2);
+    tmpSubContext.addVariable(new Variable("ctx", "subctx value"));
+
+    // run & assert
+    assertVariable(WetatorContext.VARIABLE_TESTFILE, file2.getName(),
+        tmpSubContext.getVariable(WetatorContext.VARIABLE_TESTFILE));
+    assertVariable("ctx", "subctx value", tmpSubContext.getVariable("ctx"));
+    assertVariable("ctx", "ctx value", tmpContext.getVariable("ctx"));
+    assertVariable("conf", "conf value", tmpSubContext.getVariable("conf"));
+    assertNull(tmpSubContext.getVariable("unknown"));
+  }
+
+  @Test
+  public void lookupAddedLater() throws Exception {
+    // setup
+    final WetatorContext tmpContext = new WetatorContext(engine, file1.getName(), file1, browserType);
+    final WetatorContext tmpSubContext = tmpContext.createSubContext(file2);
+    assertNull(tmpSubContext.getVariable("ctx"));
+
+    tmpContext.addVariable(new Variable("ctx", "ctx value"));
+
+    // run & assert
+    assertVariable("ctx", "ctx value", tmpSubContext.getVariable("ctx"));
+  }
+
   private static void assertVariable(final String anExpectedName, final String anExpectedValue,
       final Variable anActualVariable) {
     assertEquals("variable name", anExpectedName, anActualVariable.getName());
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.wetator.backend.IBrowser;
+import org.wetator.backend.IBrowser.BrowserType;
+import org.wetator.commandset.DefaultCommandSet;
+import org.wetator.exception.ActionException;
+import org.wetator.exception.AssertionException;
+import org.wetator.exception.CommandException;
+import org.wetator.exception.InvalidInputException;
+
+/**
+ * Tests for the session state handling of {@link DefaultCommandSet.CommandUseModule}.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public class WetatorContextUseModuleTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private File testFile;
+  private File loginModule;
+  private File innerModule;
+
+  private Command command;
+  private ICommandImplementation commandImplementation;
+
+  private IBrowser browser;
+  private WetatorEngine engine;
+
+  @Before
+  public void setupMocks() throws IOException, InvalidInputException {
+    testFile = tmpFolder.newFile("test.wett");
+    loginModule = tmpFolder.newFile("login.wett");
+    innerModule = tmpFolder.newFile("inner.wett");
+
+    command = new Command("command", false);
+    commandImplementation = mock(ICommandImplementation.class);
+
+    browser = mock(IBrowser.class);
+
+    final WetatorConfiguration tmpConfiguration = mock(WetatorConfiguration.class);
+    when(tmpConfiguration.getSessionStateModules()).thenReturn(Arrays.asList(loginModule.getName()));
+
+    engine = mock(WetatorEngine.class);
+    when(engine.getBrowser()).thenReturn(browser);
+    when(engine.getConfiguration()).thenReturn(tmpConfiguration);
+    when(engine.getCommandImplementationFor(command.getName())).thenReturn(commandImplementation);
+    when(engine.getCommandImplementationFor("use-module")).thenReturn(new DefaultCommandSet.CommandUseModule());
+    // resolve the implementations by name like the engine does
+    when(engine.getCommandImplementationsFor(anyList())).thenAnswer(anInvocation -> {
+      final List<Command> tmpCommands = anInvocation.getArgument(0);
+      final ICommandImplementation[] tmpResult = new ICommandImplementation[tmpCommands.size()];
+      for (int i = 0; i < tmpResult.length; i++) {
+        if (!tmpCommands.get(i).isComment()) {
+          tmpResult[i] = engine.getCommandImplementationFor(tmpCommands.get(i).getName());
+        }
+      }
+      return tmpResult;
+    });
+  }
+
+  /**
+   * Assertion: If all commands of the module are successful, the session state is saved.
+   */
+  @Test
+  public void success() throws CommandException, InvalidInputException {
+    // setup
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(useModule(loginModule)));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(command));
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    verify(browser).restoreSessionState(anyString());
+    verify(browser).saveSessionState(anyString());
+  }
+
+  /**
+   * Assertion: If the session state is restored, the module is not executed.
+   */
+  @Test
+  public void restored() throws CommandException, InvalidInputException {
+    // setup
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(useModule(loginModule)));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(command));
+    when(browser.restoreSessionState(anyString())).thenReturn(true);
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    verify(engine, never()).readCommandsFromFile(loginModule);
+    verify(commandImplementation, never()).execute(isA(WetatorContext.class), isA(Command.class));
+    verify(browser, never()).saveSessionState(anyString());
+  }
+
+  /**
+   * Assertion: If a command of a module used by the module fails, the session state is not saved.
+   */
+  @Test
+  public void nestedModuleFailure() throws CommandException, InvalidInputException {
+    // setup
+    doThrow(new AssertionException("mocker")).when(commandImplementation).execute(isA(WetatorContext.class),
+        isA(Command.class));
+
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(useModule(loginModule)));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(useModule(innerModule)));
+    when(engine.readCommandsFromFile(innerModule)).thenReturn(Arrays.asList(command));
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    verify(commandImplementation).execute(isA(WetatorContext.class), isA(Command.class));
+    verify(browser, never()).saveSessionState(anyString());
+  }
+
+  /**
+   * Assertion: If an error occurred in a module used by the module, the following commands are ignored and the session
+   * state is not saved.
+   */
+  @Test
+  public void nestedModuleError() throws CommandException, InvalidInputException {
+    // setup
+    doThrow(new ActionException("mocker")).when(commandImplementation).execute(isA(WetatorContext.class),
+        isA(Command.class));
+
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(useModule(loginModule)));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(useModule(innerModule), command));
+    when(engine.readCommandsFromFile(innerModule)).thenReturn(Arrays.asList(command));
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    verify(engine).informListenersExecuteCommandIgnored();
+    verify(browser, never()).saveSessionState(anyString());
+  }
+
+  /**
+   * Assertion: If an error occurred before the module is used, the session state is neither restored nor saved.
+   */
+  @Test
+  public void errorBefore() throws CommandException, InvalidInputException {
+    // setup
+    final Command tmpFailing = new Command("failing", false);
+    final ICommandImplementation tmpFailingImplementation = mock(ICommandImplementation.class);
+    doThrow(new ActionException("mocker")).when(tmpFailingImplementation).execute(isA(WetatorContext.class),
+        isA(Command.class));
+    when(engine.getCommandImplementationFor(tmpFailing.getName())).thenReturn(tmpFailingImplementation);
+
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(tmpFailing, useModule(loginModule)));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(command));
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    verify(browser, never()).restoreSessionState(anyString());
+    verify(browser, never()).saveSessionState(anyString());
+    verify(commandImplementation, never()).execute(isA(WetatorContext.class), isA(Command.class));
+  }
+
+  /**
+   * Assertion: The parameters of the module are part of the key of the session state only as hash.
+   */
+  @Test
+  public void parametersHashed() throws CommandException, InvalidInputException {
+    // setup
+    when(engine.readCommandsFromFile(testFile)).thenReturn(Arrays.asList(useModule(loginModule, "admin, secret1"),
+        useModule(loginModule, "admin, secret2"), useModule(loginModule, "admin, secret1")));
+    when(engine.readCommandsFromFile(loginModule)).thenReturn(Arrays.asList(command));
+
+    // run
+    Assert.assertTrue(new WetatorContext(engine, testFile.getName(), testFile, BrowserType.FIREFOX_78).execute());
+
+    // assert
+    final ArgumentCaptor<String> tmpKeys = ArgumentCaptor.forClass(String.class);
+    verify(browser, times(3)).saveSessionState(tmpKeys.capture());
+    for (final String tmpKey : tmpKeys.getAllValues()) {
+      Assert.assertFalse(tmpKey, tmpKey.contains("admin"));
+      Assert.assertFalse(tmpKey, tmpKey.contains("secret"));
+    }
+    Assert.assertNotEquals(tmpKeys.getAllValues().get(0), tmpKeys.getAllValues().get(1));
+    Assert.assertEquals(tmpKeys.getAllValues().get(0), tmpKeys.getAllValues().get(2));
+  }
+
+  private Command useModule(final File aModule) {
+    final Command tmpCommand = new Command("use-module", false);
+    tmpCommand.setFirstParameter(new Parameter(aModule.getAbsolutePath()));
+    return tmpCommand;
+  }
+
+  private Command useModule(final File aModule, final String aParameters) {
+    final Command tmpCommand = useModule(aModule);
+    tmpCommand.setSecondParameter(new Parameter(aParameters));
+    return tmpCommand;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link WetatorEngine#enableAsyncProgressListeners()} and
+ * {@link WetatorEngine#disableAsyncProgressListeners()}.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public class WetatorEngineAsyncProgressListenersTest {
+
+  private List<String> events;
+  private IProgressListener asyncListener;
+  private IProgressListener syncListener;
+
+  private WetatorEngine engine;
+
+  @Before
+  public void setupMocks() {
+    events = Collections.synchronizedList(new ArrayList<>());
+
+    asyncListener = mock(IProgressListener.class);
+    doAnswer(anInvocation -> {
+      // a slow listener
+      Thread.sleep(100);
+      events.add("async testFileStart " + Thread.currentThread().getName());
+      return null;
+    }).when(asyncListener).testFileStart("file");
+    doAnswer(anInvocation -> {
+      events.add("async end " + Thread.currentThread().getName());
+      return null;
+    }).when(asyncListener).end(any(WetatorEngine.class));
+
+    syncListener = mock(SynchronousListener.class);
+    doAnswer(anInvocation -> {
+      events.add("sync testFileStart " + Thread.currentThread().getName());
+      return null;
+    }).when(syncListener).testFileStart("file");
+
+    engine = new WetatorEngine();
+    engine.addProgressListener(asyncListener);
+    engine.addProgressListener(syncListener);
+  }
+
+  @Test
+  public void enabled() {
+    final String tmpThread = Thread.currentThread().getName();
+
+    engine.enableAsyncProgressListeners();
+    engine.informListenersTestFileStart("file");
+    events.add("published");
+    engine.informListenersEnd();
+    events.add("ended");
+    engine.disableAsyncProgressListeners();
+
+    // only the listener without annotation is informed by another thread; end() waits for the delivery
+    assertEquals(5, events.size());
+    assertEquals("sync testFileStart " + tmpThread, events.get(0));
+    assertEquals("published", events.get(1));
+    assertTrue(events.get(2), events.get(2).startsWith("async testFileStart Wetator-"));
+    assertTrue(events.get(3), events.get(3).startsWith("async end Wetator-"));
+    assertEquals("ended", events.get(4));
+  }
+
+  @Test
+  public void disabled() {
+    final String tmpThread = Thread.currentThread().getName();
+
+    engine.enableAsyncProgressListeners();
+    engine.disableAsyncProgressListeners();
+    engine.informListenersTestFileStart("file");
+
+    // the original listeners are informed directly again
+    assertEquals(2, events.size());
+    assertEquals("async testFileStart " + tmpThread, events.get(0));
+    assertEquals("sync testFileStart " + tmpThread, events.get(1));
+  }
+
+  @Test(timeout = 10000)
+  public void informedWhileEnding() {
+    // e.g. the report generation time
+    doAnswer(anInvocation -> {
+      engine.informListenersInfo("reportGenerationTime", 1, 42L);
+      return null;
+    }).when(asyncListener).end(any(WetatorEngine.class));
+    doAnswer(anInvocation -> {
+      events.add("sync info " + anInvocation.getArgument(0));
+      return null;
+    }).when(syncListener).info(any(String.class), any());
+
+    engine.enableAsyncProgressListeners();
+    engine.informListenersEnd();
+    engine.disableAsyncProgressListeners();
+
+    // the asynchronous listener informs the others on its own thread while the engine waits for it
+    assertEquals(1, events.size());
+    assertEquals("sync info reportGenerationTime", events.get(0));
+  }
+
+  /**
+   * A listener that has to be informed synchronously.
+   */
+  @SynchronousProgressListener
+  private abstract static class SynchronousListener implements IProgressListener {
+    // only mocked
+  }
+}
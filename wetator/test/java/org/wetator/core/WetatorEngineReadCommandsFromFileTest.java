@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core;
+
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link WetatorEngine#readCommandsFromFile(File)}.
+ *
+ * @author rbri
+ * @author frank.danek
+ */
+public class WetatorEngineReadCommandsFromFileTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private IScripter scripter;
+  private ICommandSet commandSet;
+  private ICommandImplementation commandImplementation;
+
+  private WetatorEngine engine;
+
+  @Before
+  public void setupMocks() {
+    scripter = mock(IScripter.class);
+    when(scripter.isSupported(isA(File.class))).thenReturn(IScripter.IS_SUPPORTED);
+    when(scripter.getCommands()).thenReturn(Arrays.asList(new Command("open-url", false)));
+
+    final WetatorConfiguration tmpConfiguration = mock(WetatorConfiguration.class);
+    when(tmpConfiguration.getScripters()).thenReturn(Arrays.asList(scripter));
+
+    commandImplementation = mock(ICommandImplementation.class);
+    commandSet = mock(ICommandSet.class);
+    when(commandSet.getCommandImplementationFor("open-url")).thenReturn(commandImplementation);
+    when(tmpConfiguration.getCommandSets()).thenReturn(Arrays.asList(commandSet));
+
+    engine = new WetatorEngine();
+    engine.init(tmpConfiguration);
+  }
+
+  @Test
+  public void cached() throws Exception {
+    final File tmpFile = tmpFolder.newFile("module.wett");
+    FileUtils.writeStringToFile(tmpFile, "open-url || index.html", StandardCharsets.UTF_8);
+
+    final List<Command> tmpCommands = engine.readCommandsFromFile(tmpFile);
+    Assert.assertEquals(1, tmpCommands.size());
+    Assert.assertSame(tmpCommands, engine.readCommandsFromFile(tmpFile));
+    Assert.assertSame(tmpCommands, engine.readCommandsFromFile(new File(tmpFolder.getRoot(), "./module.wett")));
+
+    verify(scripter, times(1)).script(tmpFile);
+  }
+
+  @Test
+  public void modified() throws Exception {
+    final File tmpFile = tmpFolder.newFile("module.wett");
+    FileUtils.writeStringToFile(tmpFile, "open-url || index.html", StandardCharsets.UTF_8);
+
+    final List<Command> tmpCommands = engine.readCommandsFromFile(tmpFile);
+
+    FileUtils.writeStringToFile(tmpFile, "open-url || other.html", StandardCharsets.UTF_8);
+    Assert.assertTrue(tmpFile.setLastModified(tmpFile.lastModified() + 2000));
+    Assert.assertNotSame(tmpCommands, engine.readCommandsFromFile(tmpFile));
+
+    verify(scripter, times(2)).script(tmpFile);
+  }
+
+  @Test
+  public void commandImplementationsCached() throws Exception {
+    final File tmpFile = tmpFolder.newFile("module.wett");
+    FileUtils.writeStringToFile(tmpFile, "open-url || index.html", StandardCharsets.UTF_8);
+
+    final List<Command> tmpCommands = engine.readCommandsFromFile(tmpFile);
+    final ICommandImplementation[] tmpImplementations = engine.getCommandImplementationsFor(tmpCommands);
+    Assert.assertArrayEquals(new ICommandImplementation[] { commandImplementation }, tmpImplementations);
+    Assert.assertSame(tmpImplementations, engine.getCommandImplementationsFor(engine.readCommandsFromFile(tmpFile)));
+
+    // the file changed
+    FileUtils.writeStringToFile(tmpFile, "open-url || other.html", StandardCharsets.UTF_8);
+    Assert.assertTrue(tmpFile.setLastModified(tmpFile.lastModified() + 2000));
+    Assert.assertNotSame(tmpImplementations, engine.getCommandImplementationsFor(engine.readCommandsFromFile(tmpFile)));
+
+    // the command sets are asked only once per command name
+    verify(commandSet, times(1)).getCommandImplementationFor("open-url");
+  }
+
+  @Test
+  public void commandImplementationsNotCached() {
+    final List<Command> tmpCommands = Arrays.asList(new Command("open-url", false), new Command("unknown", false));
+
+    final ICommandImplementation[] tmpImplementations = engine.getCommandImplementationsFor(tmpCommands);
+    Assert.assertArrayEquals(new ICommandImplementation[] { commandImplementation, null }, tmpImplementations);
+    Assert.assertNotSame(tmpImplementations, engine.getCommandImplementationsFor(tmpCommands));
+  }
+}
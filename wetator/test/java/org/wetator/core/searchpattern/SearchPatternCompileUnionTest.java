@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.core.searchpattern;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class SearchPatternCompileUnionTest {
+
+  @Test
+  public void single() {
+    final SearchPattern tmpPattern = SearchPattern.compileUnion(Arrays.asList(SearchPattern.compile("a*c")));
+
+    assertTrue(tmpPattern.matches("abc"));
+    assertTrue(tmpPattern.matches("ac"));
+    assertFalse(tmpPattern.matches("ab"));
+  }
+
+  @Test
+  public void regExp() {
+    final SearchPattern tmpPattern = SearchPattern
+        .compileUnion(Arrays.asList(SearchPattern.compile("a*c"), SearchPattern.compile("x?z")));
+
+    assertTrue(tmpPattern.matches("abc"));
+    assertTrue(tmpPattern.matches("xyz"));
+    assertFalse(tmpPattern.matches("xz"));
+    assertFalse(tmpPattern.matches("abcxyz"));
+    assertEquals(2, tmpPattern.getMinLength());
+  }
+
+  @Test
+  public void textOnly() {
+    final SearchPattern tmpPattern = SearchPattern
+        .compileUnion(Arrays.asList(SearchPattern.compile("t[e](s)t"), SearchPattern.compile("a\\*b")));
+
+    assertTrue(tmpPattern.matches("t[e](s)t"));
+    assertTrue(tmpPattern.matches("a*b"));
+    assertFalse(tmpPattern.matches("test"));
+    assertFalse(tmpPattern.matches("axb"));
+  }
+
+  @Test
+  public void textOnlyBackslash() {
+    final SearchPattern tmpPattern = SearchPattern
+        .compileUnion(Arrays.asList(SearchPattern.compile("\\"), SearchPattern.compile("x*")));
+
+    assertTrue(tmpPattern.matches("\\"));
+    assertTrue(tmpPattern.matches("xyz"));
+    assertFalse(tmpPattern.matches("\\\\"));
+  }
+
+  @Test
+  public void matchAll() {
+    final SearchPattern tmpPattern = SearchPattern
+        .compileUnion(Arrays.asList(SearchPattern.compile("abc"), SearchPattern.compile("*")));
+
+    assertTrue(tmpPattern.matches("abc"));
+    assertTrue(tmpPattern.matches("xyz"));
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.daemon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wetator.core.TestCase;
+import org.wetator.exception.ResourceException;
+
+/**
+ * @author frank.danek
+ */
+public class WetatorDaemonTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private File tokenDir;
+  private WetatorDaemon daemon;
+  private Thread daemonThread;
+
+  @Before
+  public void startDaemon() throws Exception {
+    tokenDir = tmpFolder.newFolder();
+    daemon = new WetatorDaemon(0, tokenDir);
+    daemonThread = new Thread(daemon::run);
+    daemonThread.start();
+  }
+
+  @After
+  public void stopDaemon() throws Exception {
+    daemon.stop();
+    daemonThread.join(10000);
+  }
+
+  @Test
+  public void error() throws Exception {
+    final WetatorDaemonClient tmpClient = new WetatorDaemonClient(daemon.getPort(), tokenDir);
+    final StringWriter tmpOutput = new StringWriter();
+    try {
+      tmpClient.runTests(new File("unknown.config").getAbsolutePath(), new HashMap<>(),
+          Arrays.asList(new TestCase("test.wet", new File("test.wet"))), tmpOutput, true);
+      fail("ResourceException expected");
+    } catch (final ResourceException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("The Wetator daemon failed to execute the tests: "));
+    }
+
+    // the daemon accepts the next request
+    try {
+      tmpClient.runTests(new File("unknown.config").getAbsolutePath(), null, Arrays.asList(), tmpOutput, false);
+      fail("ResourceException expected");
+    } catch (final ResourceException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("The Wetator daemon failed to execute the tests: "));
+    }
+  }
+
+  @Test
+  public void run() throws Exception {
+    final File tmpPage = tmpFolder.newFile("page.html");
+    FileUtils.writeStringToFile(tmpPage, "<html><head><title>Wetator Daemon</title></head><body></body></html>",
+        StandardCharsets.UTF_8);
+    final List<TestCase> tmpTestCases = Arrays.asList(
+        new TestCase("green.wet", writeTestFile("green.wet", tmpPage, "Wetator Daemon")),
+        new TestCase("red.wet", writeTestFile("red.wet", tmpPage, "Something else")));
+
+    final File tmpConfig = tmpFolder.newFile("wetator.config");
+    // @formatter:off
+    FileUtils.writeStringToFile(tmpConfig,
+        "wetator.baseUrl=" + tmpFolder.getRoot().toURI().toURL() + "\n"
+        + "wetator.browser=Firefox78\n"
+        + "wetator.outputDir=" + tmpFolder.newFolder().getAbsolutePath().replace('\\', '/') + "\n",
+        StandardCharsets.UTF_8);
+    // @formatter:on
+
+    final WetatorDaemonClient tmpClient = new WetatorDaemonClient(daemon.getPort(), tokenDir);
+    final RecordingWriter tmpLines = new RecordingWriter();
+    final long[] tmpResult = tmpClient.runTests(tmpConfig.getAbsolutePath(), null, tmpTestCases, tmpLines, true);
+    assertArrayEquals(new long[] { 2, 0, 1, 0 }, tmpResult);
+
+    // only whole lines
+    final String tmpOutput = tmpLines.getOutput();
+    assertTrue(tmpOutput, tmpOutput.contains("TestCase: 'green.wet' (1/2)"));
+    assertTrue(tmpOutput, tmpOutput.contains("Tests: 2,  Errors: 0,  Failures: 1"));
+    assertTrue(tmpLines.records.size() > 10);
+    for (final String tmpRecord : tmpLines.records) {
+      // one line per record
+      assertTrue("'" + tmpRecord + "'", tmpRecord.endsWith(System.lineSeparator()));
+      assertEquals("'" + tmpRecord + "'", tmpRecord.length() - 1, tmpRecord.indexOf('\n'));
+    }
+
+    // the same output in parts
+    final RecordingWriter tmpParts = new RecordingWriter();
+    assertArrayEquals(tmpResult,
+        tmpClient.runTests(tmpConfig.getAbsolutePath(), null, tmpTestCases, tmpParts, false));
+    assertEquals(normalize(tmpOutput), normalize(tmpParts.getOutput()));
+  }
+
+  @Test
+  public void requestTimeout() throws Exception {
+    daemon.setRequestTimeout(500);
+
+    // a client sending nothing
+    try (Socket tmpSocket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+      final DataInputStream tmpIn = new DataInputStream(tmpSocket.getInputStream());
+      assertEquals(WetatorDaemon.RECORD_ERROR, tmpIn.readByte());
+      assertEquals("Request timed out.", tmpIn.readUTF());
+    }
+
+    // the daemon accepts the next request
+    new WetatorDaemonClient(daemon.getPort(), tokenDir).stopDaemon();
+    daemonThread.join(10000);
+    assertFalse(daemonThread.isAlive());
+  }
+
+  private File writeTestFile(final String aName, final File aPage, final String aTitle) throws Exception {
+    final File tmpFile = tmpFolder.newFile(aName);
+    // @formatter:off
+    FileUtils.writeStringToFile(tmpFile,
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+        + "<test-case xmlns='http://www.wetator.org/xsd/test-case'"
+        + " xmlns:d='http://www.wetator.org/xsd/default-command-set'"
+        + " xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'"
+        + " xsi:schemaLocation='http://www.wetator.org/xsd/test-case test-case-1.0.0.xsd"
+        + " http://www.wetator.org/xsd/default-command-set default-command-set-1.0.0.xsd' version='1.0.0'>\n"
+        + "<command><d:open-url><d:url>" + aPage.getName() + "</d:url></d:open-url></command>\n"
+        + "<command><d:assert-title><d:title>" + aTitle + "</d:title></d:assert-title></command>\n"
+        + "</test-case>\n",
+        StandardCharsets.UTF_8);
+    // @formatter:on
+    return tmpFile;
+  }
+
+  private static String normalize(final String anOutput) {
+    // the times differ
+    return anOutput.replaceAll("\\d+(\\.\\d+)?\\s*(ms|s)\\b", "##TIME##");
+  }
+
+  /**
+   * Records every output record received.
+   */
+  private static final class RecordingWriter extends Writer {
+    private List<String> records = new ArrayList<>();
+
+    @Override
+    public void write(final char[] aCbuf, final int anOff, final int aLen) {
+      records.add(String.valueOf(aCbuf, anOff, aLen));
+    }
+
+    String getOutput() {
+      return String.join("", records);
+    }
+
+    @Override
+    public void flush() {
+      // nothing to do
+    }
+
+    @Override
+    public void close() {
+      // nothing to do
+    }
+  }
+
+  @Test
+  public void stop() throws Exception {
+    new WetatorDaemonClient(daemon.getPort(), tokenDir).stopDaemon();
+
+    daemonThread.join(10000);
+    assertFalse(daemonThread.isAlive());
+    // the token file is removed
+    assertFalse(WetatorDaemon.getTokenFile(tokenDir, daemon.getPort()).exists());
+  }
+
+  @Test
+  public void tokenFile() throws Exception {
+    final File tmpTokenFile = WetatorDaemon.getTokenFile(tokenDir, daemon.getPort());
+    assertEquals(64, Files.readAllBytes(tmpTokenFile.toPath()).length);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tmpTokenFile.toPath())));
+    }
+  }
+
+  @Test
+  public void invalidToken() throws Exception {
+    // a request without the token
+    try (Socket tmpSocket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+      final DataOutputStream tmpOut = new DataOutputStream(tmpSocket.getOutputStream());
+      tmpOut.writeInt(WetatorDaemon.PROTOCOL_VERSION);
+      tmpOut.writeUTF("guessed");
+      tmpOut.writeByte(WetatorDaemon.REQUEST_STOP);
+      tmpOut.flush();
+
+      final DataInputStream tmpIn = new DataInputStream(tmpSocket.getInputStream());
+      assertEquals(WetatorDaemon.RECORD_ERROR, tmpIn.readByte());
+      assertEquals("Invalid token.", tmpIn.readUTF());
+    }
+    assertTrue(daemonThread.isAlive());
+
+    // a client without the token file
+    try {
+      new WetatorDaemonClient(daemon.getPort(), tmpFolder.newFolder()).stopDaemon();
+      fail("ResourceException expected");
+    } catch (final ResourceException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("does not exist; is the Wetator daemon running on port "));
+    }
+    assertTrue(daemonThread.isAlive());
+  }
+}
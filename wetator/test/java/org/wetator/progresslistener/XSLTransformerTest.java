@@ -19,10 +19,16 @@ package org.wetator.progresslistener;
 import static org.mockito.Mockito.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.wetator.core.IProgressListener;
 
 /**
@@ -34,6 +40,9 @@ public class XSLTransformerTest extends AbstractProgressListenerTest {
   private static final String XSLT = "run_report.xsl";
   private static final String RESULT_LOG = LOGS_FOLDER + "/" + XSLT + ".html";
 
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   @Override
   public void setupEnvironment() {
     when(configuration.getXslTemplates()).thenReturn(Arrays.asList("xsl/" + XSLT));
@@ -41,6 +50,72 @@ public class XSLTransformerTest extends AbstractProgressListenerTest {
     super.setupEnvironment();
   }
 
+  @Test
+  public void templatesCached() throws Exception {
+    final File tmpXmlFile = tmpFolder.newFile("result.xml");
+    FileUtils.writeStringToFile(tmpXmlFile, "<wet><name>Wetator</name></wet>", StandardCharsets.UTF_8);
+    final File tmpXslA = writeXsl("a.xsl", "A:");
+    final File tmpXslB = writeXsl("b.xsl", "B:");
+    final File tmpOutputDir = tmpFolder.newFolder();
+
+    // two templates are applied in parallel
+    final XSLTransformer tmpTransformer = new XSLTransformer(tmpXmlFile);
+    final List<String> tmpXslFiles = Arrays.asList(tmpXslA.getPath(), tmpXslB.getPath());
+    tmpTransformer.transform(tmpXslFiles, tmpOutputDir);
+    assertResult("A:Wetator", tmpOutputDir, tmpXslA);
+    assertResult("B:Wetator", tmpOutputDir, tmpXslB);
+
+    // same size and time; the cached templates are used
+    final long tmpLastModified = tmpXslA.lastModified();
+    writeXsl("a.xsl", "X:");
+    Assert.assertTrue(tmpXslA.setLastModified(tmpLastModified));
+    tmpTransformer.transform(tmpXslFiles, tmpOutputDir);
+    assertResult("A:Wetator", tmpOutputDir, tmpXslA);
+    assertResult("B:Wetator", tmpOutputDir, tmpXslB);
+
+    // changed; compiled again
+    Assert.assertTrue(tmpXslA.setLastModified(tmpLastModified + 10000));
+    tmpTransformer.transform(tmpXslFiles, tmpOutputDir);
+    assertResult("X:Wetator", tmpOutputDir, tmpXslA);
+    assertResult("B:Wetator", tmpOutputDir, tmpXslB);
+
+    // only one template
+    writeXsl("b.xsl", "BB:");
+    new XSLTransformer(tmpXmlFile).transform(Arrays.asList(tmpXslB.getPath()), tmpOutputDir);
+    assertResult("BB:Wetator", tmpOutputDir, tmpXslB);
+  }
+
+  @Test
+  public void reportGenerationTime() throws Exception {
+    progressListener.init(engine);
+    progressListener.start(engine);
+    progressListener.end(engine);
+
+    // reported to all listeners; the result file is complete already
+    verify(engine).informListenersInfo(eq("reportGenerationTime"), eq(1), anyLong());
+    progressListener.info("reportGenerationTime", 1, 42L);
+    Assert.assertFalse(FileUtils.readFileToString(new File(LOGS_FOLDER, "wetresult.xml"), StandardCharsets.UTF_8)
+        .contains("Report generation"));
+  }
+
+  private File writeXsl(final String aFileName, final String aPrefix) throws IOException {
+    final File tmpXslFile = new File(tmpFolder.getRoot(), aFileName);
+    // @formatter:off
+    FileUtils.writeStringToFile(tmpXslFile,
+        "<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>"
+        + "<xsl:output method='text'/>"
+        + "<xsl:template match='/'>" + aPrefix + "<xsl:value-of select='/wet/name'/></xsl:template>"
+        + "</xsl:stylesheet>", StandardCharsets.UTF_8);
+    // @formatter:on
+    return tmpXslFile;
+  }
+
+  private void assertResult(final String anExpected, final File anOutputDir, final File anXslFile)
+      throws IOException {
+    final File tmpResultFile = new File(anOutputDir, anXslFile.getName() + ".html");
+    Assert.assertEquals(anExpected, FileUtils.readFileToString(tmpResultFile, StandardCharsets.UTF_8));
+  }
+
   @Override
   protected IProgressListener createProgressListener() {
     return new XMLResultWriter();
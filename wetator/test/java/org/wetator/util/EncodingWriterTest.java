@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2008-2021 wetator.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wetator.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author rbri
+ * @author frank.danek
+ */
+public class EncodingWriterTest {
+
+  private static final String CONTENT = "<p>Wetator \u00e4\u00f6\u00fc \u20ac \ud83d\ude00 test</p>\n";
+
+  @Test
+  public void utf8() throws IOException {
+    assertWrite(StandardCharsets.UTF_8, EncodingWriter.DEFAULT_BUFFER_SIZE);
+  }
+
+  @Test
+  public void utf8SmallBuffer() throws IOException {
+    // the surrogate pair gets split by the buffer
+    for (int i = 2; i < 20; i++) {
+      assertWrite(StandardCharsets.UTF_8, i);
+    }
+  }
+
+  @Test
+  public void iso8859() throws IOException {
+    // the unmappable chars are replaced
+    assertWrite(StandardCharsets.ISO_8859_1, EncodingWriter.DEFAULT_BUFFER_SIZE);
+    assertWrite(StandardCharsets.ISO_8859_1, 7);
+  }
+
+  @Test
+  public void utf16() throws IOException {
+    assertWrite(StandardCharsets.UTF_16, 5);
+  }
+
+  /**
+   * A simple timing (no benchmark) of a snapshot written through an {@link Output}: the buffered
+   * {@link OutputStreamWriter} used before compared to the {@link EncodingWriter}. Both have to write the same bytes.
+   */
+  @Test
+  public void timing() throws IOException {
+    final Charset tmpCharset = StandardCharsets.UTF_8;
+    byte[] tmpExpected = null;
+    byte[] tmpActual = null;
+    long tmpStreamWriterNanos = Long.MAX_VALUE;
+    long tmpEncodingWriterNanos = Long.MAX_VALUE;
+    // the first rounds warm up the jit
+    for (int i = 0; i < 5; i++) {
+      ByteArrayOutputStream tmpOut = new ByteArrayOutputStream(4 * 1024 * 1024);
+      long tmpStart = System.nanoTime();
+      writeSnapshot(new Output(new BufferedWriter(new OutputStreamWriter(tmpOut, tmpCharset)), "  "));
+      tmpStreamWriterNanos = Math.min(tmpStreamWriterNanos, System.nanoTime() - tmpStart);
+      tmpExpected = tmpOut.toByteArray();
+
+      tmpOut = new ByteArrayOutputStream(4 * 1024 * 1024);
+      tmpStart = System.nanoTime();
+      writeSnapshot(new Output(new EncodingWriter(Channels.newChannel(tmpOut), tmpCharset), "  "));
+      tmpEncodingWriterNanos = Math.min(tmpEncodingWriterNanos, System.nanoTime() - tmpStart);
+      tmpActual = tmpOut.toByteArray();
+    }
+
+    Assert.assertArrayEquals(tmpExpected, tmpActual);
+    final double tmpMegaBytes = tmpActual.length / (1024d * 1024d);
+    System.out.println(String.format(Locale.ROOT, "EncodingWriter: %.1f MB/s; OutputStreamWriter: %.1f MB/s",
+        tmpMegaBytes * 1000000000d / tmpEncodingWriterNanos, tmpMegaBytes * 1000000000d / tmpStreamWriterNanos));
+  }
+
+  private static void writeSnapshot(final Output anOutput) throws IOException {
+    for (int i = 0; i < 10000; i++) {
+      anOutput.println("<div class=\"row\">").indent();
+      for (int j = 0; j < 5; j++) {
+        anOutput.println("<span id=\"s" + j + "\">").indent();
+        anOutput.println(CONTENT.trim());
+        anOutput.unindent().println("</span>");
+      }
+      anOutput.unindent().println("</div>");
+    }
+    anOutput.close();
+  }
+
+  private void assertWrite(final Charset aCharset, final int aBufferSize) throws IOException {
+    final StringBuilder tmpExpected = new StringBuilder();
+    final ByteArrayOutputStream tmpOut = new ByteArrayOutputStream();
+    try (EncodingWriter tmpWriter = new EncodingWriter(Channels.newChannel(tmpOut), aCharset, aBufferSize)) {
+      for (int i = 0; i < 10; i++) {
+        tmpWriter.write(CONTENT);
+        tmpWriter.write('x');
+        tmpWriter.write(CONTENT.toCharArray(), 3, 12);
+        tmpExpected.append(CONTENT).append('x').append(CONTENT, 3, 15);
+      }
+      tmpWriter.flush();
+    }
+
+    Assert.assertArrayEquals(tmpExpected.toString().getBytes(aCharset), tmpOut.toByteArray());
+  }
+}
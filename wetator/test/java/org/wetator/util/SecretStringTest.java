@@ -2429,6 +2429,17 @@ public class SecretStringTest {
     assertEquals("${var0****}", tmpSecret.toString());
   }
 
+  @Test
+  public void copy() {
+    final SecretString tmpSecret = new SecretString("abc").appendSecret("").appendSecret("def");
+
+    final SecretString tmpCopy = tmpSecret.copy();
+    tmpSecret.prefixWith("x");
+
+    assertEquals("abcdef", tmpCopy.getValue());
+    assertEquals("abc********", tmpCopy.toString());
+  }
+
   @Test
   public void replaceVariablesRecursionSelf() {
     final SecretString tmpSecret = new SecretString("${var0}");
@@ -2451,4 +2462,39 @@ public class SecretStringTest {
       assertEquals("Recursion during variable replacement (${var2}).", e.getMessage());
     }
   }
+
+  @Test
+  public void replaceVariablesBrokenRecursionSecret() {
+    final SecretString tmpSecret = new SecretString("${var1}");
+
+    try {
+      tmpSecret.replaceVariables(Arrays.asList(new Variable("var1", "a${var2}", true),
+          new Variable("var2", "b${var3}", false), new Variable("var3", "c${var1}", false)));
+      fail("IllegalArgumentException expected");
+    } catch (final IllegalArgumentException e) {
+      assertEquals("Recursion during variable replacement (****).", e.getMessage());
+    }
+  }
+
+  @Test
+  public void replaceVariablesNestedVarsLongValue() {
+    final SecretString tmpSecret = new SecretString("${var0}");
+
+    tmpSecret.replaceVariables(
+        Arrays.asList(new Variable("var0", "long value ${var1}", false), new Variable("var1", "value1", true)));
+
+    assertEquals("long value value1", tmpSecret.getValue());
+    assertEquals("long value ****", tmpSecret.toString());
+  }
+
+  @Test
+  public void replaceVariablesNestedVarsTwice() {
+    final SecretString tmpSecret = new SecretString("${var0}-${var0}");
+
+    tmpSecret.replaceVariables(
+        Arrays.asList(new Variable("var0", "${var1}${var1}", false), new Variable("var1", "value1", true)));
+
+    assertEquals("value1value1-value1value1", tmpSecret.getValue());
+    assertEquals("********-********", tmpSecret.toString());
+  }
 }
@@ -16,6 +16,8 @@
 
 package org.wetator.util;
 
+import java.io.IOException;
+
 import org.junit.Test;
 
 /**
@@ -30,6 +32,13 @@ public class XMLUtilTest {
         tmpXMLUtil.normalizeBodyValue("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
   }
 
+  @Test
+  public void normalizeBodyValue_Unchanged() {
+    final XMLUtil tmpXMLUtil = new XMLUtil();
+    final String tmpInput = "abc 'def' \"ghi\"";
+    org.junit.Assert.assertSame(tmpInput, tmpXMLUtil.normalizeBodyValue(tmpInput));
+  }
+
   @Test
   public void normalizeBodyValue_SpecialChars() {
     final XMLUtil tmpXMLUtil = new XMLUtil();
@@ -150,4 +159,24 @@ public class XMLUtilTest {
     final XMLUtil tmpXMLUtil = new XMLUtil();
     org.junit.Assert.assertEquals("", tmpXMLUtil.normalizeAttributeValue(null));
   }
+
+  @Test
+  public void appendBodyValue() throws IOException {
+    final XMLUtil tmpXMLUtil = new XMLUtil();
+    final StringBuilder tmpResult = new StringBuilder("x");
+    tmpXMLUtil.appendBodyValue(tmpResult, "ab<de\u0001f \u20AC\uD800'\"");
+    tmpXMLUtil.appendBodyValue(tmpResult, null);
+    tmpXMLUtil.appendBodyValue(tmpResult, "gh");
+    org.junit.Assert.assertEquals("xab&lt;def &#8364;'\"gh", tmpResult.toString());
+  }
+
+  @Test
+  public void appendAttributeValue() throws IOException {
+    final XMLUtil tmpXMLUtil = new XMLUtil();
+    final StringBuilder tmpResult = new StringBuilder("x");
+    tmpXMLUtil.appendAttributeValue(tmpResult, "ab<de\u0001f \u00E4\uD800'\"");
+    tmpXMLUtil.appendAttributeValue(tmpResult, null);
+    tmpXMLUtil.appendAttributeValue(tmpResult, "gh");
+    org.junit.Assert.assertEquals("xab&lt;def &#228;&apos;&quot;gh", tmpResult.toString());
+  }
 }
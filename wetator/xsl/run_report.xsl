@@ -19,6 +19,10 @@
 
     <xsl:variable name="noOfStepsInLine" select="150"/>
 
+    <!-- the index of the snapshot archives; empty if the snapshots are stored as files -->
+    <xsl:key name="snapshotArchive" match="/snapshots/archive" use="entry"/>
+    <xsl:variable name="snapshotIndex" select="document(/wet/configuration/snapshotIndex)"/>
+
     <xsl:variable name="testCaseCount" select="count(/wet/testcase)"/>
     <xsl:variable name="browserCount" select="count(/wet/testcase/testrun) div $testCaseCount"/>
     <xsl:variable name="testCount" select="$testCaseCount * $browserCount"/>
@@ -1455,20 +1459,10 @@
             <xsl:value-of select="$lineStyle" />
             <xsl:text disable-output-escaping="yes">" align="center"&gt;</xsl:text>
                 <xsl:for-each select="highlight">
-                    <a target="_blank">
-                        <xsl:attribute name="href">
-                            <xsl:value-of select="."/>
-                        </xsl:attribute>
-                        <xsl:attribute name="onmouseover">
-                            <xsl:text>showPreview(event,'</xsl:text>
-                            <xsl:value-of select="."/>
-                            <xsl:text>')</xsl:text>
-                        </xsl:attribute>
-                        <xsl:attribute name="onmouseout">
-                            <xsl:text>hidePreview()</xsl:text>
-                        </xsl:attribute>
-                        <img src="resources/file-highlighted.png" alt="view highlight" class="testStepScreenshot"/>
-                    </a>
+                    <xsl:call-template name="snapshotLink">
+                        <xsl:with-param name="image">resources/file-highlighted.png</xsl:with-param>
+                        <xsl:with-param name="alt">view highlight</xsl:with-param>
+                    </xsl:call-template>
                 </xsl:for-each>
             <xsl:text disable-output-escaping="yes">&lt;/td&gt;</xsl:text>
 
@@ -1489,20 +1483,10 @@
                     </img>
                 </xsl:if>
                 <xsl:for-each select="response">
-                    <a target="_blank">
-                        <xsl:attribute name="href">
-                            <xsl:value-of select="."/>
-                        </xsl:attribute>
-                        <xsl:attribute name="onmouseover">
-                            <xsl:text>showPreview(event,'</xsl:text>
-                            <xsl:value-of select="."/>
-                            <xsl:text>')</xsl:text>
-                        </xsl:attribute>
-                        <xsl:attribute name="onmouseout">
-                            <xsl:text>hidePreview()</xsl:text>
-                        </xsl:attribute>
-                        <img src="resources/file.png" alt="view response" class="testStepScreenshot"/>
-                    </a>
+                    <xsl:call-template name="snapshotLink">
+                        <xsl:with-param name="image">resources/file.png</xsl:with-param>
+                        <xsl:with-param name="alt">view response</xsl:with-param>
+                    </xsl:call-template>
                 </xsl:for-each>
             <xsl:text disable-output-escaping="yes">&lt;/td&gt;</xsl:text>
 
@@ -1761,6 +1745,43 @@
 
 
     <!-- subroutines -->
+    <xsl:template name="snapshotLink">
+        <xsl:param name="image"/>
+        <xsl:param name="alt"/>
+
+        <xsl:variable name="snapshot" select="."/>
+        <xsl:choose>
+            <xsl:when test="$snapshotIndex">
+                <!-- the page is inside one of the archives; no preview -->
+                <xsl:variable name="entry" select="substring-before(concat($snapshot, '?'), '?')"/>
+                <xsl:variable name="archive">
+                    <xsl:for-each select="$snapshotIndex">
+                        <xsl:value-of select="key('snapshotArchive', $entry)/@name"/>
+                    </xsl:for-each>
+                </xsl:variable>
+                <a target="_blank" href="{$archive}" title="{$snapshot} ({$archive})">
+                    <img src="{$image}" alt="{$alt}" class="testStepScreenshot"/>
+                </a>
+            </xsl:when>
+            <xsl:otherwise>
+                <a target="_blank">
+                    <xsl:attribute name="href">
+                        <xsl:value-of select="$snapshot"/>
+                    </xsl:attribute>
+                    <xsl:attribute name="onmouseover">
+                        <xsl:text>showPreview(event,'</xsl:text>
+                        <xsl:value-of select="$snapshot"/>
+                        <xsl:text>')</xsl:text>
+                    </xsl:attribute>
+                    <xsl:attribute name="onmouseout">
+                        <xsl:text>hidePreview()</xsl:text>
+                    </xsl:attribute>
+                    <img src="{$image}" alt="{$alt}" class="testStepScreenshot"/>
+                </a>
+            </xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
     <xsl:template name="successIndicator">
         <xsl:choose>
             <xsl:when test="count(error) &gt; 0 or count(testrun/error) &gt; 0 or count(descendant::command/error) &gt; 0 or count(descendant::testfile/error) &gt; 0">